@@ -0,0 +1,190 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands library events to another listener on a background thread.
+ * Events are placed in a fixed-size lock-free ring buffer: producers claim a
+ * slot with a compare-and-set on the tail counter and publish it through a
+ * per-slot sequence number, so operation threads never block on a monitor
+ * or on the slow listener. A single consumer thread drains the buffer in
+ * order and parks while it is empty; the producer whose event makes the
+ * buffer non-empty unparks it, so an idle listener costs no CPU. When the
+ * buffer is full, producers park briefly and retry until the consumer frees
+ * a slot, so no event is ever dropped.
+ *
+ * <p>An exception thrown by the other listener cannot reach the operation
+ * that raised the event, which has long returned. It is counted, see
+ * {@link #getFailureCount()}, and passed to a failure handler instead, and
+ * the events after it are still delivered.
+ *
+ * @author Orchlon Chinbat
+ */
+public class AsyncEventListener implements LibraryEventListener, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final long FULL_PARK_NANOS = 50_000;
+
+    private final LibraryEventListener delegate;
+    private final Thread.UncaughtExceptionHandler failureHandler;
+    private final LibraryEvent[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail;
+    private final Thread consumer;
+    private volatile long head;
+    private volatile boolean closed;
+    private volatile long failures;
+
+    /**
+     * Constructs an asynchronous listener with the default buffer size.
+     *
+     * @param delegate the listener to call on the background thread
+     */
+    public AsyncEventListener(LibraryEventListener delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an asynchronous listener.
+     *
+     * @param delegate the listener to call on the background thread
+     * @param capacity the number of buffered events, rounded up to a power of two
+     */
+    public AsyncEventListener(LibraryEventListener delegate, int capacity) {
+        this(delegate, capacity, null);
+    }
+
+    /**
+     * Constructs an asynchronous listener that reports the other listener's
+     * failures to a handler.
+     *
+     * @param delegate the listener to call on the background thread
+     * @param capacity the number of buffered events, rounded up to a power of two
+     * @param failureHandler called on the background thread with each
+     *        exception the listener throws, and must not throw itself; null
+     *        to use the background thread's uncaught exception handler
+     */
+    public AsyncEventListener(LibraryEventListener delegate, int capacity,
+                              Thread.UncaughtExceptionHandler failureHandler) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.delegate = delegate;
+        this.failureHandler = failureHandler;
+        this.buffer = new LibraryEvent[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.consumer = new Thread(this::drain, "library-events");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    /**
+     * Queues an event for the background thread.
+     * After {@link #close()} the event is delivered on the calling thread.
+     *
+     * @param event the event to queue
+     */
+    @Override
+    public void onEvent(LibraryEvent event) {
+        if (closed) {
+            delegate.onEvent(event);
+            return;
+        }
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long available = sequences.get(index) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer[index] = event;
+                    // The volatile write publishes the slot to the consumer.
+                    sequences.set(index, position + 1);
+                    // The consumer has taken everything before this event,
+                    // so it may be parked waiting for exactly this slot.
+                    if (head == position) {
+                        LockSupport.unpark(consumer);
+                    }
+                    return;
+                }
+            } else if (available < 0) {
+                // Buffer is full; wait for the consumer to catch up.
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Delivers buffered events until the listener is closed and empty.
+     * The consumer publishes its position before checking for the next
+     * event, and a producer publishes its event before reading that
+     * position, so either the consumer sees the event or the producer sees
+     * that it must unpark the consumer.
+     */
+    private void drain() {
+        while (true) {
+            long next = head;
+            int index = (int) (next & mask);
+            if (sequences.get(index) == next + 1) {
+                LibraryEvent event = buffer[index];
+                buffer[index] = null;
+                sequences.set(index, next + buffer.length);
+                head = next + 1;
+                try {
+                    delegate.onEvent(event);
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+            } else if (closed && tail.get() == next) {
+                return;
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * Counts a failed event and passes the exception to the handler.
+     *
+     * @param failure what the listener threw
+     */
+    private void fail(RuntimeException failure) {
+        // Only the consumer thread writes the count.
+        failures++;
+        Thread.UncaughtExceptionHandler handler = failureHandler;
+        if (handler == null) {
+            handler = consumer.getUncaughtExceptionHandler();
+        }
+        handler.uncaughtException(consumer, failure);
+    }
+
+    /**
+     * Gets the number of events the other listener has failed on so far.
+     *
+     * @return the number of failed events
+     */
+    public long getFailureCount() {
+        return failures;
+    }
+
+    /**
+     * Delivers every buffered event and stops the background thread.
+     * Call this once the library system no longer issues events; events
+     * raised while closing may otherwise be lost.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
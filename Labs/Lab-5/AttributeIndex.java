@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary indexes over item attributes: hash indexes from ISBN, author
+ * id and item class to the items having them, and an ordered index from
+ * year to items. Like the other indexes, posting sets are concurrent and
+ * created and dropped atomically, so the index can be updated and queried
+ * from several threads.
+ *
+ * <p>An {@link ItemQuery} is answered by walking only the smallest posting
+ * set among its conditions and checking the other conditions on each item
+ * directly, so the cost follows the most selective condition rather than
+ * the size of the inventory. Author conditions are checked by comparing
+ * author ids.
+ *
+ * @author Orchlon Chinbat
+ */
+public class AttributeIndex {
+    private final Map<String, Set<LibraryItem>> byIsbn;
+    private final Map<Integer, Set<LibraryItem>> byAuthor;
+    private final Map<Class<?>, Set<LibraryItem>> byType;
+    private final ConcurrentNavigableMap<Integer, Set<LibraryItem>> byYear;
+
+    /**
+     * Constructs an empty attribute index.
+     */
+    public AttributeIndex() {
+        this.byIsbn = new ConcurrentHashMap<>();
+        this.byAuthor = new ConcurrentHashMap<>();
+        this.byType = new ConcurrentHashMap<>();
+        this.byYear = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Adds an item under each of its attributes.
+     *
+     * @param item the item to index
+     */
+    public void add(LibraryItem item) {
+        if (item instanceof Book) {
+            Book book = (Book) item;
+            if (book.getIsbn() != null) {
+                post(byIsbn, ItemQuery.normalizeIsbn(book.getIsbn()), item);
+            }
+            for (int authorId : book.authorIds()) {
+                post(byAuthor, authorId, item);
+            }
+        }
+        post(byType, item.getClass(), item);
+        post(byYear, item.getYear(), item);
+    }
+
+    /**
+     * Removes an item from every posting set it is in. Sets that become
+     * empty are dropped.
+     *
+     * @param item the item to remove
+     */
+    public void remove(LibraryItem item) {
+        if (item instanceof Book) {
+            Book book = (Book) item;
+            if (book.getIsbn() != null) {
+                unpost(byIsbn, ItemQuery.normalizeIsbn(book.getIsbn()), item);
+            }
+            for (int authorId : book.authorIds()) {
+                unpost(byAuthor, authorId, item);
+            }
+        }
+        unpost(byType, item.getClass(), item);
+        unpost(byYear, item.getYear(), item);
+    }
+
+    /**
+     * Adds an item to the posting set of a key.
+     *
+     * @param index the index
+     * @param key the attribute value
+     * @param item the item
+     */
+    private static <K> void post(Map<K, Set<LibraryItem>> index, K key, LibraryItem item) {
+        index.compute(key, (k, items) -> {
+            if (items == null) {
+                items = ConcurrentHashMap.newKeySet();
+            }
+            items.add(item);
+            return items;
+        });
+    }
+
+    /**
+     * Removes an item from the posting set of a key.
+     *
+     * @param index the index
+     * @param key the attribute value
+     * @param item the item
+     */
+    private static <K> void unpost(Map<K, Set<LibraryItem>> index, K key, LibraryItem item) {
+        index.computeIfPresent(key, (k, items) -> {
+            items.remove(item);
+            return items.isEmpty() ? null : items;
+        });
+    }
+
+    /**
+     * Finds the items meeting every condition of a query.
+     *
+     * @param query the query
+     * @return the matching items, in no particular order
+     */
+    public List<LibraryItem> find(ItemQuery query) {
+        List<Collection<Set<LibraryItem>>> sources = new ArrayList<>();
+        if (query.getIsbn() != null) {
+            Set<LibraryItem> items = byIsbn.get(query.getIsbn());
+            if (items == null) {
+                return new ArrayList<>();
+            }
+            sources.add(List.of(items));
+        }
+        int[] authorIds = new int[query.getAuthors().size()];
+        for (int i = 0; i < authorIds.length; i++) {
+            authorIds[i] = Book.authorDictionary().find(query.getAuthors().get(i));
+            Set<LibraryItem> items = authorIds[i] < 0 ? null : byAuthor.get(authorIds[i]);
+            if (items == null) {
+                return new ArrayList<>();
+            }
+            sources.add(List.of(items));
+        }
+        if (query.hasYearRange()) {
+            if (query.getFromYear() > query.getToYear()) {
+                return new ArrayList<>();
+            }
+            sources.add(byYear.subMap(query.getFromYear(), true, query.getToYear(), true).values());
+        }
+        List<Set<LibraryItem>> typed = new ArrayList<>();
+        for (Map.Entry<Class<?>, Set<LibraryItem>> entry : byType.entrySet()) {
+            if (query.getType().isAssignableFrom(entry.getKey())) {
+                typed.add(entry.getValue());
+            }
+        }
+        sources.add(typed);
+
+        // Walk the smallest source and check the rest item by item.
+        Collection<Set<LibraryItem>> smallest = null;
+        long smallestSize = Long.MAX_VALUE;
+        for (Collection<Set<LibraryItem>> source : sources) {
+            long size = 0;
+            for (Set<LibraryItem> items : source) {
+                size += items.size();
+            }
+            if (size < smallestSize) {
+                smallest = source;
+                smallestSize = size;
+            }
+        }
+        List<LibraryItem> results = new ArrayList<>();
+        for (Set<LibraryItem> items : smallest) {
+            for (LibraryItem item : items) {
+                if (matches(item, query, authorIds)) {
+                    results.add(item);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Checks an item against every condition of a query.
+     *
+     * @param item the item
+     * @param query the query
+     * @param authorIds the ids of the query's authors
+     * @return true if the item meets every condition
+     */
+    private static boolean matches(LibraryItem item, ItemQuery query, int[] authorIds) {
+        if (!query.getType().isInstance(item)
+                || item.getYear() < query.getFromYear() || item.getYear() > query.getToYear()) {
+            return false;
+        }
+        if (query.getIsbn() == null && authorIds.length == 0) {
+            return true;
+        }
+        if (!(item instanceof Book)) {
+            return false;
+        }
+        Book book = (Book) item;
+        if (query.getIsbn() != null
+                && (book.getIsbn() == null || !query.getIsbn().equals(ItemQuery.normalizeIsbn(book.getIsbn())))) {
+            return false;
+        }
+        for (int authorId : authorIds) {
+            if (!book.hasAuthorId(authorId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,16 +1,25 @@
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Represents a book in the library system.
  * Contains information specific to books such as authors, ISBN, and publication year.
+ * Author names are stored as ids in a dictionary shared by all books, so a
+ * name repeated across thousands of books is kept once and each book only
+ * holds a small array of ints. The dictionary lives as long as the
+ * program and keeps every name it has seen, including those of books
+ * since removed or never added to a library, so it suits catalogues whose
+ * authors come from a bounded set rather than, say, a stream of user input.
  * 
  * @author Orchlon Chinbat
  */
 public class Book extends LibraryItem {
-    private List<String> authors;
-    private int publicationYear;
-    private String isbn;
+    private static final TermDictionary AUTHORS = new TermDictionary();
+    
+    private final int[] authorIds;
+    private final int publicationYear;
+    private final String isbn;
     
     /**
      * Constructs a Book with the specified details.
@@ -24,18 +33,69 @@ public class Book extends LibraryItem {
     public Book(String title, String callNumber, List<String> authors, 
                 int publicationYear, String isbn) {
         super(title, callNumber);
-        this.authors = new ArrayList<>(authors);
+        this.authorIds = new int[authors.size()];
+        for (int i = 0; i < authorIds.length; i++) {
+            authorIds[i] = AUTHORS.intern(authors.get(i));
+        }
         this.publicationYear = publicationYear;
         this.isbn = isbn;
     }
     
     /**
      * Gets the list of authors.
+     * The list is an unmodifiable view over the book's author ids rather
+     * than a copy, so calling this is cheap.
      * 
-     * @return a list of author names
+     * @return an unmodifiable list of author names
      */
     public List<String> getAuthors() {
-        return new ArrayList<>(authors);
+        return new AuthorList(authorIds);
+    }
+    
+    /**
+     * Checks whether a person is one of the authors. The name is looked up
+     * once and then compared to the stored ids as integers.
+     * 
+     * @param author the author name, exactly as given when the book was created
+     * @return true if the book lists the author, false if it does not or
+     *         the name is null
+     */
+    public boolean hasAuthor(String author) {
+        return hasAuthorId(AUTHORS.find(author));
+    }
+    
+    /**
+     * Checks whether an author id is among the book's authors.
+     * 
+     * @param id the id of the author in {@link #authorDictionary()}
+     * @return true if the book lists the author
+     */
+    boolean hasAuthorId(int id) {
+        for (int authorId : authorIds) {
+            if (authorId == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Gets the ids of the authors, in order. The array is the book's own
+     * and must not be changed.
+     * 
+     * @return the author ids
+     */
+    int[] authorIds() {
+        return authorIds;
+    }
+    
+    /**
+     * Gets the dictionary of author names shared by all books.
+     * 
+     * @return the dictionary
+     */
+    static TermDictionary authorDictionary() {
+        return AUTHORS;
     }
     
     /**
@@ -47,6 +107,16 @@ public class Book extends LibraryItem {
         return publicationYear;
     }
     
+    /**
+     * Gets the year the book was published.
+     * 
+     * @return the publication year
+     */
+    @Override
+    public int getYear() {
+        return publicationYear;
+    }
+    
     /**
      * Gets the ISBN number.
      * 
@@ -62,26 +132,47 @@ public class Book extends LibraryItem {
      * @return formatted author names
      */
     private String getAuthorsString() {
-        return String.join(", ", authors);
+        return String.join(", ", getAuthors());
     }
     
     @Override
-    public String getDetails() {
+    protected String formatDetails() {
         return String.format("Book: '%s' by %s (%d) | ISBN: %s | Call#: %s",
                            getTitle(), getAuthorsString(), publicationYear, 
                            isbn, getCallNumber());
     }
     
     @Override
-    public String getSearchableText() {
+    protected String buildSearchableText() {
         StringBuilder sb = new StringBuilder();
         sb.append(getTitle().toLowerCase()).append(" ");
-        for (String author : authors) {
-            sb.append(author.toLowerCase()).append(" ");
+        for (int authorId : authorIds) {
+            sb.append(AUTHORS.term(authorId).toLowerCase()).append(" ");
         }
         sb.append(isbn.toLowerCase()).append(" ");
         sb.append(getCallNumber().toLowerCase());
         return sb.toString();
     }
+    
+    /**
+     * Read-only list of author names backed by an array of author ids.
+     */
+    private static final class AuthorList extends AbstractList<String> implements RandomAccess {
+        private final int[] ids;
+        
+        AuthorList(int[] ids) {
+            this.ids = ids;
+        }
+        
+        @Override
+        public String get(int index) {
+            return AUTHORS.term(ids[index]);
+        }
+        
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
 }
 
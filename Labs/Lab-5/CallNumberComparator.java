@@ -0,0 +1,169 @@
+import java.util.Comparator;
+
+/**
+ * Orders call numbers the way items stand on the shelf, following the
+ * Library of Congress scheme rather than plain string order.
+ * A call number is compared segment by segment, where a segment is a run
+ * of letters or a run of digits and punctuation only separates segments:
+ * <ul>
+ *   <li>letters compare alphabetically, ignoring case ("QA" before "QB");</li>
+ *   <li>the first number, and any number standing on its own such as a
+ *       year, compares numerically ("QA9" before "QA76");</li>
+ *   <li>a number directly after a period or a letter is a decimal fraction,
+ *       as in class extensions and cutters ("76.64" before "76.9", ".A43"
+ *       before ".A5");</li>
+ *   <li>at the same position a shorter call number comes first, then
+ *       letters, then whole numbers, then decimal fractions, so "QA76",
+ *       "QA76 .A4" and "QA76 2009" all come before "QA76.9".</li>
+ * </ul>
+ * Call numbers that normalize to the same order are finally compared as
+ * plain strings, so distinct call numbers never compare as equal.
+ * The comparison works directly on the strings and allocates nothing.
+ *
+ * @author Orchlon Chinbat
+ */
+public class CallNumberComparator implements Comparator<String> {
+
+    @Override
+    public int compare(String a, String b) {
+        int i = 0;
+        int j = 0;
+        boolean seenNumberA = false;
+        boolean seenNumberB = false;
+        while (true) {
+            i = skipSeparators(a, i);
+            j = skipSeparators(b, j);
+            boolean endA = i >= a.length();
+            boolean endB = j >= b.length();
+            if (endA || endB) {
+                if (endA && endB) {
+                    return a.compareTo(b);
+                }
+                return endA ? -1 : 1;
+            }
+
+            boolean digitsA = Character.isDigit(a.charAt(i));
+            boolean digitsB = Character.isDigit(b.charAt(j));
+            if (digitsA != digitsB) {
+                return digitsA ? 1 : -1;
+            }
+            int endI = segmentEnd(a, i, digitsA);
+            int endJ = segmentEnd(b, j, digitsB);
+
+            int result;
+            if (!digitsA) {
+                result = compareLetters(a, i, endI, b, j, endJ);
+            } else {
+                boolean fractionA = isFraction(a, i, seenNumberA);
+                boolean fractionB = isFraction(b, j, seenNumberB);
+                if (fractionA != fractionB) {
+                    return fractionA ? 1 : -1;
+                }
+                result = fractionA ? compareFractions(a, i, endI, b, j, endJ)
+                                   : compareWholeNumbers(a, i, endI, b, j, endJ);
+                seenNumberA = true;
+                seenNumberB = true;
+            }
+            if (result != 0) {
+                return result;
+            }
+            i = endI;
+            j = endJ;
+        }
+    }
+
+    /**
+     * Skips characters that are neither letters nor digits.
+     *
+     * @param s the call number
+     * @param index the position to start from
+     * @return the position of the next letter or digit, or the length
+     */
+    private static int skipSeparators(String s, int index) {
+        while (index < s.length() && !Character.isLetterOrDigit(s.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Finds the end of a run of letters or digits.
+     *
+     * @param s the call number
+     * @param index the start of the run
+     * @param digits true for a run of digits, false for letters
+     * @return the position just after the run
+     */
+    private static int segmentEnd(String s, int index, boolean digits) {
+        while (index < s.length()) {
+            char c = s.charAt(index);
+            if (digits ? !Character.isDigit(c) : !Character.isLetter(c)) {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Checks whether a run of digits is a decimal fraction.
+     *
+     * @param s the call number
+     * @param start the start of the digit run
+     * @param seenNumber whether an earlier digit run was already compared
+     * @return true if the digits follow a period or letter after the class number
+     */
+    private static boolean isFraction(String s, int start, boolean seenNumber) {
+        if (!seenNumber || start == 0) {
+            return false;
+        }
+        char previous = s.charAt(start - 1);
+        return previous == '.' || Character.isLetter(previous);
+    }
+
+    /**
+     * Compares two runs of letters alphabetically, ignoring case.
+     */
+    private static int compareLetters(String a, int i, int endI, String b, int j, int endJ) {
+        while (i < endI && j < endJ) {
+            int diff = Character.toUpperCase(a.charAt(i)) - Character.toUpperCase(b.charAt(j));
+            if (diff != 0) {
+                return diff;
+            }
+            i++;
+            j++;
+        }
+        return (endI - i) - (endJ - j);
+    }
+
+    /**
+     * Compares two runs of digits by numeric value.
+     */
+    private static int compareWholeNumbers(String a, int i, int endI, String b, int j, int endJ) {
+        while (i < endI - 1 && a.charAt(i) == '0') {
+            i++;
+        }
+        while (j < endJ - 1 && b.charAt(j) == '0') {
+            j++;
+        }
+        if (endI - i != endJ - j) {
+            return (endI - i) - (endJ - j);
+        }
+        return compareFractions(a, i, endI, b, j, endJ);
+    }
+
+    /**
+     * Compares two runs of digits as the digits after a decimal point.
+     */
+    private static int compareFractions(String a, int i, int endI, String b, int j, int endJ) {
+        while (i < endI && j < endJ) {
+            int diff = a.charAt(i) - b.charAt(j);
+            if (diff != 0) {
+                return diff;
+            }
+            i++;
+            j++;
+        }
+        return (endI - i) - (endJ - j);
+    }
+}
@@ -0,0 +1,344 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compact, memory-mapped catalogue of library items.
+ * The file holds fixed-width records sorted by call number, a dictionary of
+ * distinct author names, the author ids of each book and a heap of UTF-8
+ * strings. Opening a catalogue only maps the file; a {@link Book} or
+ * {@link DVD} is created the first time its record is touched, and every
+ * book by the same author shares one author string. The cost of opening a
+ * large catalogue is therefore paid per item used rather than up front.
+ *
+ * <p>Layout: a header of eight ints (magic, version, item count, author
+ * count, then the offsets of the author dictionary, records, author id list
+ * and string heap), followed by those four sections. Each record is
+ * {@value #RECORD_BYTES} bytes: kind, author count, year, title and call
+ * number heap references, first author id index and a fixed-width ISBN.
+ * Offsets are ints, so a catalogue file is limited to 2 GB.
+ *
+ * @author Orchlon Chinbat
+ */
+public final class CatalogueFile {
+    private static final int MAGIC = 0x4C494243; // "LIBC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int AUTHOR_ENTRY_BYTES = 8;
+    private static final int RECORD_BYTES = 37;
+    private static final int ISBN_BYTES = 17;
+    private static final byte BOOK = 'B';
+    private static final byte DVD = 'D';
+
+    private final ByteBuffer buffer;
+    private final int itemCount;
+    private final int authorsOffset;
+    private final int recordsOffset;
+    private final int authorIdsOffset;
+    private final int heapOffset;
+    private final AtomicReferenceArray<LibraryItem> items;
+    private final AtomicReferenceArray<String> authors;
+
+    /**
+     * Constructs a catalogue over a mapped file.
+     *
+     * @param buffer the mapped catalogue file
+     * @throws IOException if the file is not a catalogue
+     */
+    private CatalogueFile(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a library catalogue file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported catalogue version " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.itemCount = buffer.getInt(8);
+        int authorCount = buffer.getInt(12);
+        this.authorsOffset = buffer.getInt(16);
+        this.recordsOffset = buffer.getInt(20);
+        this.authorIdsOffset = buffer.getInt(24);
+        this.heapOffset = buffer.getInt(28);
+        this.items = new AtomicReferenceArray<>(itemCount);
+        this.authors = new AtomicReferenceArray<>(authorCount);
+    }
+
+    /**
+     * Maps a catalogue file. No items are created until they are accessed.
+     *
+     * @param file the catalogue file
+     * @return the opened catalogue
+     * @throws IOException if the file cannot be read or is not a catalogue
+     */
+    public static CatalogueFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new CatalogueFile(mapped);
+        }
+    }
+
+    /**
+     * Writes items to a new catalogue file, sorted by call number.
+     *
+     * @param file the file to create or replace
+     * @param catalogue the books and DVDs to write
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if an item cannot be encoded
+     */
+    public static void write(Path file, Collection<? extends LibraryItem> catalogue) throws IOException {
+        List<LibraryItem> sorted = new ArrayList<>(catalogue);
+        sorted.sort(Comparator.comparing(LibraryItem::getCallNumber));
+
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        Map<String, Integer> authorIds = new HashMap<>();
+        List<int[]> authorEntries = new ArrayList<>();
+        List<Integer> authorIdList = new ArrayList<>();
+        ByteBuffer records = ByteBuffer.allocate(sorted.size() * RECORD_BYTES);
+
+        for (LibraryItem item : sorted) {
+            int[] title = appendString(heap, item.getTitle());
+            int[] callNumber = appendString(heap, item.getCallNumber());
+            byte[] isbn = new byte[ISBN_BYTES];
+            int year;
+            int authorStart = authorIdList.size();
+            int authorCount = 0;
+            byte kind;
+            if (item instanceof Book) {
+                Book book = (Book) item;
+                kind = BOOK;
+                year = book.getPublicationYear();
+                byte[] isbnBytes = book.getIsbn().getBytes(StandardCharsets.US_ASCII);
+                if (isbnBytes.length > ISBN_BYTES) {
+                    throw new IllegalArgumentException("ISBN too long: " + book.getIsbn());
+                }
+                System.arraycopy(isbnBytes, 0, isbn, 0, isbnBytes.length);
+                for (String author : book.getAuthors()) {
+                    Integer id = authorIds.get(author);
+                    if (id == null) {
+                        id = authorEntries.size();
+                        authorIds.put(author, id);
+                        authorEntries.add(appendString(heap, author));
+                    }
+                    authorIdList.add(id);
+                    authorCount++;
+                }
+                if (authorCount > 255) {
+                    throw new IllegalArgumentException("Too many authors: " + item.getCallNumber());
+                }
+            } else if (item instanceof DVD) {
+                kind = DVD;
+                year = ((DVD) item).getYear();
+            } else {
+                throw new IllegalArgumentException("Unsupported item type: " + item.getClass().getName());
+            }
+
+            records.put(kind);
+            records.put((byte) authorCount);
+            records.putShort((short) year);
+            records.putInt(title[0]);
+            records.putShort((short) title[1]);
+            records.putInt(callNumber[0]);
+            records.putShort((short) callNumber[1]);
+            records.putInt(authorStart);
+            records.put(isbn);
+        }
+
+        int authorsOffset = HEADER_BYTES;
+        int recordsOffset = authorsOffset + authorEntries.size() * AUTHOR_ENTRY_BYTES;
+        int authorIdsOffset = recordsOffset + records.capacity();
+        int heapOffset = authorIdsOffset + authorIdList.size() * 4;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            out.writeInt(authorEntries.size());
+            out.writeInt(authorsOffset);
+            out.writeInt(recordsOffset);
+            out.writeInt(authorIdsOffset);
+            out.writeInt(heapOffset);
+            for (int[] entry : authorEntries) {
+                out.writeInt(entry[0]);
+                out.writeInt(entry[1]);
+            }
+            out.write(records.array());
+            for (int id : authorIdList) {
+                out.writeInt(id);
+            }
+            heap.writeTo(out);
+        }
+    }
+
+    /**
+     * Appends a string to the heap.
+     *
+     * @param heap the string heap
+     * @param value the string to append
+     * @return the heap offset and byte length of the string
+     */
+    private static int[] appendString(ByteArrayOutputStream heap, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for catalogue: " + value);
+        }
+        int offset = heap.size();
+        heap.write(bytes, 0, bytes.length);
+        return new int[] {offset, bytes.length};
+    }
+
+    /**
+     * Gets the number of items in the catalogue.
+     *
+     * @return the item count
+     */
+    public int size() {
+        return itemCount;
+    }
+
+    /**
+     * Gets the item at a position in call-number order, creating it on
+     * first access. Later calls return the same instance.
+     *
+     * @param index the position, from 0 to size() - 1
+     * @return the item
+     */
+    public LibraryItem get(int index) {
+        LibraryItem item = items.get(index);
+        if (item == null) {
+            item = materialize(index);
+            if (!items.compareAndSet(index, null, item)) {
+                item = items.get(index);
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Collects the items that have been created so far, without creating
+     * any others.
+     *
+     * @return the created items, in call-number order
+     */
+    List<LibraryItem> loadedItems() {
+        List<LibraryItem> loaded = new ArrayList<>();
+        for (int i = 0; i < itemCount; i++) {
+            LibraryItem item = items.get(i);
+            if (item != null) {
+                loaded.add(item);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Finds an item by call number using binary search over the records.
+     *
+     * @param callNumber the call number
+     * @return the item, or null if the catalogue has no such call number
+     */
+    public LibraryItem find(String callNumber) {
+        int low = 0;
+        int high = itemCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = callNumberAt(mid).compareTo(callNumber);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return get(mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes the call number of a record without creating its item.
+     *
+     * @param index the record position
+     * @return the call number
+     */
+    private String callNumberAt(int index) {
+        int record = recordsOffset + index * RECORD_BYTES;
+        return heapString(buffer.getInt(record + 10), buffer.getShort(record + 14) & 0xFFFF);
+    }
+
+    /**
+     * Creates the item for a record.
+     *
+     * @param index the record position
+     * @return a new item
+     */
+    private LibraryItem materialize(int index) {
+        int record = recordsOffset + index * RECORD_BYTES;
+        byte kind = buffer.get(record);
+        int authorCount = buffer.get(record + 1) & 0xFF;
+        int year = buffer.getShort(record + 2);
+        String title = heapString(buffer.getInt(record + 4), buffer.getShort(record + 8) & 0xFFFF);
+        String callNumber = callNumberAt(index);
+        if (kind == DVD) {
+            return new DVD(title, callNumber, year);
+        }
+
+        int authorStart = buffer.getInt(record + 16);
+        List<String> names = new ArrayList<>(authorCount);
+        for (int i = 0; i < authorCount; i++) {
+            names.add(author(buffer.getInt(authorIdsOffset + (authorStart + i) * 4)));
+        }
+        byte[] isbn = new byte[ISBN_BYTES];
+        buffer.get(record + 20, isbn, 0, ISBN_BYTES);
+        int isbnLength = 0;
+        while (isbnLength < ISBN_BYTES && isbn[isbnLength] != 0) {
+            isbnLength++;
+        }
+        return new Book(title, callNumber, names, year,
+                        new String(isbn, 0, isbnLength, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Gets an author name from the dictionary, decoding it once.
+     *
+     * @param id the author id
+     * @return the shared author string
+     */
+    private String author(int id) {
+        String name = authors.get(id);
+        if (name == null) {
+            int entry = authorsOffset + id * AUTHOR_ENTRY_BYTES;
+            name = heapString(buffer.getInt(entry), buffer.getInt(entry + 4));
+            if (!authors.compareAndSet(id, null, name)) {
+                name = authors.get(id);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Decodes a string from the heap.
+     *
+     * @param offset the offset within the heap
+     * @param length the length in bytes
+     * @return the decoded string
+     */
+    private String heapString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(heapOffset + offset, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic catalogues with realistic skew, for benchmarks.
+ * Title words and authors are drawn from Zipf distributions, so a few
+ * words ("the", "introduction") and a few prolific authors are very common
+ * while most are rare, as in a real library. Publication years lean
+ * towards recent decades, about four in five items are books, and every
+ * call number is unique. The same seed always yields the same catalogue.
+ *
+ * @author Orchlon Chinbat
+ */
+public class CatalogueGenerator {
+    private static final String[] COMMON_WORDS = {
+        "the", "of", "and", "a", "to", "in", "introduction", "history", "world",
+        "new", "art", "life", "theory", "guide", "modern", "american", "science",
+        "systems", "design", "practice", "data", "analysis", "principles", "war",
+        "handbook", "language", "programming", "music", "social", "politics",
+        "early", "study", "development", "management", "essays", "selected",
+        "applied", "methods", "english", "century", "structures", "algorithms",
+        "economics", "philosophy", "culture", "digital", "computer", "nature",
+        "medicine", "law", "poems", "stories", "reader", "complete", "second",
+        "edition", "human", "public", "city", "women", "power", "mind", "body",
+        "ancient", "europe", "china", "software", "engineering", "networks",
+        "patterns", "clean", "code", "learning", "machine", "statistics",
+        "mathematics", "physics", "chemistry", "biology", "ocean", "river",
+        "mountain", "garden", "kitchen", "house", "children", "family", "love",
+        "death", "memory", "time", "light", "shadow", "fire", "water", "stone"
+    };
+    private static final String[] FIRST_NAMES = {
+        "James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Michael",
+        "Linda", "David", "Elizabeth", "William", "Barbara", "Richard", "Susan",
+        "Joseph", "Jessica", "Thomas", "Sarah", "Charles", "Karen", "Wei", "Yuki",
+        "Priya", "Ahmed", "Olga", "Carlos", "Amara", "Lars", "Ines", "Kenji"
+    };
+    private static final String[] LAST_NAMES = {
+        "Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller",
+        "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez",
+        "Wilson", "Anderson", "Thomas", "Taylor", "Moore", "Jackson", "Martin",
+        "Lee", "Perez", "Thompson", "White", "Harris", "Sanchez", "Clark",
+        "Ramirez", "Lewis", "Robinson", "Walker", "Young", "Allen", "King",
+        "Wright", "Scott", "Torres", "Nguyen", "Hill", "Flores", "Chen", "Kim",
+        "Patel", "Ivanova", "Okafor", "Larsen", "Tanaka", "Rossi", "Muller"
+    };
+    private static final String[] CLASSES = {
+        "QA", "QC", "QH", "PS", "PR", "PQ", "HD", "HF", "BF", "TK", "ML", "ND", "RC"
+    };
+    private static final double BOOK_SHARE = 0.8;
+    private static final int NEWEST_YEAR = 2024;
+    private static final int OLDEST_YEAR = 1900;
+    private static final double MEAN_AGE_YEARS = 18;
+
+    private final Random random;
+    private final String[] words;
+    private final double[] wordWeights;
+    private final String[] authors;
+    private final double[] authorWeights;
+    private int sequence;
+
+    /**
+     * Constructs a generator for a catalogue of about the given size.
+     * The vocabulary and author pool grow with the catalogue, as they do
+     * in real collections.
+     *
+     * @param expectedSize the number of items that will be generated
+     * @param seed the random seed
+     */
+    public CatalogueGenerator(int expectedSize, long seed) {
+        this.random = new Random(seed);
+        int vocabulary = COMMON_WORDS.length + Math.max(1_000, expectedSize / 10);
+        this.words = new String[vocabulary];
+        System.arraycopy(COMMON_WORDS, 0, words, 0, COMMON_WORDS.length);
+        for (int i = COMMON_WORDS.length; i < vocabulary; i++) {
+            words[i] = syllables(i);
+        }
+        this.wordWeights = zipf(vocabulary);
+
+        int authorCount = Math.max(100, expectedSize / 20);
+        this.authors = new String[authorCount];
+        for (int i = 0; i < authorCount; i++) {
+            String first = FIRST_NAMES[i % FIRST_NAMES.length];
+            String last = LAST_NAMES[(i / FIRST_NAMES.length) % LAST_NAMES.length];
+            int generation = i / (FIRST_NAMES.length * LAST_NAMES.length);
+            authors[i] = generation == 0 ? first + " " + last
+                                         : first + " " + (char) ('A' + generation % 26) + ". " + last;
+        }
+        this.authorWeights = zipf(authorCount);
+    }
+
+    /**
+     * Builds a pronounceable made-up word from a number.
+     *
+     * @param number the word's number
+     * @return the word
+     */
+    private static String syllables(int number) {
+        String consonants = "bcdfghklmnprstvz";
+        String vowels = "aeiou";
+        StringBuilder word = new StringBuilder();
+        int rest = number;
+        do {
+            word.append(consonants.charAt(rest % consonants.length()));
+            rest /= consonants.length();
+            word.append(vowels.charAt(rest % vowels.length()));
+            rest /= vowels.length();
+        } while (rest > 0);
+        return word.toString();
+    }
+
+    /**
+     * Computes cumulative Zipf weights, where rank k has weight 1/k.
+     *
+     * @param size the number of ranks
+     * @return the cumulative weights, ending at 1
+     */
+    private static double[] zipf(int size) {
+        double[] cumulative = new double[size];
+        double total = 0;
+        for (int rank = 1; rank <= size; rank++) {
+            total += 1.0 / rank;
+            cumulative[rank - 1] = total;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= total;
+        }
+        return cumulative;
+    }
+
+    /**
+     * Draws a rank from cumulative weights.
+     *
+     * @param cumulative the cumulative weights
+     * @return the drawn index
+     */
+    private int draw(double[] cumulative) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(cumulative.length - 1, index >= 0 ? index : -index - 1);
+    }
+
+    /**
+     * Draws a title word, common words most often.
+     *
+     * @return the word
+     */
+    public String nextWord() {
+        return words[draw(wordWeights)];
+    }
+
+    /**
+     * Draws an author name, prolific authors most often.
+     *
+     * @return the author
+     */
+    public String nextAuthor() {
+        return authors[draw(authorWeights)];
+    }
+
+    /**
+     * Generates the next item.
+     *
+     * @return a new book or DVD with a call number not used before
+     */
+    public LibraryItem next() {
+        int id = sequence++;
+        int wordCount = 2 + random.nextInt(5);
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < wordCount; i++) {
+            String word = nextWord();
+            if (i > 0) {
+                title.append(' ');
+            }
+            title.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+        }
+        int age = (int) (-MEAN_AGE_YEARS * Math.log(1 - random.nextDouble()));
+        int year = Math.max(OLDEST_YEAR, NEWEST_YEAR - age);
+
+        if (random.nextDouble() >= BOOK_SHARE) {
+            return new DVD(title.toString(), String.format("DVD-791.43 %c%d %d",
+                           (char) ('A' + random.nextInt(26)), id, year), year);
+        }
+        List<String> bookAuthors = new ArrayList<>();
+        int authorCount = random.nextInt(10) < 7 ? 1 : 2 + random.nextInt(3);
+        for (int i = 0; i < authorCount; i++) {
+            bookAuthors.add(nextAuthor());
+        }
+        String callNumber = String.format("%s%d.%c%d %d", CLASSES[random.nextInt(CLASSES.length)],
+                                          1 + random.nextInt(999), (char) ('A' + random.nextInt(26)),
+                                          id, year);
+        String isbn = String.format("978-%010d", Math.floorMod(random.nextLong(), 10_000_000_000L));
+        return new Book(title.toString(), callNumber, bookAuthors, year, isbn);
+    }
+
+    /**
+     * Generates a batch of items.
+     *
+     * @param count the number of items
+     * @return the new items
+     */
+    public List<LibraryItem> generate(int count) {
+        List<LibraryItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(next());
+        }
+        return items;
+    }
+}
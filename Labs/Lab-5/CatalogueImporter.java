@@ -0,0 +1,546 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Bulk loader for catalogue dumps in CSV or JSON-lines format.
+ * The file is read in chunks of {@value #CHUNK_LINES} lines. Each chunk is
+ * parsed into books and DVDs on the common fork-join pool while the next
+ * chunks are read, and parsed chunks are added with
+ * {@link LibrarySystem#addItems(List)}, which inserts them in parallel and
+ * then indexes the whole chunk at once, so the search indexes are updated
+ * once per chunk rather than once per record.
+ * Chunks are added in file order, so when two records share a call number
+ * the first one in the file is kept. At most a few chunks per core are in
+ * memory at once, however large the file.
+ *
+ * <p>CSV files start with a header row, which is skipped. Each row has the
+ * columns {@code type,title,callNumber,year,isbn,authors}, where the type is
+ * {@code book} or {@code dvd} and authors are separated by semicolons. A
+ * field may be quoted to hold commas, with {@code ""} for a quote, but may
+ * not span lines. DVDs leave the last two columns empty.
+ *
+ * <p>JSON-lines files hold one object per line with the same keys; authors
+ * are an array of strings. Other keys are ignored.
+ *
+ * <p>Malformed records are skipped and counted; the problems with the
+ * first {@value ImportSummary#PROBLEMS_KEPT} are kept in the summary.
+ *
+ * @author Orchlon Chinbat
+ */
+public final class CatalogueImporter {
+    private static final int CHUNK_LINES = 8_192;
+    private static final int CHUNKS_PER_CORE = 2;
+
+    /**
+     * The format of a catalogue dump.
+     */
+    public enum Format {
+        CSV,
+        JSON_LINES;
+
+        /**
+         * Picks the format from a file's extension: {@code .jsonl} and
+         * {@code .ndjson} are JSON lines, anything else is CSV.
+         *
+         * @param file the dump file
+         * @return the format
+         */
+        public static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") ? JSON_LINES : CSV;
+        }
+    }
+
+    private final LibrarySystem library;
+
+    /**
+     * Constructs an importer that adds items to the given library.
+     *
+     * @param library the library to populate
+     */
+    public CatalogueImporter(LibrarySystem library) {
+        this.library = library;
+    }
+
+    /**
+     * Imports a catalogue dump, choosing the format from its extension.
+     *
+     * @param file the dump file
+     * @return counts of added, duplicate and rejected records
+     * @throws IOException if the file cannot be read
+     */
+    public ImportSummary importFile(Path file) throws IOException {
+        return importFile(file, Format.of(file));
+    }
+
+    /**
+     * Imports a catalogue dump in the given format.
+     *
+     * @param file the dump file
+     * @param format the format of the file
+     * @return counts of added, duplicate and rejected records
+     * @throws IOException if the file cannot be read
+     */
+    public ImportSummary importFile(Path file, Format format) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, format);
+        }
+    }
+
+    /**
+     * Imports a catalogue dump from a reader.
+     *
+     * @param reader the dump, positioned at its start
+     * @param format the format of the dump
+     * @return counts of added, duplicate and rejected records
+     * @throws IOException if the dump cannot be read
+     */
+    public ImportSummary importFrom(BufferedReader reader, Format format) throws IOException {
+        long start = System.nanoTime();
+        ImportSummary summary = new ImportSummary();
+        int window = Math.max(2, Runtime.getRuntime().availableProcessors() * CHUNKS_PER_CORE);
+        Deque<CompletableFuture<Chunk>> parsing = new ArrayDeque<>();
+        long lineNumber = 0;
+        if (format == Format.CSV && reader.readLine() != null) {
+            lineNumber++;
+        }
+
+        String[] lines = new String[CHUNK_LINES];
+        int count = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines[count++] = line;
+            if (count == CHUNK_LINES) {
+                parsing.add(parseAsync(lines, count, lineNumber + 1, format));
+                lineNumber += count;
+                lines = new String[CHUNK_LINES];
+                count = 0;
+                if (parsing.size() >= window) {
+                    add(parsing.poll(), summary);
+                }
+            }
+        }
+        if (count > 0) {
+            parsing.add(parseAsync(lines, count, lineNumber + 1, format));
+        }
+        while (!parsing.isEmpty()) {
+            add(parsing.poll(), summary);
+        }
+        summary.finish(System.nanoTime() - start);
+        return summary;
+    }
+
+    /**
+     * Starts parsing a chunk of lines on the common pool.
+     *
+     * @param lines the lines, only the first {@code count} of which are used
+     * @param count the number of lines in the chunk
+     * @param firstLine the line number of the first line, for reporting
+     * @param format the format of the lines
+     * @return the parsed chunk, when ready
+     */
+    private static CompletableFuture<Chunk> parseAsync(String[] lines, int count, long firstLine,
+                                                       Format format) {
+        return CompletableFuture.supplyAsync(() -> {
+            Chunk chunk = new Chunk(count);
+            for (int i = 0; i < count; i++) {
+                String line = lines[i];
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    chunk.items.add(format == Format.CSV ? parseCsv(line) : parseJson(line));
+                } catch (IllegalArgumentException e) {
+                    chunk.problems.add("Line " + (firstLine + i) + ": " + e.getMessage());
+                }
+            }
+            return chunk;
+        }, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Waits for a chunk to be parsed and adds its items to the library.
+     *
+     * @param pending the chunk being parsed
+     * @param summary the summary to update
+     */
+    private void add(CompletableFuture<Chunk> pending, ImportSummary summary) {
+        Chunk chunk;
+        try {
+            chunk = pending.join();
+        } catch (CompletionException e) {
+            // Parsing only throws unchecked exceptions; rethrow the original.
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        List<LibraryItem> duplicates = library.addItems(chunk.items);
+        summary.record(chunk.items.size() - duplicates.size(), duplicates, chunk.problems);
+    }
+
+    /**
+     * Parses one CSV row.
+     *
+     * @param line the row
+     * @return the book or DVD it describes
+     * @throws IllegalArgumentException if the row is malformed
+     */
+    private static LibraryItem parseCsv(String line) {
+        List<String> fields = new ArrayList<>(6);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(field.toString());
+        if (fields.size() != 6) {
+            throw new IllegalArgumentException("expected 6 fields but found " + fields.size());
+        }
+
+        List<String> authors = new ArrayList<>();
+        for (String author : fields.get(5).split(";")) {
+            if (!author.isBlank()) {
+                authors.add(author.strip());
+            }
+        }
+        return createItem(fields.get(0).strip(), fields.get(1).strip(), fields.get(2).strip(),
+                          parseYear(fields.get(3).strip()), fields.get(4).strip(), authors);
+    }
+
+    /**
+     * Parses one JSON-lines record.
+     *
+     * @param line the record
+     * @return the book or DVD it describes
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    private static LibraryItem parseJson(String line) {
+        JsonRecord record = new JsonRecord(line);
+        String type = null;
+        String title = null;
+        String callNumber = null;
+        String year = null;
+        String isbn = "";
+        List<String> authors = new ArrayList<>();
+
+        record.expect('{');
+        if (!record.consume('}')) {
+            do {
+                String key = record.readString();
+                record.expect(':');
+                switch (key) {
+                    case "type":
+                        type = record.readString();
+                        break;
+                    case "title":
+                        title = record.readString();
+                        break;
+                    case "callNumber":
+                        callNumber = record.readString();
+                        break;
+                    case "year":
+                        year = record.readNumber();
+                        break;
+                    case "isbn":
+                        isbn = record.readString();
+                        break;
+                    case "authors":
+                        record.expect('[');
+                        if (!record.consume(']')) {
+                            do {
+                                authors.add(record.readString());
+                            } while (record.consume(','));
+                            record.expect(']');
+                        }
+                        break;
+                    default:
+                        record.skipValue();
+                        break;
+                }
+            } while (record.consume(','));
+            record.expect('}');
+        }
+        record.expectEnd();
+
+        if (type == null || title == null || callNumber == null || year == null) {
+            throw new IllegalArgumentException("type, title, callNumber and year are required");
+        }
+        return createItem(type, title, callNumber, parseYear(year), isbn, authors);
+    }
+
+    /**
+     * Parses a year field.
+     *
+     * @param year the field
+     * @return the year
+     * @throws IllegalArgumentException if the field is not a whole number
+     */
+    private static int parseYear(String year) {
+        try {
+            return Integer.parseInt(year);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad year '" + year + "'");
+        }
+    }
+
+    /**
+     * Creates the item a record describes.
+     *
+     * @param type {@code book} or {@code dvd}, in any case
+     * @param title the title
+     * @param callNumber the call number
+     * @param year the publication or release year
+     * @param isbn the ISBN, ignored for DVDs
+     * @param authors the authors, ignored for DVDs
+     * @return the new item
+     * @throws IllegalArgumentException if the type is unknown or a required
+     *         field is empty
+     */
+    private static LibraryItem createItem(String type, String title, String callNumber, int year,
+                                          String isbn, List<String> authors) {
+        if (title.isEmpty() || callNumber.isEmpty()) {
+            throw new IllegalArgumentException("title and call number must not be empty");
+        }
+        if (type.equalsIgnoreCase("book")) {
+            return new Book(title, callNumber, authors, year, isbn);
+        }
+        if (type.equalsIgnoreCase("dvd")) {
+            return new DVD(title, callNumber, year);
+        }
+        throw new IllegalArgumentException("unknown type '" + type + "'");
+    }
+
+    /**
+     * The parsed records of one chunk and the problems found in it.
+     */
+    private static class Chunk {
+        final List<LibraryItem> items;
+        final List<String> problems;
+
+        Chunk(int lines) {
+            this.items = new ArrayList<>(lines);
+            this.problems = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Reads the flat objects of a JSON-lines record: strings, numbers and
+     * arrays of strings. Nested objects and other values are skipped.
+     */
+    private static class JsonRecord {
+        private final String text;
+        private int position;
+
+        /**
+         * Constructs a reader positioned at the start of a record.
+         *
+         * @param text the record
+         */
+        JsonRecord(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Skips whitespace and gets the next character without consuming it.
+         *
+         * @return the next character, or 0 at the end of the record
+         */
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        /**
+         * Consumes the next character if it is the expected one.
+         *
+         * @param expected the character
+         * @return true if it was consumed
+         */
+        boolean consume(char expected) {
+            if (peek() == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Consumes the next character, which must be the expected one.
+         *
+         * @param expected the character
+         * @throws IllegalArgumentException if another character is next
+         */
+        void expect(char expected) {
+            if (!consume(expected)) {
+                throw error("expected '" + expected + "'");
+            }
+        }
+
+        /**
+         * Checks that nothing but whitespace is left.
+         *
+         * @throws IllegalArgumentException if the record has trailing text
+         */
+        void expectEnd() {
+            if (peek() != 0) {
+                throw error("unexpected text");
+            }
+        }
+
+        /**
+         * Reads a string value.
+         *
+         * @return the unescaped string
+         * @throws IllegalArgumentException if no well-formed string is next
+         */
+        String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                } else if (position < text.length()) {
+                    value.append(unescape(text.charAt(position++)));
+                }
+            }
+            throw error("unterminated string");
+        }
+
+        /**
+         * Decodes the character after a backslash, reading the four hex
+         * digits of a {@code \\u} escape.
+         *
+         * @param escaped the character after the backslash
+         * @return the character it stands for
+         */
+        private char unescape(char escaped) {
+            switch (escaped) {
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'u':
+                    try {
+                        char decoded = (char) Integer.parseInt(text.substring(position, position + 4), 16);
+                        position += 4;
+                        return decoded;
+                    } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                        throw error("bad \\u escape");
+                    }
+                default:
+                    return escaped;
+            }
+        }
+
+        /**
+         * Reads a number value as written.
+         *
+         * @return the number's text
+         * @throws IllegalArgumentException if no number is next
+         */
+        String readNumber() {
+            peek();
+            int start = position;
+            while (position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected a number");
+            }
+            return text.substring(start, position);
+        }
+
+        /**
+         * Skips a value that is not used: a string, an array or object, or
+         * a literal such as a number or {@code null}.
+         *
+         * @throws IllegalArgumentException if no well-formed value is next
+         */
+        void skipValue() {
+            char next = peek();
+            if (next == '"') {
+                readString();
+            } else if (next == '[' || next == '{') {
+                int depth = 0;
+                do {
+                    char c = peek();
+                    if (c == '"') {
+                        readString();
+                        continue;
+                    }
+                    if (c == 0) {
+                        throw error("unterminated value");
+                    }
+                    if (c == '[' || c == '{') {
+                        depth++;
+                    } else if (c == ']' || c == '}') {
+                        depth--;
+                    }
+                    position++;
+                } while (depth > 0);
+            } else {
+                int start = position;
+                while (position < text.length() && ",}] \t".indexOf(text.charAt(position)) < 0) {
+                    position++;
+                }
+                if (start == position) {
+                    throw error("expected a value");
+                }
+            }
+        }
+
+        /**
+         * Describes a problem at the current position.
+         *
+         * @param problem what is wrong
+         * @return an exception to throw
+         */
+        private IllegalArgumentException error(String problem) {
+            return new IllegalArgumentException(problem + " at column " + (position + 1));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * A single checkout or check-in request, used to submit circulation work
+ * to the library system in bulk.
+ *
+ * @author Orchlon Chinbat
+ */
+public class CirculationOperation {
+    /**
+     * The kind of circulation operation.
+     */
+    public enum Type {
+        CHECK_OUT,
+        CHECK_IN
+    }
+
+    private final Type type;
+    private final String callNumber;
+    private final String studentId;
+
+    /**
+     * Constructs a circulation operation.
+     *
+     * @param type the kind of operation
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the borrowing patron, or null for a check-in
+     */
+    private CirculationOperation(Type type, String callNumber, String studentId) {
+        this.type = type;
+        this.callNumber = callNumber;
+        this.studentId = studentId;
+    }
+
+    /**
+     * Creates an operation that checks an item out to a patron.
+     *
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the patron
+     * @return the checkout operation
+     */
+    public static CirculationOperation checkOut(String callNumber, String studentId) {
+        return new CirculationOperation(Type.CHECK_OUT, callNumber, studentId);
+    }
+
+    /**
+     * Creates an operation that checks an item back in.
+     *
+     * @param callNumber the call number of the item
+     * @return the check-in operation
+     */
+    public static CirculationOperation checkIn(String callNumber) {
+        return new CirculationOperation(Type.CHECK_IN, callNumber, null);
+    }
+
+    /**
+     * Gets the kind of operation.
+     *
+     * @return the operation type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the call number of the item.
+     *
+     * @return the call number
+     */
+    public String getCallNumber() {
+        return callNumber;
+    }
+
+    /**
+     * Gets the student ID of the borrowing patron.
+     *
+     * @return the student ID, or null for a check-in
+     */
+    public String getStudentId() {
+        return studentId;
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.CHECK_OUT ? "CHECK_OUT " + callNumber + " -> " + studentId
+                                      : "CHECK_IN " + callNumber;
+    }
+}
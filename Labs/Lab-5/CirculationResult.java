@@ -0,0 +1,19 @@
+/**
+ * Outcome of a single checkout or check-in in a batch.
+ *
+ * @author Orchlon Chinbat
+ */
+public enum CirculationResult {
+    /** The operation was performed. */
+    SUCCESS,
+    /** No item exists with the given call number. */
+    ITEM_NOT_FOUND,
+    /** No patron exists with the given student ID. */
+    PATRON_NOT_FOUND,
+    /** The item could not be checked out because it is already out. */
+    ALREADY_CHECKED_OUT,
+    /** The item could not be checked out because another patron is first in line for it. */
+    ON_HOLD,
+    /** The item could not be checked in because it is not out. */
+    NOT_CHECKED_OUT
+}
@@ -0,0 +1,282 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Running circulation statistics, updated on every checkout and check-in
+ * so that reading them never scans the inventory or the patrons.
+ * <ul>
+ *   <li>Checkouts per title are counted in a {@link CountMinSketch} per
+ *       calendar month, and the titles with the highest estimates are
+ *       kept as candidates for a most-borrowed list.</li>
+ *   <li>Checkouts, and items currently on loan, are counted per decade
+ *       of publication or release.</li>
+ *   <li>Patrons holding at least one item are counted as active.</li>
+ * </ul>
+ * Only the last {@value #MONTHS_KEPT} months of title counts are kept.
+ * The statistics live in memory only; a library recovered from a journal
+ * rebuilds them from the replayed checkouts.
+ *
+ * @author Orchlon Chinbat
+ */
+public class CirculationStats {
+    private static final int MONTHS_KEPT = 12;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 4096;
+    private static final int CANDIDATES = 256;
+
+    private final Clock clock;
+    private final Map<YearMonth, Month> months;
+    private final Map<Integer, Decade> decades;
+    private final LongAdder totalCheckouts;
+    private final LongAdder activePatrons;
+    private volatile Month current;
+
+    /**
+     * Counters for one decade of publication or release.
+     */
+    private static class Decade {
+        final LongAdder checkouts = new LongAdder();
+        final LongAdder onLoan = new LongAdder();
+    }
+
+    /**
+     * Title counts for one calendar month.
+     * Candidates map titles to their estimated count. A title enters when
+     * its estimate is above {@code floor}; when the candidates are full,
+     * the lower half is evicted in one go and the floor raised to the
+     * largest evicted estimate. Evicting in halves keeps the cost of
+     * admitting a title to a small constant on average, even when many
+     * titles are about equally popular.
+     */
+    private static class Month {
+        final long startMillis;
+        final long endMillis;
+        final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        final Map<String, Long> candidates = new ConcurrentHashMap<>();
+        final LongAdder checkouts = new LongAdder();
+        volatile long floor;
+
+        Month(YearMonth month, Clock clock) {
+            this.startMillis = month.atDay(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+            this.endMillis = month.plusMonths(1).atDay(1).atStartOfDay(clock.getZone())
+                                  .toInstant().toEpochMilli();
+        }
+
+        void record(String title) {
+            checkouts.increment();
+            long estimate = sketch.add(title);
+            if (candidates.replace(title, estimate) != null || estimate <= floor) {
+                return;
+            }
+            synchronized (this) {
+                if (candidates.size() >= CANDIDATES) {
+                    List<Map.Entry<String, Long>> ranked = new ArrayList<>(candidates.entrySet());
+                    ranked.sort(Map.Entry.comparingByValue());
+                    for (int i = 0; i < ranked.size() / 2; i++) {
+                        candidates.remove(ranked.get(i).getKey());
+                        floor = Math.max(floor, ranked.get(i).getValue());
+                    }
+                }
+                if (estimate > floor) {
+                    candidates.put(title, estimate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Constructs empty statistics.
+     *
+     * @param clock the clock deciding which month a checkout falls in
+     */
+    public CirculationStats(Clock clock) {
+        this.clock = clock;
+        this.months = new ConcurrentHashMap<>();
+        this.decades = new ConcurrentHashMap<>();
+        this.totalCheckouts = new LongAdder();
+        this.activePatrons = new LongAdder();
+    }
+
+    /**
+     * Records a checkout.
+     *
+     * @param item the item checked out
+     * @param firstLoan whether the borrower had no other item out
+     * @param nowMillis the time of the checkout, in epoch milliseconds
+     */
+    void recordCheckout(LibraryItem item, boolean firstLoan, long nowMillis) {
+        totalCheckouts.increment();
+        Decade decade = decadeOf(item);
+        decade.checkouts.increment();
+        decade.onLoan.increment();
+        if (firstLoan) {
+            activePatrons.increment();
+        }
+        monthOf(nowMillis).record(item.getTitle());
+    }
+
+    /**
+     * Records a check-in.
+     *
+     * @param item the item checked in
+     * @param lastLoan whether the borrower has no other item out now
+     */
+    void recordCheckin(LibraryItem item, boolean lastLoan) {
+        decadeOf(item).onLoan.decrement();
+        if (lastLoan) {
+            activePatrons.decrement();
+        }
+    }
+
+    /**
+     * Gets the counts for the month containing a time. The current month
+     * is cached with its bounds, so the calendar is only consulted when a
+     * month ends; a new month's counts are created then and the oldest
+     * month is dropped.
+     *
+     * @param nowMillis the time, in epoch milliseconds
+     * @return that month's counts
+     */
+    private Month monthOf(long nowMillis) {
+        Month counts = current;
+        if (counts != null && nowMillis >= counts.startMillis && nowMillis < counts.endMillis) {
+            return counts;
+        }
+        YearMonth month = YearMonth.from(Instant.ofEpochMilli(nowMillis).atZone(clock.getZone()));
+        counts = months.computeIfAbsent(month, m -> new Month(m, clock));
+        YearMonth oldest = month.minusMonths(MONTHS_KEPT - 1);
+        months.keySet().removeIf(m -> m.isBefore(oldest));
+        current = counts;
+        return counts;
+    }
+
+    /**
+     * Gets the counters for the decade of an item's year, such as 1990 for
+     * 1995.
+     *
+     * @param item the item
+     * @return the decade's counters
+     */
+    private Decade decadeOf(LibraryItem item) {
+        return decades.computeIfAbsent(Math.floorDiv(item.getYear(), 10) * 10, d -> new Decade());
+    }
+
+    /**
+     * Gets the number of checkouts since the statistics were created.
+     *
+     * @return the total checkouts
+     */
+    public long getTotalCheckouts() {
+        return totalCheckouts.sum();
+    }
+
+    /**
+     * Gets the number of checkouts in a month.
+     *
+     * @param month the month
+     * @return the checkouts, or 0 if the month is not kept
+     */
+    public long getCheckouts(YearMonth month) {
+        Month counts = months.get(month);
+        return counts == null ? 0 : counts.checkouts.sum();
+    }
+
+    /**
+     * Gets the number of patrons with at least one item checked out.
+     *
+     * @return the active patrons
+     */
+    public long getActivePatrons() {
+        return activePatrons.sum();
+    }
+
+    /**
+     * Estimates how many times a title was checked out in a month.
+     * The estimate is never below the true count.
+     *
+     * @param title the title
+     * @param month the month
+     * @return the estimated checkouts, or 0 if the month is not kept
+     */
+    public long estimateCheckouts(String title, YearMonth month) {
+        Month counts = months.get(month);
+        return counts == null ? 0 : counts.sketch.estimate(title);
+    }
+
+    /**
+     * Lists the most borrowed titles of the current month.
+     *
+     * @param limit the maximum number of titles
+     * @return up to {@code limit} titles, most borrowed first
+     */
+    public List<String> getMostBorrowed(int limit) {
+        return getMostBorrowed(YearMonth.now(clock), limit);
+    }
+
+    /**
+     * Lists the most borrowed titles of a month.
+     * Only a fixed number of candidate titles is sorted, whatever the size
+     * of the catalogue.
+     *
+     * @param month the month
+     * @param limit the maximum number of titles
+     * @return up to {@code limit} titles, most borrowed first
+     */
+    public List<String> getMostBorrowed(YearMonth month, int limit) {
+        Month counts = months.get(month);
+        List<String> titles = new ArrayList<>();
+        if (counts == null) {
+            return titles;
+        }
+        List<Map.Entry<String, Long>> ranked = new ArrayList<>(counts.candidates.entrySet());
+        ranked.sort(Map.Entry.<String, Long>comparingByValue().reversed()
+                             .thenComparing(Map.Entry.comparingByKey()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            titles.add(ranked.get(i).getKey());
+        }
+        return titles;
+    }
+
+    /**
+     * Gets the checkouts per decade of publication or release.
+     *
+     * @return checkouts keyed by the first year of each decade, in order
+     */
+    public Map<Integer, Long> getCheckoutsByDecade() {
+        return sums(decade -> decade.checkouts);
+    }
+
+    /**
+     * Gets the items currently on loan per decade of publication or release.
+     *
+     * @return loans keyed by the first year of each decade, in order
+     */
+    public Map<Integer, Long> getOnLoanByDecade() {
+        return sums(decade -> decade.onLoan);
+    }
+
+    /**
+     * Reads one counter of every decade into a sorted map of sums.
+     *
+     * @param counter picks the counter to read from a decade
+     * @return the non-zero sums by decade
+     */
+    private Map<Integer, Long> sums(Function<Decade, LongAdder> counter) {
+        Map<Integer, Long> result = new TreeMap<>();
+        decades.forEach((year, decade) -> {
+            long sum = counter.apply(decade).sum();
+            if (sum != 0) {
+                result.put(year, sum);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,32 @@
+import java.io.PrintStream;
+
+/**
+ * Prints each library event's message to a stream, one event per call.
+ * This reproduces the system's original console output.
+ *
+ * @author Orchlon Chinbat
+ */
+public class ConsoleEventListener implements LibraryEventListener {
+    private final PrintStream out;
+
+    /**
+     * Constructs a listener that prints to standard output.
+     */
+    public ConsoleEventListener() {
+        this(System.out);
+    }
+
+    /**
+     * Constructs a listener that prints to the given stream.
+     *
+     * @param out the stream to print to
+     */
+    public ConsoleEventListener(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void onEvent(LibraryEvent event) {
+        out.println(event.getMessage());
+    }
+}
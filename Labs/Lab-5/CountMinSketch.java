@@ -0,0 +1,83 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size frequency sketch that estimates how often each key was seen.
+ * A count-min sketch keeps a few rows of counters; each key increments one
+ * counter per row, chosen by a different hash, and its estimate is the
+ * smallest of those counters. Collisions can only add to a counter, so an
+ * estimate is never below the true count and exceeds it by at most about
+ * {@code e / width} of the total count with high probability. Memory stays
+ * at {@code depth * width} longs however many distinct keys are counted.
+ *
+ * <p>Counters are atomic, so the sketch can be updated and read from
+ * several threads without locking.
+ *
+ * @author Orchlon Chinbat
+ */
+public class CountMinSketch {
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+
+    /**
+     * Constructs an empty sketch.
+     *
+     * @param depth the number of rows (independent hashes)
+     * @param width the counters per row, rounded up to a power of two
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth < 1 || width < 1) {
+            throw new IllegalArgumentException("Depth and width must be positive");
+        }
+        int rowWidth = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        this.depth = depth;
+        this.mask = rowWidth - 1;
+        this.counters = new AtomicLongArray(depth * rowWidth);
+    }
+
+    /**
+     * Counts one occurrence of a key.
+     *
+     * @param key the key
+     * @return the key's estimated count including this occurrence
+     */
+    public long add(Object key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Estimates how many times a key was counted.
+     *
+     * @param key the key
+     * @return an estimate that is never below the true count
+     */
+    public long estimate(Object key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Finds a key's counter in one row.
+     *
+     * @param hash the key's hash code
+     * @param row the row
+     * @return the index of the counter in the counter array
+     */
+    private int index(int hash, int row) {
+        // Re-mix the hash with a different odd multiplier per row.
+        int mixed = hash * (0x9E3779B9 + 2 * row);
+        mixed ^= mixed >>> 16;
+        mixed *= 0x85EBCA6B;
+        mixed ^= mixed >>> 13;
+        return row * (mask + 1) + (mixed & mask);
+    }
+}
@@ -24,18 +24,19 @@ public class DVD extends LibraryItem {
      * 
      * @return the year
      */
+    @Override
     public int getYear() {
         return year;
     }
     
     @Override
-    public String getDetails() {
+    protected String formatDetails() {
         return String.format("DVD: '%s' (%d) | Call#: %s",
                            getTitle(), year, getCallNumber());
     }
     
     @Override
-    public String getSearchableText() {
+    protected String buildSearchableText() {
         return (getTitle() + " " + getCallNumber()).toLowerCase();
     }
 }
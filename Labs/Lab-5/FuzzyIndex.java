@@ -0,0 +1,258 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Typo-tolerant index over item titles and author names.
+ * Terms are stored in a BK-tree: each child hangs off its parent at the
+ * edit distance between the two terms, so by the triangle inequality a
+ * query within distance k of some term only needs to descend into children
+ * whose edge distance is within k of the query's distance to the parent.
+ * A bounded query therefore visits a small part of the tree instead of
+ * computing the edit distance to every title in the library.
+ *
+ * <p>Indexed terms are the whole title, each whole author name, and every
+ * word of four or more letters in either, all lowercased with punctuation
+ * collapsed to single spaces. Removing an item only empties its posting
+ * sets; the tree nodes stay so the structure never has to be rebuilt.
+ *
+ * @author Orchlon Chinbat
+ */
+public class FuzzyIndex {
+    private static final int MIN_WORD_LENGTH = 4;
+
+    private final AtomicReference<Node> root;
+
+    /**
+     * A term in the BK-tree together with the items containing it.
+     */
+    private static class Node {
+        final String term;
+        final Set<LibraryItem> items;
+        final Map<Integer, Node> children;
+
+        Node(String term) {
+            this.term = term;
+            this.items = ConcurrentHashMap.newKeySet();
+            this.children = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Constructs an empty fuzzy index.
+     */
+    public FuzzyIndex() {
+        this.root = new AtomicReference<>();
+    }
+
+    /**
+     * Lowercases text and collapses punctuation and whitespace to single spaces.
+     *
+     * @param text the text to normalize
+     * @return the normalized text
+     */
+    public static String normalize(String text) {
+        return String.join(" ", TokenIndex.tokenize(text));
+    }
+
+    /**
+     * Gets the default edit distance allowed for a query: none for very
+     * short queries, one typo up to eight characters and two beyond that.
+     *
+     * @param normalizedQuery the normalized query
+     * @return the maximum edit distance
+     */
+    public static int defaultMaxDistance(String normalizedQuery) {
+        int length = normalizedQuery.length();
+        if (length <= 3) {
+            return 0;
+        }
+        return length <= 8 ? 1 : 2;
+    }
+
+    /**
+     * Collects the terms an item is indexed under.
+     *
+     * @param item the item
+     * @return the distinct terms
+     */
+    private static Set<String> terms(LibraryItem item) {
+        List<String> names = new ArrayList<>();
+        names.add(item.getTitle());
+        if (item instanceof Book) {
+            names.addAll(((Book) item).getAuthors());
+        }
+        Set<String> terms = new LinkedHashSet<>();
+        for (String name : names) {
+            List<String> words = TokenIndex.tokenize(name);
+            if (!words.isEmpty()) {
+                terms.add(String.join(" ", words));
+            }
+            for (String word : words) {
+                if (word.length() >= MIN_WORD_LENGTH) {
+                    terms.add(word);
+                }
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Adds an item under each of its terms.
+     *
+     * @param item the item to index
+     */
+    public void add(LibraryItem item) {
+        for (String term : terms(item)) {
+            find(term).items.add(item);
+        }
+    }
+
+    /**
+     * Adds a batch of items. Items sharing a term, such as the books of one
+     * author, are grouped first, so the tree is descended once per distinct
+     * term rather than once per item.
+     *
+     * @param items the items to index
+     */
+    public void addAll(Collection<? extends LibraryItem> items) {
+        Map<String, List<LibraryItem>> grouped = new HashMap<>();
+        for (LibraryItem item : items) {
+            for (String term : terms(item)) {
+                grouped.computeIfAbsent(term, t -> new ArrayList<>()).add(item);
+            }
+        }
+        grouped.forEach((term, batch) -> find(term).items.addAll(batch));
+    }
+
+    /**
+     * Finds the node of a term, adding it to the tree if it is new.
+     *
+     * @param term the normalized term
+     * @return the term's node
+     */
+    private Node find(String term) {
+        Node node = root.get();
+        if (node == null) {
+            root.compareAndSet(null, new Node(term));
+            node = root.get();
+        }
+        while (true) {
+            int distance = distance(term, node.term);
+            if (distance == 0) {
+                return node;
+            }
+            node = node.children.computeIfAbsent(distance, k -> new Node(term));
+        }
+    }
+
+    /**
+     * Removes an item from the posting sets of its terms.
+     *
+     * @param item the item to remove
+     */
+    public void remove(LibraryItem item) {
+        for (String term : terms(item)) {
+            Node node = root.get();
+            while (node != null) {
+                int distance = distance(term, node.term);
+                if (distance == 0) {
+                    node.items.remove(item);
+                    break;
+                }
+                node = node.children.get(distance);
+            }
+        }
+    }
+
+    /**
+     * Finds items with a title, author or word within an edit distance of
+     * the query. Closer matches come first.
+     *
+     * @param query the query, normalized the same way as indexed terms
+     * @param maxDistance the largest number of single-character edits allowed
+     * @return the matching items, closest first, without duplicates
+     */
+    public List<LibraryItem> search(String query, int maxDistance) {
+        TreeMap<Integer, List<Node>> matches = new TreeMap<>();
+        List<Node> pending = new ArrayList<>();
+        Node start = root.get();
+        if (start != null) {
+            pending.add(start);
+        }
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            int distance = distance(query, node.term);
+            if (distance <= maxDistance && !node.items.isEmpty()) {
+                matches.computeIfAbsent(distance, d -> new ArrayList<>()).add(node);
+            }
+            for (int d = Math.max(1, distance - maxDistance); d <= distance + maxDistance; d++) {
+                Node child = node.children.get(d);
+                if (child != null) {
+                    pending.add(child);
+                }
+            }
+        }
+
+        Set<LibraryItem> results = new LinkedHashSet<>();
+        for (List<Node> nodes : matches.values()) {
+            for (Node node : nodes) {
+                results.addAll(node.items);
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Computes the Levenshtein distance between two strings.
+     * A shared prefix and suffix never need editing, so they are skipped
+     * before filling the table; terms such as numbered titles often differ
+     * only in a few characters in the middle.
+     *
+     * @param a the first string
+     * @param b the second string
+     * @return the minimum number of insertions, deletions and substitutions
+     */
+    static int distance(String a, String b) {
+        if (a.length() < b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        int start = 0;
+        while (start < b.length() && a.charAt(start) == b.charAt(start)) {
+            start++;
+        }
+        int aEnd = a.length();
+        int bEnd = b.length();
+        while (bEnd > start && a.charAt(aEnd - 1) == b.charAt(bEnd - 1)) {
+            aEnd--;
+            bEnd--;
+        }
+        int width = bEnd - start;
+        int[] previous = new int[width + 1];
+        int[] current = new int[width + 1];
+        for (int j = 0; j <= width; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= aEnd - start; i++) {
+            current[0] = i;
+            char c = a.charAt(start + i - 1);
+            for (int j = 1; j <= width; j++) {
+                int substitution = previous[j - 1] + (c == b.charAt(start + j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[width];
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * First-in, first-out queue of patrons waiting for one item.
+ * Queues are created only when the first hold is placed and retired when
+ * the last one is filled or cancelled, so items nobody is waiting for have
+ * no queue at all. A retired queue refuses new holds; the library system
+ * then creates a fresh queue, so a hold can never be added to a queue that
+ * has already been dropped from the registry.
+ *
+ * <p>All methods synchronize on the queue, and the library system holds the
+ * same monitor while handing the item to the next patron.
+ *
+ * @author Orchlon Chinbat
+ */
+final class HoldQueue {
+    private final Deque<Patron> waiting;
+    private boolean retired;
+
+    /**
+     * Constructs an empty queue.
+     */
+    HoldQueue() {
+        this.waiting = new ArrayDeque<>(4);
+    }
+
+    /**
+     * Adds a patron to the end of the queue.
+     *
+     * @param patron the patron placing the hold
+     * @return the patron's 1-based position, 0 if the patron is already
+     *         waiting, or -1 if the queue is retired
+     */
+    synchronized int offer(Patron patron) {
+        if (retired) {
+            return -1;
+        }
+        if (waiting.contains(patron)) {
+            return 0;
+        }
+        waiting.addLast(patron);
+        return waiting.size();
+    }
+
+    /**
+     * Removes a patron from the queue, retiring the queue if it empties.
+     *
+     * @param patron the patron whose hold ends
+     * @return true if the patron was waiting
+     */
+    synchronized boolean remove(Patron patron) {
+        boolean removed = waiting.remove(patron);
+        if (waiting.isEmpty()) {
+            retired = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Retires the queue and drops every hold in it.
+     */
+    synchronized void retire() {
+        waiting.clear();
+        retired = true;
+    }
+
+    /**
+     * Checks whether the queue has been retired.
+     *
+     * @return true if the queue no longer accepts holds
+     */
+    synchronized boolean isRetired() {
+        return retired;
+    }
+
+    /**
+     * Gets the patron at the front of the queue.
+     *
+     * @return the next patron, or null if nobody is waiting
+     */
+    synchronized Patron peek() {
+        return waiting.peekFirst();
+    }
+
+    /**
+     * Checks whether a patron may take the item now: either nobody is
+     * waiting or the patron is first in line.
+     *
+     * @param patron the patron wanting the item
+     * @return true if the patron does not jump the queue
+     */
+    synchronized boolean admits(Patron patron) {
+        Patron next = waiting.peekFirst();
+        return next == null || next == patron;
+    }
+
+    /**
+     * Gets a patron's position in the queue.
+     *
+     * @param patron the patron
+     * @return the 1-based position, or 0 if the patron is not waiting
+     */
+    synchronized int positionOf(Patron patron) {
+        int position = 1;
+        for (Patron waitingPatron : waiting) {
+            if (waitingPatron == patron) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the number of patrons waiting.
+     *
+     * @return the queue length
+     */
+    synchronized int size() {
+        return waiting.size();
+    }
+
+    /**
+     * Copies the waiting patrons in queue order.
+     *
+     * @return the patrons, first in line first
+     */
+    synchronized List<Patron> toList() {
+        return new ArrayList<>(waiting);
+    }
+}
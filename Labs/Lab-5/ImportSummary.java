@@ -0,0 +1,122 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of a catalogue import: how many records were added, refused
+ * as duplicates or rejected as malformed, and how long it took.
+ * Only the first {@value #PROBLEMS_KEPT} duplicate call numbers and
+ * malformed records are described, so a bad dump cannot fill memory with
+ * messages.
+ *
+ * @author Orchlon Chinbat
+ */
+public class ImportSummary {
+    /** The most problems described in a summary. */
+    public static final int PROBLEMS_KEPT = 100;
+
+    private final List<String> problems;
+    private long added;
+    private long duplicates;
+    private long rejected;
+    private Duration elapsed;
+
+    /**
+     * Constructs an empty summary, to be filled in by the importer.
+     */
+    ImportSummary() {
+        this.problems = new ArrayList<>();
+        this.elapsed = Duration.ZERO;
+    }
+
+    /**
+     * Adds the outcome of one chunk of records.
+     *
+     * @param addedCount the records added
+     * @param duplicateItems the records refused because their call number exists
+     * @param malformed descriptions of the records that could not be parsed
+     */
+    void record(long addedCount, List<LibraryItem> duplicateItems, List<String> malformed) {
+        added += addedCount;
+        duplicates += duplicateItems.size();
+        rejected += malformed.size();
+        for (LibraryItem item : duplicateItems) {
+            keep("Duplicate call number: " + item.getCallNumber());
+        }
+        for (String problem : malformed) {
+            keep(problem);
+        }
+    }
+
+    /**
+     * Keeps a problem description if there is room.
+     *
+     * @param problem the description
+     */
+    private void keep(String problem) {
+        if (problems.size() < PROBLEMS_KEPT) {
+            problems.add(problem);
+        }
+    }
+
+    /**
+     * Records how long the import took.
+     *
+     * @param nanos the elapsed time in nanoseconds
+     */
+    void finish(long nanos) {
+        elapsed = Duration.ofNanos(nanos);
+    }
+
+    /**
+     * Gets the number of records added to the library.
+     *
+     * @return the added records
+     */
+    public long getAdded() {
+        return added;
+    }
+
+    /**
+     * Gets the number of records refused because their call number was
+     * already in the library or earlier in the dump.
+     *
+     * @return the duplicate records
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Gets the number of records that could not be parsed.
+     *
+     * @return the malformed records
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Gets descriptions of the first duplicate and malformed records.
+     *
+     * @return up to {@value #PROBLEMS_KEPT} descriptions
+     */
+    public List<String> getProblems() {
+        return new ArrayList<>(problems);
+    }
+
+    /**
+     * Gets how long the import took.
+     *
+     * @return the elapsed time
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Imported %,d items in %,d ms (%,d duplicates, %,d rejected)",
+                             added, elapsed.toMillis(), duplicates, rejected);
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of library items shared by the journal and snapshot files.
+ * Each item starts with a one-byte kind tag followed by its fields.
+ * Due dates are written as a presence flag followed by the epoch second
+ * and nanosecond, so they round-trip exactly.
+ *
+ * @author Orchlon Chinbat
+ */
+final class ItemCodec {
+    private static final byte BOOK = 'B';
+    private static final byte DVD = 'D';
+
+    private ItemCodec() {
+    }
+
+    /**
+     * Writes an item's fields.
+     *
+     * @param out the destination
+     * @param item the item to write
+     * @throws IOException if the destination cannot be written
+     */
+    static void writeItem(DataOutput out, LibraryItem item) throws IOException {
+        if (item instanceof Book) {
+            Book book = (Book) item;
+            out.writeByte(BOOK);
+            out.writeUTF(book.getTitle());
+            out.writeUTF(book.getCallNumber());
+            List<String> authors = book.getAuthors();
+            out.writeShort(authors.size());
+            for (String author : authors) {
+                out.writeUTF(author);
+            }
+            out.writeInt(book.getPublicationYear());
+            out.writeUTF(book.getIsbn());
+        } else if (item instanceof DVD) {
+            DVD dvd = (DVD) item;
+            out.writeByte(DVD);
+            out.writeUTF(dvd.getTitle());
+            out.writeUTF(dvd.getCallNumber());
+            out.writeInt(dvd.getYear());
+        } else {
+            throw new IllegalArgumentException("Unsupported item type: " + item.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads an item written by {@link #writeItem(DataOutput, LibraryItem)}.
+     *
+     * @param in the source
+     * @return a new, available item
+     * @throws IOException if the source is truncated or holds an unknown kind
+     */
+    static LibraryItem readItem(DataInput in) throws IOException {
+        byte kind = in.readByte();
+        String title = in.readUTF();
+        String callNumber = in.readUTF();
+        if (kind == BOOK) {
+            int authorCount = in.readUnsignedShort();
+            List<String> authors = new ArrayList<>(authorCount);
+            for (int i = 0; i < authorCount; i++) {
+                authors.add(in.readUTF());
+            }
+            int year = in.readInt();
+            String isbn = in.readUTF();
+            return new Book(title, callNumber, authors, year, isbn);
+        } else if (kind == DVD) {
+            return new DVD(title, callNumber, in.readInt());
+        }
+        throw new IOException("Unknown item kind: " + kind);
+    }
+
+    /**
+     * Writes an optional due date.
+     *
+     * @param out the destination
+     * @param dueDate the due date, or null
+     * @throws IOException if the destination cannot be written
+     */
+    static void writeDueDate(DataOutput out, Instant dueDate) throws IOException {
+        out.writeBoolean(dueDate != null);
+        if (dueDate != null) {
+            out.writeLong(dueDate.getEpochSecond());
+            out.writeInt(dueDate.getNano());
+        }
+    }
+
+    /**
+     * Reads a due date written by {@link #writeDueDate(DataOutput, Instant)}.
+     *
+     * @param in the source
+     * @return the due date, or null if none was written
+     * @throws IOException if the source is truncated
+     */
+    static Instant readDueDate(DataInput in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        long seconds = in.readLong();
+        return Instant.ofEpochSecond(seconds, in.readInt());
+    }
+}
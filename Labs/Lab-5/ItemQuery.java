@@ -0,0 +1,208 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A lookup of items by their attributes, such as "books by Thomas H. Cormen
+ * published after 2000". Every condition must hold. Queries are immutable:
+ * each {@code with}, {@code by}, {@code of} and {@code published} method
+ * returns a new query with one more condition.
+ *
+ * <pre>
+ * library.findItems(ItemQuery.all().ofType(Book.class)
+ *                                  .byAuthor("Thomas H. Cormen")
+ *                                  .publishedAfter(2000));
+ * </pre>
+ *
+ * @author Orchlon Chinbat
+ * @see LibrarySystem#findItems(ItemQuery)
+ */
+public final class ItemQuery {
+    private static final ItemQuery ALL =
+            new ItemQuery(null, Collections.emptyList(), LibraryItem.class, Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+    private final String isbn;
+    private final List<String> authors;
+    private final Class<? extends LibraryItem> type;
+    private final int fromYear;
+    private final int toYear;
+
+    /**
+     * Constructs a query.
+     *
+     * @param isbn the normalized ISBN to match, or null for any
+     * @param authors the author names that must all be listed
+     * @param type the class the items must belong to
+     * @param fromYear the earliest year to match
+     * @param toYear the latest year to match
+     */
+    private ItemQuery(String isbn, List<String> authors, Class<? extends LibraryItem> type,
+                      int fromYear, int toYear) {
+        this.isbn = isbn;
+        this.authors = authors;
+        this.type = type;
+        this.fromYear = fromYear;
+        this.toYear = toYear;
+    }
+
+    /**
+     * Gets the query that matches every item, to add conditions to.
+     *
+     * @return the unconditional query
+     */
+    public static ItemQuery all() {
+        return ALL;
+    }
+
+    /**
+     * Restricts the query to a given ISBN. Hyphens and spaces are ignored,
+     * so "978-0262033848" and "9780262033848" find the same book.
+     *
+     * @param isbn the ISBN
+     * @return the narrower query
+     */
+    public ItemQuery withIsbn(String isbn) {
+        return new ItemQuery(normalizeIsbn(isbn), authors, type, fromYear, toYear);
+    }
+
+    /**
+     * Restricts the query to items listing an author. Names must match
+     * exactly; calling this again requires every named author.
+     *
+     * @param author the author name
+     * @return the narrower query
+     */
+    public ItemQuery byAuthor(String author) {
+        List<String> more = new ArrayList<>(authors);
+        more.add(author);
+        return new ItemQuery(isbn, Collections.unmodifiableList(more), type, fromYear, toYear);
+    }
+
+    /**
+     * Restricts the query to one kind of item, subclasses included.
+     *
+     * @param type the item class, such as {@code Book.class}
+     * @return the narrower query
+     */
+    public ItemQuery ofType(Class<? extends LibraryItem> type) {
+        return new ItemQuery(isbn, authors, type, fromYear, toYear);
+    }
+
+    /**
+     * Restricts the query to items from a range of years.
+     *
+     * @param fromYear the earliest year, inclusive
+     * @param toYear the latest year, inclusive
+     * @return the narrower query
+     */
+    public ItemQuery publishedBetween(int fromYear, int toYear) {
+        return new ItemQuery(isbn, authors, type, Math.max(this.fromYear, fromYear),
+                             Math.min(this.toYear, toYear));
+    }
+
+    /**
+     * Restricts the query to items from after a year.
+     *
+     * @param year the year, exclusive
+     * @return the narrower query
+     */
+    public ItemQuery publishedAfter(int year) {
+        return publishedBetween(year == Integer.MAX_VALUE ? year : year + 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Restricts the query to items from before a year.
+     *
+     * @param year the year, exclusive
+     * @return the narrower query
+     */
+    public ItemQuery publishedBefore(int year) {
+        return publishedBetween(Integer.MIN_VALUE, year == Integer.MIN_VALUE ? year : year - 1);
+    }
+
+    /**
+     * Gets the ISBN to match.
+     *
+     * @return the ISBN without hyphens or spaces, or null for any
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Gets the authors that must all be listed.
+     *
+     * @return an unmodifiable list of author names, empty for any
+     */
+    public List<String> getAuthors() {
+        return authors;
+    }
+
+    /**
+     * Gets the kind of item to match.
+     *
+     * @return the item class, {@code LibraryItem.class} for any
+     */
+    public Class<? extends LibraryItem> getType() {
+        return type;
+    }
+
+    /**
+     * Gets the earliest year to match.
+     *
+     * @return the year, inclusive
+     */
+    public int getFromYear() {
+        return fromYear;
+    }
+
+    /**
+     * Gets the latest year to match.
+     *
+     * @return the year, inclusive
+     */
+    public int getToYear() {
+        return toYear;
+    }
+
+    /**
+     * Checks whether the query restricts the year.
+     *
+     * @return true if some year is excluded
+     */
+    boolean hasYearRange() {
+        return fromYear != Integer.MIN_VALUE || toYear != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Strips the hyphens and spaces from an ISBN and uppercases a final X.
+     *
+     * @param isbn the ISBN as written
+     * @return the ISBN in the form it is indexed under
+     */
+    static String normalizeIsbn(String isbn) {
+        StringBuilder normalized = new StringBuilder(isbn.length());
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c != '-' && c != ' ') {
+                normalized.append(Character.toUpperCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(type.getSimpleName());
+        if (isbn != null) {
+            text.append(" isbn=").append(isbn);
+        }
+        for (String author : authors) {
+            text.append(" author=").append(author);
+        }
+        if (hasYearRange()) {
+            text.append(" years=").append(fromYear).append("..").append(toYear);
+        }
+        return text.toString();
+    }
+}
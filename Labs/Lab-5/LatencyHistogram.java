@@ -0,0 +1,205 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with bounded relative error, in the
+ * manner of HdrHistogram. Values below 32 get a bucket each; above that,
+ * every power of two is split into 32 equal buckets, so a reported value
+ * is within about 3% of the true one while the whole range of a long fits
+ * in under two thousand counters.
+ *
+ * <p>Recording finds the bucket with a few shifts and bumps one atomic
+ * counter, so it allocates nothing and never locks. Readers copy the
+ * counters, so a summary taken while recording goes on may be off by the
+ * few values recorded during the copy.
+ *
+ * @author Orchlon Chinbat
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts;
+    private final LongAdder total;
+    private final AtomicLong max;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.total = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records one latency. Negative values, which a clock stepping
+     * backwards can produce, are recorded as zero.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Gets the bucket a value falls in.
+     *
+     * @param value a non-negative value
+     * @return the bucket index
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * Gets the largest value that falls in a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the bucket's upper bound
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lower = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the largest value recorded.
+     *
+     * @return the maximum in nanoseconds, or 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Takes a summary of the values recorded so far.
+     *
+     * @return the summary
+     */
+    public Summary summarize() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Summary(copy, count, total.sum(), max.get());
+    }
+
+    /**
+     * Forgets every value recorded so far.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * Counts, mean and percentiles of a histogram at one moment.
+     */
+    public static final class Summary {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        /**
+         * Constructs a summary from copied counters.
+         *
+         * @param counts the bucket counts
+         * @param count the sum of the bucket counts
+         * @param total the sum of the recorded values
+         * @param max the largest recorded value
+         */
+        private Summary(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * Gets the number of values recorded.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the mean of the values recorded.
+         *
+         * @return the mean in nanoseconds, or 0 if nothing was recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Gets the largest value recorded.
+         *
+         * @return the maximum in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Gets the value below which a given share of the values fall.
+         * The answer is the upper bound of the bucket holding that rank,
+         * capped at the maximum, so it never understates a latency.
+         *
+         * @param percentile the share, from 0 to 100
+         * @return the value in nanoseconds, or 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, percentile) / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Benchmark harness for the library system at scale.
+ * For each catalogue size, a synthetic catalogue from
+ * {@link CatalogueGenerator} is loaded and every scenario is run on one
+ * thread and on several. A scenario runs for a few warm-up iterations,
+ * so the JIT compiler has settled, and then for timed iterations whose
+ * mean throughput and spread are reported. Results are written as CSV
+ * and, if a baseline file from an earlier run is given, compared with it
+ * so a change can be checked for regressions.
+ *
+ * <p>Options, all optional:
+ * <pre>
+ *   --sizes 10000,100000     catalogue sizes
+ *   --threads 1,4            thread counts (default 1 and the core count)
+ *   --iteration-ms 1000      length of each iteration
+ *   --out results.csv        where to write the results
+ *   --baseline old.csv       earlier results to compare against
+ * </pre>
+ * Adding items is timed once per size and thread count, on a fresh
+ * library, since each run consumes a whole catalogue. Large sizes need a
+ * heap to match: every item is held in the inventory and its search
+ * indexes.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryBenchmark {
+    private static final long SEED = 42;
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final int QUERY_COUNT = 1_024;
+    private static final String CSV_HEADER = "scenario,size,threads,ops_per_sec,error_pct";
+
+    /** Results of benchmarked calls, kept so the JIT cannot drop the calls. */
+    private static volatile long sink;
+
+    /**
+     * One benchmarked operation, run repeatedly on each thread.
+     */
+    private interface Operation {
+        /**
+         * Runs the operation once.
+         *
+         * @param thread the index of the calling thread
+         * @param random the calling thread's random source
+         * @return any value derived from the result, to be consumed
+         */
+        long run(int thread, Random random);
+    }
+
+    /**
+     * The measured throughput of one scenario.
+     */
+    private static class Result {
+        final String scenario;
+        final int size;
+        final int threads;
+        final double opsPerSecond;
+        final double errorPercent;
+
+        Result(String scenario, int size, int threads, double opsPerSecond, double errorPercent) {
+            this.scenario = scenario;
+            this.size = size;
+            this.threads = threads;
+            this.opsPerSecond = opsPerSecond;
+            this.errorPercent = errorPercent;
+        }
+
+        String key() {
+            return scenario + "," + size + "," + threads;
+        }
+    }
+
+    /**
+     * Main method to run the benchmarks.
+     *
+     * @param args options as described in the class comment
+     * @throws IOException if the results cannot be written or the baseline read
+     * @throws InterruptedException if interrupted while a scenario runs
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = parseOptions(args);
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> sizes = parseInts(options.getOrDefault("sizes", "10000,100000"));
+        List<Integer> threadCounts = parseInts(options.getOrDefault("threads", "1," + cores));
+        long iterationMillis = Long.parseLong(options.getOrDefault("iteration-ms", "1000"));
+        Path out = Paths.get(options.getOrDefault("out", "benchmark-results.csv"));
+
+        System.out.println("========================================");
+        System.out.println("   Library System - Benchmarks");
+        System.out.println("========================================");
+        System.out.printf("Sizes %s, threads %s, %d + %d iterations of %d ms, %d cores%n%n",
+                          sizes, threadCounts, WARMUP_ITERATIONS, MEASURED_ITERATIONS,
+                          iterationMillis, cores);
+
+        List<Result> results = new ArrayList<>();
+        for (int size : sizes) {
+            results.addAll(runSize(size, threadCounts, iterationMillis));
+        }
+
+        try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            writer.write(CSV_HEADER);
+            writer.newLine();
+            for (Result result : results) {
+                writer.write(String.format("%s,%.1f,%.1f", result.key(), result.opsPerSecond,
+                                           result.errorPercent));
+                writer.newLine();
+            }
+        }
+        System.out.println("\nResults written to " + out);
+
+        String baseline = options.get("baseline");
+        if (baseline != null) {
+            compare(results, readResults(Paths.get(baseline)));
+        }
+    }
+
+    /**
+     * Runs every scenario against a catalogue of one size.
+     *
+     * @param size the number of items
+     * @param threadCounts the thread counts to run each scenario with
+     * @param iterationMillis the length of each iteration
+     * @return the results
+     * @throws InterruptedException if interrupted while a scenario runs
+     */
+    private static List<Result> runSize(int size, List<Integer> threadCounts, long iterationMillis)
+            throws InterruptedException {
+        System.out.printf("--- %,d items ---%n", size);
+        List<Result> results = new ArrayList<>();
+        for (int threads : threadCounts) {
+            results.add(report(measureAdd(size, threads)));
+        }
+
+        CatalogueGenerator generator = new CatalogueGenerator(size, SEED);
+        List<LibraryItem> items = generator.generate(size);
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        library.addItems(items);
+        int maxThreads = threadCounts.stream().mapToInt(Integer::intValue).max().orElse(1);
+        String[] patronIds = new String[maxThreads];
+        Patron[] loanHolders = new Patron[maxThreads];
+        for (int i = 0; i < maxThreads; i++) {
+            patronIds[i] = "BENCH-" + i;
+            library.registerPatron(new Patron("Benchmark Patron " + i, patronIds[i]));
+            loanHolders[i] = new Patron("Loan Holder " + i, "HOLDER-" + i);
+        }
+        String[] callNumbers = items.stream().map(LibraryItem::getCallNumber).toArray(String[]::new);
+
+        Random random = new Random(SEED);
+        String[] substrings = new String[QUERY_COUNT];
+        String[] keywords = new String[QUERY_COUNT];
+        String[] typos = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            String title = items.get(random.nextInt(size)).getTitle().toLowerCase();
+            int start = random.nextInt(Math.max(1, title.length() - 5));
+            substrings[i] = title.substring(start, Math.min(title.length(), start + 5));
+            keywords[i] = random.nextBoolean() ? generator.nextWord()
+                                               : generator.nextWord() + " " + generator.nextWord();
+            typos[i] = misspell(generator.nextWord(), random);
+        }
+
+        Map<String, Operation> scenarios = new LinkedHashMap<>();
+        scenarios.put("searchItems", (thread, r) -> library.searchItems(pick(substrings, r)).size());
+        scenarios.put("searchByKeyword", (thread, r) -> library.searchByKeyword(pick(keywords, r)).size());
+        scenarios.put("searchRanked", (thread, r) -> library.searchRanked(pick(keywords, r), 10).size());
+        scenarios.put("searchFuzzy", (thread, r) -> library.searchFuzzy(pick(typos, r)).size());
+        scenarios.put("checkOutCheckIn", (thread, r) -> {
+            String callNumber = pick(callNumbers, r);
+            return library.checkOutItem(callNumber, patronIds[thread]) && library.checkInItem(callNumber)
+                   ? 1 : 0;
+        });
+        scenarios.put("patronLoans", (thread, r) -> {
+            LibraryItem item = items.get(r.nextInt(size));
+            Patron holder = loanHolders[thread];
+            return holder.addCheckedOutItem(item) && holder.removeCheckedOutItem(item) ? 1 : 0;
+        });
+
+        for (Map.Entry<String, Operation> scenario : scenarios.entrySet()) {
+            for (int threads : threadCounts) {
+                results.add(report(measure(scenario.getKey(), size, threads, iterationMillis,
+                                           scenario.getValue())));
+            }
+        }
+        System.out.println();
+        return results;
+    }
+
+    /**
+     * Times adding a fresh catalogue to an empty library, with the items
+     * split evenly between the threads.
+     *
+     * @param size the number of items
+     * @param threads the number of threads adding items
+     * @return the result
+     * @throws InterruptedException if interrupted while items are added
+     */
+    private static Result measureAdd(int size, int threads) throws InterruptedException {
+        List<LibraryItem> items = new CatalogueGenerator(size, SEED).generate(size);
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        Thread[] workers = new Thread[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            List<LibraryItem> slice = items.subList(t * size / threads, (t + 1) * size / threads);
+            workers[t] = new Thread(() -> {
+                awaitQuietly(start);
+                for (LibraryItem item : slice) {
+                    library.addItem(item);
+                }
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        return new Result("addItem", size, threads, size / seconds, 0);
+    }
+
+    /**
+     * Runs a scenario for the warm-up and timed iterations.
+     *
+     * @param scenario the scenario name
+     * @param size the catalogue size
+     * @param threads the number of threads running the operation
+     * @param iterationMillis the length of each iteration
+     * @param operation the operation
+     * @return the mean throughput and its relative standard deviation
+     * @throws InterruptedException if interrupted while the scenario runs
+     */
+    private static Result measure(String scenario, int size, int threads, long iterationMillis,
+                                  Operation operation) throws InterruptedException {
+        double[] rates = new double[MEASURED_ITERATIONS];
+        for (int iteration = -WARMUP_ITERATIONS; iteration < MEASURED_ITERATIONS; iteration++) {
+            double rate = runIteration(threads, iterationMillis, operation, iteration);
+            if (iteration >= 0) {
+                rates[iteration] = rate;
+            }
+        }
+        double mean = 0;
+        for (double rate : rates) {
+            mean += rate / rates.length;
+        }
+        double variance = 0;
+        for (double rate : rates) {
+            variance += (rate - mean) * (rate - mean) / rates.length;
+        }
+        return new Result(scenario, size, threads, mean, mean == 0 ? 0 : 100 * Math.sqrt(variance) / mean);
+    }
+
+    /**
+     * Runs an operation on several threads for one iteration.
+     *
+     * @param threads the number of threads
+     * @param iterationMillis how long to run
+     * @param operation the operation
+     * @param iteration the iteration number, used to vary the random seeds
+     * @return the operations completed per second across all threads
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static double runIteration(int threads, long iterationMillis, Operation operation,
+                                       int iteration) throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder completed = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(SEED + 31L * iteration + thread);
+                long count = 0;
+                long consumed = 0;
+                awaitQuietly(start);
+                while (!stop.get()) {
+                    consumed += operation.run(thread, random);
+                    count++;
+                }
+                completed.add(count);
+                sink += consumed;
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(iterationMillis);
+        stop.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return completed.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    /**
+     * Waits for a latch, treating an interrupt as the signal to go.
+     *
+     * @param latch the latch
+     */
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Picks a random element.
+     *
+     * @param values the values
+     * @param random the random source
+     * @return one of the values
+     */
+    private static String pick(String[] values, Random random) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Changes one letter of a word, as a typing mistake would.
+     *
+     * @param word the word
+     * @param random the random source
+     * @return the misspelled word
+     */
+    private static String misspell(String word, Random random) {
+        char[] letters = word.toCharArray();
+        letters[random.nextInt(letters.length)] = (char) ('a' + random.nextInt(26));
+        return new String(letters);
+    }
+
+    /**
+     * Prints one result as it is measured.
+     *
+     * @param result the result
+     * @return the result
+     */
+    private static Result report(Result result) {
+        System.out.printf("  %-16s %2d thread%s %,14.0f ops/sec  +-%5.1f%%%n", result.scenario,
+                          result.threads, result.threads == 1 ? " " : "s", result.opsPerSecond,
+                          result.errorPercent);
+        return result;
+    }
+
+    /**
+     * Prints how each result changed from the baseline.
+     *
+     * @param results the new results
+     * @param baseline the baseline throughput by scenario, size and threads
+     */
+    private static void compare(List<Result> results, Map<String, Double> baseline) {
+        System.out.println("\n--- Compared with baseline ---");
+        for (Result result : results) {
+            Double before = baseline.get(result.key());
+            if (before == null || before == 0) {
+                System.out.printf("  %-32s (no baseline)%n", result.key());
+            } else {
+                double change = 100 * (result.opsPerSecond - before) / before;
+                System.out.printf("  %-32s %+7.1f%%%s%n", result.key(), change,
+                                  Math.abs(change) > 2 * Math.max(1, result.errorPercent) ? " *" : "");
+            }
+        }
+        System.out.println("  (* change larger than twice the measured spread)");
+    }
+
+    /**
+     * Reads results written by an earlier run.
+     *
+     * @param file the CSV file
+     * @return the throughput by scenario, size and threads
+     * @throws IOException if the file cannot be read
+     */
+    private static Map<String, Double> readResults(Path file) throws IOException {
+        Map<String, Double> results = new HashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",");
+            if (fields.length == 5 && !line.equals(CSV_HEADER)) {
+                results.put(fields[0] + "," + fields[1] + "," + fields[2], Double.parseDouble(fields[3]));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Reads {@code --name value} pairs.
+     *
+     * @param args the command line arguments
+     * @return the options by name
+     * @throws IllegalArgumentException if an option has no value
+     */
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --name value but got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Parses a comma-separated list of positive numbers, dropping repeats.
+     *
+     * @param list the list
+     * @return the numbers in the order given
+     */
+    private static List<Integer> parseInts(String list) {
+        Set<Integer> values = new LinkedHashSet<>();
+        for (String value : list.split(",")) {
+            int number = Integer.parseInt(value.strip());
+            if (number < 1) {
+                throw new IllegalArgumentException("Expected a positive number but got " + value);
+            }
+            values.add(number);
+        }
+        return new ArrayList<>(values);
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Driver class to test the search result cache.
+ * Checks that repeated searches are answered from the cache, that adding
+ * or removing an item makes the next search see the change while
+ * checkouts do not evict anything, that the cache stays within its
+ * capacity and drops the least recently used results first, and that
+ * searches racing with additions and removals never leave a stale result
+ * behind. Reports how much faster a repeated kiosk workload runs once
+ * its queries are cached.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryCacheDriver {
+    private static final int ITEMS = 20_000;
+    private static final int QUERIES = 300;
+    private static final int ROUNDS = 10;
+
+    /**
+     * Main method to run the cache test.
+     *
+     * @param args command line arguments (not used)
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("========================================");
+        System.out.println("   Library System - Search Cache");
+        System.out.println("========================================\n");
+
+        boolean passed = checkInvalidation();
+        System.out.println();
+        passed &= checkCapacity();
+        System.out.println();
+        passed &= checkRaces();
+        System.out.println();
+        measure();
+
+        System.out.println();
+        System.out.println(passed ? "Cache test PASSED" : "Cache test FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Checks which changes make a cached result stale.
+     *
+     * @return true if every check passed
+     */
+    private static boolean checkInvalidation() {
+        System.out.println("--- Invalidation ---");
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        Book first = new Book("Cached Rivers", "QA1 .C1 2001", List.of("Ada Writer"), 2001, "978-0000000021");
+        library.addItem(first);
+        library.addItem(new DVD("Unrelated Film", "DVD-1 2002", 2002));
+        library.registerPatron(new Patron("Cache Reader", "CACHE"));
+        SearchCache cache = library.getSearchCache();
+
+        List<LibraryItem> cold = library.searchItems("Rivers");
+        cold.clear();
+        List<LibraryItem> warm = library.searchItems("RIVERS");
+        boolean passed = report("Repeat in any case is a hit", cache.getHits() == 1 && cache.getMisses() == 1);
+        passed &= report("Callers get their own copy", warm.equals(List.of(first)));
+
+        library.checkOutItem(first.getCallNumber(), "CACHE");
+        List<LibraryItem> out = library.searchItems("rivers");
+        passed &= report("Checkout keeps the result cached, status live",
+                         cache.getHits() == 2 && out.get(0).isCheckedOut());
+        library.checkInItem(first.getCallNumber());
+
+        Book second = new Book("More Rivers", "QA2 .M1 2003", List.of("Bo Editor"), 2003, "978-0000000022");
+        library.addItem(second);
+        passed &= report("Added item is found next time",
+                         new HashSet<>(library.searchItems("rivers")).equals(new HashSet<>(List.of(first, second)))
+                         && cache.getMisses() == 2);
+        library.removeItem(first.getCallNumber());
+        passed &= report("Removed item is gone next time",
+                         library.searchItems("rivers").equals(List.of(second)) && cache.getMisses() == 3);
+        library.addItem(first);
+        library.checkOutItem(first.getCallNumber(), "CACHE");
+        library.removeItem(first.getCallNumber());
+        passed &= report("Refused removal keeps the result cached",
+                         library.searchItems("rivers").size() == 2 && cache.getHits() == 2
+                         && library.searchItems("rivers").size() == 2 && cache.getHits() == 3);
+        return passed;
+    }
+
+    /**
+     * Fills a small cache past its capacity.
+     *
+     * @return true if the cache stayed in bounds and evicted in LRU order
+     */
+    private static boolean checkCapacity() {
+        System.out.println("--- Capacity ---");
+        SearchCache cache = new SearchCache(100);
+        List<LibraryItem> ten = new CatalogueGenerator(10, 1).generate(10);
+        List<LibraryItem> many = new CatalogueGenerator(200, 2).generate(200);
+        long version = cache.version();
+        cache.put("kept", version, ten);
+        boolean bounded = true;
+        for (int i = 0; i < 20; i++) {
+            cache.put("query " + i, version, ten);
+            cache.get("kept");
+            bounded &= cache.weight() <= cache.getCapacity();
+        }
+        System.out.printf("%d results, weight %d of %d%n", cache.size(), cache.weight(), cache.getCapacity());
+        boolean passed = report("Weight never above capacity", bounded);
+        passed &= report("Recently used result kept, oldest dropped",
+                         cache.get("kept") != null && cache.get("query 0") == null && cache.get("query 19") != null);
+        cache.put("too big", version, many);
+        passed &= report("Result larger than the cache not kept", cache.get("too big") == null);
+        cache.invalidate();
+        passed &= report("Invalidated results not served", cache.get("kept") == null);
+        cache.put("late", version, ten);
+        return passed & report("Result from before invalidation not kept", cache.get("late") == null);
+    }
+
+    /**
+     * Searches from several threads while another adds and removes
+     * matching items, then checks every query against a fresh scan.
+     *
+     * @return true if no stale result was left in the cache
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static boolean checkRaces() throws InterruptedException {
+        System.out.println("--- Racing Changes ---");
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        CatalogueGenerator generator = new CatalogueGenerator(ITEMS, 5);
+        List<LibraryItem> items = generator.generate(ITEMS / 4);
+        library.addItems(items);
+        List<String> queries = workload(generator, 40);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> searchers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            int seed = t;
+            Thread searcher = new Thread(() -> {
+                Random random = new Random(seed);
+                while (running.get()) {
+                    library.searchItems(queries.get(random.nextInt(queries.size())));
+                }
+            });
+            searcher.start();
+            searchers.add(searcher);
+        }
+        List<LibraryItem> extra = generator.generate(2_000);
+        for (int i = 0; i < extra.size(); i++) {
+            library.addItem(extra.get(i));
+            if (i % 2 == 0) {
+                library.removeItem(items.get(i).getCallNumber());
+            }
+        }
+        running.set(false);
+        for (Thread searcher : searchers) {
+            searcher.join();
+        }
+
+        List<LibraryItem> current = library.streamInventory().toList();
+        int stale = 0;
+        for (String query : queries) {
+            List<LibraryItem> expected = new ArrayList<>();
+            for (LibraryItem item : current) {
+                if (item.getSearchableText().contains(query.toLowerCase())) {
+                    expected.add(item);
+                }
+            }
+            if (!new HashSet<>(library.searchItems(query)).equals(new HashSet<>(expected))) {
+                stale++;
+            }
+        }
+        SearchCache cache = library.getSearchCache();
+        System.out.printf("%,d hits and %,d misses while %,d items changed%n",
+                          cache.getHits(), cache.getMisses(), extra.size() * 3 / 2);
+        return report("Every query matches a fresh scan afterwards", stale == 0);
+    }
+
+    /**
+     * Times a kiosk workload of a few hundred repeated queries with the
+     * cache cold and then warm.
+     */
+    private static void measure() {
+        System.out.println("--- Repeated Queries ---");
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        CatalogueGenerator generator = new CatalogueGenerator(ITEMS, 9);
+        library.addItems(generator.generate(ITEMS));
+        List<String> queries = workload(generator, QUERIES);
+
+        long start = System.nanoTime();
+        for (String query : queries) {
+            library.searchItems(query);
+        }
+        double coldMicros = (System.nanoTime() - start) / 1_000.0 / queries.size();
+        start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String query : queries) {
+                library.searchItems(query);
+            }
+        }
+        double warmMicros = (System.nanoTime() - start) / 1_000.0 / queries.size() / ROUNDS;
+        SearchCache cache = library.getSearchCache();
+        System.out.printf("%d queries over %,d items: cold %.1f us, warm %.1f us per search (%.0fx)%n",
+                          queries.size(), ITEMS, coldMicros, warmMicros, coldMicros / warmMicros);
+        System.out.printf("Hit rate %.1f%%, %d results holding %,d items%n",
+                          100.0 * cache.getHits() / (cache.getHits() + cache.getMisses()),
+                          cache.size(), cache.weight());
+    }
+
+    /**
+     * Makes a mix of distinct queries: mostly title words, some two-letter
+     * fragments that fall back to a scan, and some author names.
+     *
+     * @param generator the generator of the catalogue being searched
+     * @param count the number of queries
+     * @return the queries
+     */
+    private static List<String> workload(CatalogueGenerator generator, int count) {
+        List<String> queries = new ArrayList<>();
+        Random random = new Random(count);
+        while (queries.size() < count) {
+            String query;
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                query = generator.nextWord();
+            } else if (kind < 8) {
+                String word = generator.nextWord();
+                query = word.substring(0, Math.min(2, word.length()));
+            } else {
+                query = generator.nextAuthor();
+            }
+            if (!queries.contains(query)) {
+                queries.add(query);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Prints the outcome of one check.
+     *
+     * @param description what was checked
+     * @param passed whether the check passed
+     * @return the outcome
+     */
+    private static boolean report(String description, boolean passed) {
+        System.out.println(description + ": " + (passed ? "yes" : "NO"));
+        return passed;
+    }
+}
@@ -0,0 +1,174 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Driver class to test dictionary-encoded author names.
+ * Checks that books share one copy of each author name however the name
+ * was passed in, that author lists cannot be changed through
+ * {@link Book#getAuthors()}, that threads interning the same names at
+ * once agree on their ids, and reports the heap a book takes when every
+ * author name arrives as a fresh string, as it does from an import.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryDictionaryDriver {
+    private static final int BOOKS = 200_000;
+    private static final int NAMES = 10_000;
+    private static final int THREADS = 4;
+
+    /**
+     * Main method to run the dictionary test.
+     *
+     * @param args command line arguments (not used)
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("========================================");
+        System.out.println("   Library System - Author Dictionary");
+        System.out.println("========================================\n");
+
+        boolean passed = checkSharing();
+        System.out.println();
+        passed &= checkConcurrentInterning();
+        System.out.println();
+        measureHeap();
+
+        System.out.println();
+        System.out.println(passed ? "Dictionary test PASSED" : "Dictionary test FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Checks that equal names are stored once and that lists are read-only.
+     *
+     * @return true if every check passed
+     */
+    private static boolean checkSharing() {
+        System.out.println("--- Shared Names ---");
+        Book first = new Book("First Book", "PS1 .F57 2001", List.of(new String("Ada Writer"), "Bo Editor"),
+                              2001, "978-0000000011");
+        Book second = new Book("Second Book", "PS2 .S43 2002", List.of(new String("Ada Writer")),
+                               2002, "978-0000000012");
+
+        boolean passed = report("Same name stored once", first.getAuthors().get(0) == second.getAuthors().get(0));
+        passed &= report("Authors read back in order", first.getAuthors().equals(List.of("Ada Writer", "Bo Editor")));
+        passed &= report("Author checks by id", first.hasAuthor("Bo Editor") && !second.hasAuthor("Bo Editor")
+                         && !first.hasAuthor("Nobody Known") && !first.hasAuthor(null));
+        passed &= report("Details unchanged", first.getDetails().equals(
+                "Book: 'First Book' by Ada Writer, Bo Editor (2001) | ISBN: 978-0000000011 | Call#: PS1 .F57 2001"));
+        boolean refused;
+        try {
+            first.getAuthors().add("Intruder");
+            refused = false;
+        } catch (UnsupportedOperationException e) {
+            refused = true;
+        }
+        return passed & report("Author list is read-only", refused && first.getAuthors().size() == 2);
+    }
+
+    /**
+     * Interns the same names from several threads in different orders.
+     *
+     * @return true if all threads got the same id for each name
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    private static boolean checkConcurrentInterning() throws InterruptedException {
+        System.out.println("--- Concurrent Interning ---");
+        TermDictionary dictionary = new TermDictionary();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < NAMES; i++) {
+            names.add("Author " + i);
+        }
+        int[][] ids = new int[THREADS][NAMES];
+        AtomicBoolean wrongTerm = new AtomicBoolean();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            List<Integer> order = new ArrayList<>(IntStream.range(0, NAMES).boxed().toList());
+            Collections.shuffle(order, new Random(t));
+            threads[t] = new Thread(() -> {
+                for (int index : order) {
+                    // A fresh copy each time, as a parser would produce.
+                    int id = dictionary.intern(new String(names.get(index)));
+                    ids[thread][index] = id;
+                    if (!dictionary.term(id).equals(names.get(index))) {
+                        wrongTerm.set(true);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        boolean agreed = true;
+        for (int t = 1; t < THREADS; t++) {
+            agreed &= Arrays.equals(ids[0], ids[t]);
+        }
+        System.out.printf("%,d names interned by %d threads: %,d ids%n", NAMES, THREADS, dictionary.size());
+        return report("Threads agree on every id", agreed && !wrongTerm.get() && dictionary.size() == NAMES);
+    }
+
+    /**
+     * Reports the heap taken per book when author names arrive as fresh
+     * strings.
+     */
+    private static void measureHeap() {
+        System.out.println("--- Heap per Book ---");
+        CatalogueGenerator generator = new CatalogueGenerator(BOOKS, 21);
+        List<String[]> authors = new ArrayList<>(BOOKS);
+        for (int i = 0; i < BOOKS; i++) {
+            int count = i % 10 < 7 ? 1 : 2 + i % 3;
+            String[] names = new String[count];
+            for (int j = 0; j < count; j++) {
+                names[j] = generator.nextAuthor();
+            }
+            authors.add(names);
+        }
+        long before = usedHeap();
+        List<Book> books = new ArrayList<>(BOOKS);
+        for (int i = 0; i < BOOKS; i++) {
+            List<String> copies = new ArrayList<>();
+            for (String name : authors.get(i)) {
+                copies.add(new String(name));
+            }
+            books.add(new Book("Book", "QA" + i, copies, 2000, "978-0000000000"));
+        }
+        long after = usedHeap();
+        System.out.printf("%,d books: %.0f bytes each, call number included; %,d distinct authors%n",
+                          books.size(), (double) (after - before) / BOOKS,
+                          Book.authorDictionary().size());
+    }
+
+    /**
+     * Gets the heap in use after collecting garbage.
+     *
+     * @return the bytes in use
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Prints the outcome of one check.
+     *
+     * @param description what was checked
+     * @param passed whether the check passed
+     * @return the outcome
+     */
+    private static boolean report(String description, boolean passed) {
+        System.out.println(description + ": " + (passed ? "yes" : "NO"));
+        return passed;
+    }
+}
@@ -4,7 +4,7 @@ import java.util.List;
 /**
  * Driver class to test the library management system.
  * Demonstrates adding items, registering patrons, checking out/in items,
- * searching, and removing items.
+ * placing holds, searching, and removing items.
  * 
  * @author Orchlon Chinbat
  */
@@ -91,6 +91,24 @@ public class LibraryDriver {
         library.displayInventory();
         System.out.println();
         
+        // Test 4b: Page Through the Inventory
+        System.out.println("--- TEST 4b: Page Through the Inventory (3 per page) ---");
+        Page<LibraryItem> page = library.listItems(null, 3);
+        int pageNumber = 1;
+        while (true) {
+            System.out.print("  Page " + pageNumber + ":");
+            for (LibraryItem item : page.getEntries()) {
+                System.out.print(" [" + item.getCallNumber() + "]");
+            }
+            System.out.println();
+            if (!page.hasNext()) {
+                break;
+            }
+            page = library.listItems(page.getNextCursor(), 3);
+            pageNumber++;
+        }
+        System.out.println();
+        
         // Test 5: Search Functionality
         System.out.println("--- TEST 5: Search by Title ---");
         System.out.println("Searching for 'code':");
@@ -114,6 +132,42 @@ public class LibraryDriver {
         }
         System.out.println();
         
+        System.out.println("Searching for '0262' (partial ISBN):");
+        searchResults = library.searchItems("0262");
+        for (LibraryItem item : searchResults) {
+            System.out.println("  Found: " + item.getDetails());
+        }
+        System.out.println();
+        
+        System.out.println("Keyword search for 'design patterns':");
+        searchResults = library.searchByKeyword("design patterns");
+        for (LibraryItem item : searchResults) {
+            System.out.println("  Found: " + item.getDetails());
+        }
+        System.out.println();
+        
+        System.out.println("Top 3 ranked results for 'design code patterns':");
+        searchResults = library.searchRanked("design code patterns", 3);
+        for (LibraryItem item : searchResults) {
+            System.out.println("  Found: " + item.getDetails());
+        }
+        System.out.println();
+        
+        System.out.println("Fuzzy search for 'Introducton to Algoritms' (typos):");
+        searchResults = library.searchFuzzy("Introducton to Algoritms");
+        for (LibraryItem item : searchResults) {
+            System.out.println("  Found: " + item.getDetails());
+        }
+        System.out.println();
+        
+        // Test 5b: Browse the Shelf
+        System.out.println("--- TEST 5b: Browse the Shelf (QA76 to QA77) ---");
+        library.browseShelf("QA76", "QA77")
+               .forEach(item -> System.out.println("  " + item.getCallNumber()));
+        System.out.println("Next after QA76.64: "
+                           + library.nextOnShelf("QA76.64 .G36 1995").getCallNumber());
+        System.out.println();
+        
         // Test 6: Check Out Items
         System.out.println("--- TEST 6: Checking Out Items ---");
         library.checkOutItem("QA76.9.A43 C58 2009", "S12345"); // Alice checks out "Introduction to Algorithms"
@@ -126,6 +180,13 @@ public class LibraryDriver {
         library.checkOutItem("QA76.9.A43 C58 2009", "S54321"); // Carol tries to check out Alice's book
         System.out.println();
         
+        // Test 7b: Missing Call Number or Student ID
+        System.out.println("--- TEST 7b: Missing Call Number or Student ID ---");
+        library.checkOutItem("QA76.6 .H868 2020", null); // No patron given
+        library.checkInItem(null); // No item given
+        System.out.println("Lookup without a call number: " + library.getItem(null));
+        System.out.println();
+        
         // Test 8: Display Updated Inventory
         System.out.println("--- TEST 8: Display Updated Inventory (after checkouts) ---");
         library.displayInventory();
@@ -146,6 +207,28 @@ public class LibraryDriver {
         library.checkOutItem("QA76.9.A43 C58 2009", "S54321"); // Carol can now check it out
         System.out.println();
         
+        // Test 11b: Holds
+        System.out.println("--- TEST 11b: Holds on a Checked Out Item ---");
+        library.placeHold("QA76.76.D47 M37 2008", "S54321"); // Carol waits for Bob's "Clean Code"
+        library.placeHold("QA76.76.D47 M37 2008", "S12345"); // Alice waits behind her
+        library.placeHold("QA76.76.D47 M37 2008", "S12345"); // Alice is already waiting
+        System.out.println("Alice's place in line: "
+                           + library.getHoldPosition("QA76.76.D47 M37 2008", "S12345"));
+        library.checkInItem("QA76.76.D47 M37 2008"); // Bob returns it and Carol gets it
+        library.cancelHold("QA76.76.D47 M37 2008", "S12345"); // Alice gives up
+        System.out.println("Holds left: " + library.getHoldCount("QA76.76.D47 M37 2008"));
+        System.out.println();
+        
+        // Test 11c: Circulation Statistics
+        System.out.println("--- TEST 11c: Circulation Statistics ---");
+        CirculationStats stats = library.getStatistics();
+        System.out.println("Total checkouts: " + stats.getTotalCheckouts());
+        System.out.println("Most borrowed this month: " + stats.getMostBorrowed(2));
+        System.out.println("Checkouts by decade: " + stats.getCheckoutsByDecade());
+        System.out.println("On loan by decade: " + stats.getOnLoanByDecade());
+        System.out.println("Active patrons: " + stats.getActivePatrons());
+        System.out.println();
+        
         // Test 12: Try to Remove Checked Out Item
         System.out.println("--- TEST 12: Attempting to Remove Checked Out Item ---");
         library.removeItem("QA76.9.A43 C58 2009"); // Try to remove Carol's book
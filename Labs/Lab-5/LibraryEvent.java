@@ -0,0 +1,175 @@
+/**
+ * Something that happened in the library system, such as an item being
+ * added or a checkout being refused. Events carry the objects involved
+ * rather than a formatted message; the message is only built when a
+ * listener asks for it with {@link #getMessage()}. The one piece of
+ * changing state a message reports, a new patron's loan count, is
+ * captured when the event is raised, so a listener running later on
+ * another thread still prints what was true at the time.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryEvent {
+    /**
+     * The kind of event.
+     */
+    public enum Type {
+        ITEM_ADDED,
+        DUPLICATE_ITEM,
+        ITEM_REMOVED,
+        REMOVE_REFUSED,
+        ITEM_NOT_FOUND,
+        PATRON_REGISTERED,
+        DUPLICATE_PATRON,
+        PATRON_NOT_FOUND,
+        ITEM_CHECKED_OUT,
+        ALREADY_CHECKED_OUT,
+        ITEM_CHECKED_IN,
+        NOT_CHECKED_OUT,
+        ITEM_OVERDUE,
+        ITEM_ON_HOLD,
+        HOLD_PLACED,
+        HOLD_REFUSED,
+        HOLD_CANCELLED,
+        HOLD_NOT_FOUND;
+
+        /**
+         * Checks whether this kind of event reports a refused operation.
+         *
+         * @return true for error events, false for successful changes
+         */
+        public boolean isError() {
+            switch (this) {
+                case ITEM_ADDED:
+                case ITEM_REMOVED:
+                case PATRON_REGISTERED:
+                case ITEM_CHECKED_OUT:
+                case ITEM_CHECKED_IN:
+                case ITEM_OVERDUE:
+                case HOLD_PLACED:
+                case HOLD_CANCELLED:
+                    return false;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    private final Type type;
+    private final LibraryItem item;
+    private final Patron patron;
+    private final String key;
+    private final int checkedOut;
+
+    /**
+     * Constructs a library event.
+     *
+     * @param type the kind of event
+     * @param item the item involved, or null
+     * @param patron the patron involved, or null
+     * @param key the call number or student ID that was looked up, or null
+     */
+    public LibraryEvent(Type type, LibraryItem item, Patron patron, String key) {
+        this.type = type;
+        this.item = item;
+        this.patron = patron;
+        this.key = key;
+        this.checkedOut = type == Type.PATRON_REGISTERED ? patron.getCheckedOutCount() : 0;
+    }
+
+    /**
+     * Gets the kind of event.
+     *
+     * @return the event type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the item involved in the event.
+     *
+     * @return the item, or null if the event does not involve one
+     */
+    public LibraryItem getItem() {
+        return item;
+    }
+
+    /**
+     * Gets the patron involved in the event.
+     *
+     * @return the patron, or null if the event does not involve one
+     */
+    public Patron getPatron() {
+        return patron;
+    }
+
+    /**
+     * Gets the call number or student ID that was looked up.
+     *
+     * @return the lookup key, or null if the event does not have one
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Formats the human-readable message for this event.
+     * The message is built on every call, so listeners that never print
+     * events never pay for formatting.
+     *
+     * @return the message, possibly spanning several lines
+     */
+    public String getMessage() {
+        switch (type) {
+            case ITEM_ADDED:
+                return "Successfully added: " + item.getDetails();
+            case DUPLICATE_ITEM:
+                return "Error: Item with call number " + key + " already exists.";
+            case ITEM_REMOVED:
+                return "Successfully removed: " + item.getDetails();
+            case REMOVE_REFUSED:
+                return "Error: Cannot remove item that is currently checked out.";
+            case ITEM_NOT_FOUND:
+                return "Error: Item not found with call number: " + key;
+            case PATRON_REGISTERED:
+                return "Successfully registered: " + patron.describe(checkedOut);
+            case DUPLICATE_PATRON:
+                return "Error: Patron with ID " + key + " already exists.";
+            case PATRON_NOT_FOUND:
+                return "Error: Patron not found with ID: " + key;
+            case ITEM_CHECKED_OUT:
+                return "Successfully checked out:" + System.lineSeparator()
+                       + "  Item: " + item.getDetails() + System.lineSeparator()
+                       + "  To: " + patron.getName() + " (ID: " + patron.getStudentId() + ")";
+            case ALREADY_CHECKED_OUT:
+                return "Error: Item is already checked out.";
+            case ITEM_CHECKED_IN:
+                return "Successfully checked in: " + item.getDetails();
+            case NOT_CHECKED_OUT:
+                return "Error: Item is not currently checked out.";
+            case ITEM_OVERDUE:
+                return "Overdue: " + item.getDetails() + System.lineSeparator()
+                       + "  Borrower: " + patron.getName() + " (ID: " + patron.getStudentId() + ")";
+            case ITEM_ON_HOLD:
+                return "Error: Item is on hold for another patron.";
+            case HOLD_PLACED:
+                return "Hold placed on: " + item.getDetails() + System.lineSeparator()
+                       + "  For: " + patron.getName() + " (ID: " + patron.getStudentId() + ")";
+            case HOLD_REFUSED:
+                return "Error: Patron already holds or has this item.";
+            case HOLD_CANCELLED:
+                return "Hold cancelled on: " + item.getDetails() + System.lineSeparator()
+                       + "  For: " + patron.getName() + " (ID: " + patron.getStudentId() + ")";
+            case HOLD_NOT_FOUND:
+                return "Error: Patron has no hold on this item.";
+            default:
+                return type.toString();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getMessage();
+    }
+}
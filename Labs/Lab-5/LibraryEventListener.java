@@ -0,0 +1,64 @@
+/**
+ * Receives events from the library system.
+ * Listeners are called on the thread performing the operation, sometimes
+ * while the system holds a lock for the item or patron involved, so they
+ * must return quickly and must not call back into the library system.
+ * Slow consumers should be wrapped in an {@link AsyncEventListener}.
+ *
+ * @author Orchlon Chinbat
+ */
+@FunctionalInterface
+public interface LibraryEventListener {
+    /** A listener that ignores every event. */
+    LibraryEventListener SILENT = event -> { };
+
+    /**
+     * Handles an event.
+     *
+     * @param event the event that occurred
+     */
+    void onEvent(LibraryEvent event);
+
+    /**
+     * Finishes handling the events delivered so far, once the operation
+     * that published them has released its locks. The library calls this
+     * at the end of each operation that changes it, on the thread that
+     * called the operation, so a listener that has to wait, such as a
+     * journal waiting for its records to reach the disk, waits here
+     * rather than in {@link #onEvent(LibraryEvent)}, where it would hold
+     * up every other operation on the same item or patron. Does nothing
+     * by default.
+     */
+    default void afterOperation() {
+    }
+
+    /**
+     * Returns a listener that passes each event to this listener and then
+     * to another one.
+     *
+     * @param next the listener to call second
+     * @return the combined listener
+     */
+    default LibraryEventListener andThen(LibraryEventListener next) {
+        if (this == SILENT) {
+            return next;
+        }
+        if (next == SILENT) {
+            return this;
+        }
+        LibraryEventListener first = this;
+        return new LibraryEventListener() {
+            @Override
+            public void onEvent(LibraryEvent event) {
+                first.onEvent(event);
+                next.onEvent(event);
+            }
+
+            @Override
+            public void afterOperation() {
+                first.afterOperation();
+                next.afterOperation();
+            }
+        };
+    }
+}
@@ -0,0 +1,348 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Driver class to test the HTTP front end.
+ * Checks each endpoint's answers, status codes and JSON, including call
+ * numbers and titles that need escaping, then runs a load generator:
+ * several clients on keep-alive connections mixing lookups, searches,
+ * checkouts and check-ins for a few seconds. Checks that no request
+ * failed and the library ends with no loans, and reports throughput and
+ * latency percentiles. The load clients speak HTTP/1.1 over plain
+ * sockets, so what is measured is mostly the server rather than the
+ * client library. Being the whole program, the driver turns off Nagle's
+ * algorithm for the JDK server itself unless told otherwise, as
+ * {@link LibraryHttpServer} asks its launcher to.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryHttpDriver {
+    private static final int ITEMS = 10_000;
+    private static final int CLIENTS = 16;
+    private static final int ITEMS_PER_CLIENT = 20;
+    private static final int HOT_QUERIES = 100;
+    private static final long WARMUP_MILLIS = 2_000;
+    private static final long LOAD_MILLIS = 5_000;
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+    /**
+     * Main method to run the HTTP test.
+     *
+     * @param args command line arguments (not used)
+     * @throws IOException if the server cannot be started or reached
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.out.println("========================================");
+        System.out.println("   Library System - HTTP API");
+        System.out.println("========================================\n");
+
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        CatalogueGenerator generator = new CatalogueGenerator(ITEMS, 25);
+        List<LibraryItem> items = generator.generate(ITEMS);
+        library.addItems(items);
+
+        boolean passed;
+        try (LibraryHttpServer server = LibraryHttpServer.start(library, new InetSocketAddress("127.0.0.1", 0))) {
+            String base = "http://127.0.0.1:" + server.getAddress().getPort();
+            passed = checkEndpoints(library, base);
+            System.out.println();
+            passed &= runLoad(library, server.getAddress(), items, generator);
+        }
+
+        System.out.println();
+        System.out.println(passed ? "HTTP test PASSED" : "HTTP test FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Checks every endpoint's answers to good and bad requests.
+     *
+     * @param library the library being served
+     * @param base the server's base URL
+     * @return true if every check passed
+     * @throws IOException if the server cannot be reached
+     */
+    private static boolean checkEndpoints(LibrarySystem library, String base) throws IOException {
+        System.out.println("--- Endpoints ---");
+        Book book = new Book("Say \"Hello\" \\ World", "QA+1 .H4/2 2020", List.of("Ada Writer"),
+                             2020, "978-0000000031");
+        library.addItem(book);
+        library.registerPatron(new Patron("Web Reader", "WEB 1"));
+        String item = base + "/items/" + encodeSegment(book.getCallNumber());
+
+        Response found = call("GET", item);
+        boolean passed = report("Lookup answers the item", found.status == 200
+                                && found.body.contains("\"callNumber\":\"QA+1 .H4/2 2020\"")
+                                && found.body.contains("\"title\":\"Say \\\"Hello\\\" \\\\ World\"")
+                                && found.body.contains("\"authors\":[\"Ada Writer\"]")
+                                && found.body.contains("\"checkedOut\":false"));
+        passed &= report("Unknown item is 404", call("GET", base + "/items/NOWHERE").status == 404);
+
+        Response search = call("GET", base + "/items?q=" + URLEncoder.encode("hello\" \\", StandardCharsets.UTF_8)
+                                      + "&limit=5");
+        Response broad = call("GET", base + "/items?q=a&limit=3");
+        passed &= report("Search answers count and limited items", search.status == 200
+                         && search.body.startsWith("{\"count\":1,") && search.body.contains("QA+1")
+                         && broad.body.startsWith("{\"count\":" + library.searchItems("a").size() + ",")
+                         && broad.body.split("\"callNumber\"").length == 4);
+
+        String patron = "?patron=" + URLEncoder.encode("WEB 1", StandardCharsets.UTF_8);
+        Response out = call("POST", item + "/checkout" + patron);
+        passed &= report("Checkout succeeds and shows the loan", out.status == 200
+                         && out.body.startsWith("{\"result\":\"SUCCESS\"")
+                         && out.body.contains("\"checkedOutBy\":\"WEB 1\"") && book.isCheckedOut());
+        Response again = call("POST", item + "/checkout" + patron);
+        passed &= report("Second checkout is 409", again.status == 409
+                         && again.body.contains("ALREADY_CHECKED_OUT"));
+        passed &= report("Unknown patron is 404", call("POST", item + "/checkout?patron=NOBODY").status == 404);
+        passed &= report("Check-in succeeds, then is 409",
+                         call("POST", item + "/checkin").status == 200 && !book.isCheckedOut()
+                         && call("POST", item + "/checkin").body.contains("NOT_CHECKED_OUT"));
+
+        passed &= report("Wrong method is 405", call("GET", item + "/checkout" + patron).status == 405);
+        passed &= report("Missing parameters are 400", call("GET", base + "/items").status == 400
+                         && call("POST", item + "/checkout").status == 400
+                         && call("GET", base + "/items?q=x&limit=many").status == 400);
+        Response metrics = call("GET", base + "/metrics");
+        return passed & report("Metrics are mounted", metrics.status == 200 && metrics.body.contains("checkOutItem"));
+    }
+
+    /**
+     * Runs the load generator and checks that every request succeeded.
+     * Each client sends one request at a time over its own keep-alive
+     * connection, after a warm-up that is not measured.
+     *
+     * @param library the library being served
+     * @param address the server's address
+     * @param items the catalogue items
+     * @param generator the catalogue's generator, for search words
+     * @return true if no request failed and no loan was left behind
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    private static boolean runLoad(LibrarySystem library, InetSocketAddress address, List<LibraryItem> items,
+                                   CatalogueGenerator generator) throws InterruptedException {
+        System.out.println("--- Load ---");
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < HOT_QUERIES; i++) {
+            queries.add("/items?limit=10&q=" + URLEncoder.encode(generator.nextWord(), StandardCharsets.UTF_8));
+        }
+        List<String> lookups = new ArrayList<>();
+        for (LibraryItem item : items) {
+            lookups.add("/items/" + encodeSegment(item.getCallNumber()));
+        }
+
+        LatencyHistogram latencies = new LatencyHistogram();
+        AtomicLong failures = new AtomicLong();
+        long measureFrom = System.nanoTime() + WARMUP_MILLIS * 1_000_000;
+        long deadline = measureFrom + LOAD_MILLIS * 1_000_000;
+        Thread[] clients = new Thread[CLIENTS];
+        for (int c = 0; c < CLIENTS; c++) {
+            int client = c;
+            String patron = "LOAD" + client;
+            library.registerPatron(new Patron("Load Client " + client, patron));
+            // Each client circulates its own items, so every request should succeed.
+            List<String> own = lookups.subList(client * ITEMS_PER_CLIENT, (client + 1) * ITEMS_PER_CLIENT);
+            clients[c] = new Thread(() -> {
+                Random random = new Random(client);
+                boolean[] out = new boolean[own.size()];
+                try (Connection connection = new Connection(address)) {
+                    long now = System.nanoTime();
+                    while (now < deadline) {
+                        int kind = random.nextInt(100);
+                        String method = "GET";
+                        String target;
+                        if (kind < 60) {
+                            target = lookups.get(random.nextInt(lookups.size()));
+                        } else if (kind < 85) {
+                            target = queries.get(random.nextInt(queries.size()));
+                        } else {
+                            int index = random.nextInt(own.size());
+                            method = "POST";
+                            target = own.get(index) + (out[index] ? "/checkin" : "/checkout?patron=" + patron);
+                            out[index] = !out[index];
+                        }
+                        int status = connection.request(method, target);
+                        long end = System.nanoTime();
+                        if (status != 200) {
+                            failures.incrementAndGet();
+                        }
+                        if (now >= measureFrom) {
+                            latencies.record(end - now);
+                        }
+                        now = end;
+                    }
+                    for (int index = 0; index < own.size(); index++) {
+                        if (out[index] && connection.request("POST", own.get(index) + "/checkin") != 200) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                } catch (IOException e) {
+                    System.out.println("Client " + client + " failed: " + e);
+                    failures.incrementAndGet();
+                }
+            });
+            clients[c].start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+
+        LatencyHistogram.Summary summary = latencies.summarize();
+        System.out.printf("%d clients, %,d requests in %.1f s: %,.0f requests/s%n", CLIENTS, summary.getCount(),
+                          LOAD_MILLIS / 1_000.0, summary.getCount() * 1_000.0 / LOAD_MILLIS);
+        System.out.printf("Latency p50 %.0f us, p99 %.0f us, max %.1f ms%n",
+                          summary.getPercentile(50) / 1_000.0, summary.getPercentile(99) / 1_000.0,
+                          summary.getMax() / 1_000_000.0);
+        boolean passed = report("Every request succeeded", failures.get() == 0 && summary.getCount() > 0);
+        boolean returned = true;
+        for (int c = 0; c < CLIENTS; c++) {
+            returned &= library.getPatron("LOAD" + c).getCheckedOutCount() == 0;
+        }
+        return passed & report("Every loan returned", returned);
+    }
+
+    /**
+     * Makes a request and reads the whole answer, so the connection can
+     * be reused.
+     *
+     * @param method the HTTP method
+     * @param url the URL
+     * @return the status and body
+     * @throws IOException if the server cannot be reached
+     */
+    private static Response call(String method, String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        int status = connection.getResponseCode();
+        InputStream stream = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        String body = "";
+        if (stream != null) {
+            try (InputStream in = stream) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+        return new Response(status, body);
+    }
+
+    /**
+     * Percent-encodes a call number as one path segment.
+     *
+     * @param callNumber the call number
+     * @return the encoded segment
+     */
+    private static String encodeSegment(String callNumber) {
+        return URLEncoder.encode(callNumber, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * Prints the outcome of one check.
+     *
+     * @param description what was checked
+     * @param passed whether the check passed
+     * @return the outcome
+     */
+    private static boolean report(String description, boolean passed) {
+        System.out.println(description + ": " + (passed ? "yes" : "NO"));
+        return passed;
+    }
+
+    /**
+     * A minimal HTTP/1.1 client on one keep-alive connection, in the
+     * manner of load generators such as wrk. It only understands answers
+     * with a Content-Length, which is all the server sends.
+     */
+    private static final class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final OutputStream out;
+        private final InputStream in;
+        private final StringBuilder line;
+
+        Connection(InetSocketAddress address) throws IOException {
+            this.socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.line = new StringBuilder();
+        }
+
+        /**
+         * Sends a request without a body and reads the whole answer.
+         *
+         * @param method the HTTP method
+         * @param target the path and query
+         * @return the status code
+         * @throws IOException if the connection fails
+         */
+        int request(String method, String target) throws IOException {
+            String head = method + " " + target + " HTTP/1.1\r\nHost: localhost\r\nContent-Length: 0\r\n\r\n";
+            out.write(head.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            int status = Integer.parseInt(readLine().substring(9, 12));
+            int length = 0;
+            for (String header = readLine(); !header.isEmpty(); header = readLine()) {
+                if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    length = Integer.parseInt(header.substring(15).trim());
+                }
+            }
+            in.skipNBytes(length);
+            return status;
+        }
+
+        /**
+         * Reads one header line without its line ending.
+         *
+         * @return the line
+         * @throws IOException if the connection fails or closes
+         */
+        private String readLine() throws IOException {
+            line.setLength(0);
+            for (int c = in.read(); c != '\n'; c = in.read()) {
+                if (c < 0) {
+                    throw new EOFException();
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * The status and body of an answer.
+     */
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON-over-HTTP front end for a {@link LibrarySystem}, built on the JDK's
+ * {@code com.sun.net.httpserver}. It serves:
+ *
+ * <ul>
+ *   <li>{@code GET /items?q=term&limit=n}: {@link LibrarySystem#searchItems(String)},
+ *       at most {@code limit} items (default 50) along with the full count</li>
+ *   <li>{@code GET /items/{callNumber}}: one item and its loan status</li>
+ *   <li>{@code POST /items/{callNumber}/checkout?patron=id}: checks the item out</li>
+ *   <li>{@code POST /items/{callNumber}/checkin}: checks the item in</li>
+ *   <li>{@code GET /metrics}: the {@link MetricsEndpoint} snapshot</li>
+ * </ul>
+ *
+ * <p>Call numbers are percent-encoded path segments, so "QA76.73 .J38 2020"
+ * is {@code /items/QA76.73%20.J38%202020}. Refused checkouts and check-ins
+ * answer 404 for an unknown item or patron and 409 otherwise, with the
+ * {@link CirculationResult} in the body.
+ *
+ * <p>Each request runs on a virtual thread of its own when the JDK has
+ * them (Java 21 and later). Otherwise requests share a fixed pool of
+ * platform threads; no request waits on a lock or on I/O other than its
+ * own socket, so a small pool keeps the processors busy.
+ *
+ * <p>Launch the JVM with {@code -Dsun.net.httpserver.nodelay=true}. The
+ * JDK server writes the headers and the body of a response separately,
+ * so with Nagle's algorithm on, the body waits for the client's delayed
+ * ACK, about 40 ms per request on keep-alive connections. The property
+ * applies to every server in the JVM and is read when the first one is
+ * created, so this class leaves it to whoever starts the program.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryHttpServer implements AutoCloseable {
+    private static final int DEFAULT_LIMIT = 50;
+    private static final int BACKLOG = 1024;
+    private static final int THREADS_PER_PROCESSOR = 4;
+
+    private final LibrarySystem library;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructs a server that is not yet listening.
+     *
+     * @param library the library to serve
+     * @param server the bound server
+     * @param executor the executor to run requests on
+     */
+    private LibraryHttpServer(LibrarySystem library, HttpServer server, ExecutorService executor) {
+        this.library = library;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts serving a library.
+     *
+     * @param library the library to serve
+     * @param address the address to listen on; port 0 picks a free port
+     * @return the running server, to close when done
+     * @throws IOException if the server cannot listen on the address
+     */
+    public static LibraryHttpServer start(LibrarySystem library, InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, BACKLOG);
+        ExecutorService executor = newRequestExecutor();
+        LibraryHttpServer api = new LibraryHttpServer(library, server, executor);
+        server.createContext("/items", api::handle);
+        server.createContext("/metrics", new MetricsEndpoint(library.getMetrics()));
+        server.setExecutor(executor);
+        server.start();
+        return api;
+    }
+
+    /**
+     * Creates the executor that runs requests: a new virtual thread per
+     * request when the running JDK supports it, else a fixed pool.
+     *
+     * @return the executor
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            // Looked up at run time so the code still compiles for Java 17.
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            int threads = Runtime.getRuntime().availableProcessors() * THREADS_PER_PROCESSOR;
+            return Executors.newFixedThreadPool(threads, task -> {
+                Thread thread = new Thread(task, "library-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Gets the address the server is listening on.
+     *
+     * @return the address, with the actual port
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops accepting requests, lets those in progress finish for up to a
+     * second, and stops the request threads.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Routes a request under {@code /items}.
+     *
+     * @param exchange the request and response
+     * @throws IOException if the response cannot be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (RequestException e) {
+                send(exchange, e.status, "{\"error\":" + quote(e.getMessage()) + "}");
+            } catch (RuntimeException e) {
+                send(exchange, 500, "{\"error\":" + quote(String.valueOf(e)) + "}");
+            }
+        }
+    }
+
+    /**
+     * Picks the operation a request asks for and performs it.
+     *
+     * @param exchange the request and response
+     * @throws IOException if the response cannot be sent
+     */
+    private void route(HttpExchange exchange) throws IOException {
+        String[] path = exchange.getRequestURI().getRawPath().split("/");
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        String method = exchange.getRequestMethod();
+        // path[0] is empty and path[1] should be "items".
+        if (path.length < 2 || !path[1].equals("items")) {
+            throw new RequestException(404, "No such resource");
+        } else if (path.length == 2) {
+            requireMethod(method, "GET");
+            search(exchange, params);
+        } else if (path.length == 3) {
+            requireMethod(method, "GET");
+            getItem(exchange, decodeSegment(path[2]));
+        } else if (path.length == 4 && path[3].equals("checkout")) {
+            requireMethod(method, "POST");
+            String patron = params.get("patron");
+            if (patron == null) {
+                throw new RequestException(400, "Missing patron parameter");
+            }
+            circulate(exchange, CirculationOperation.checkOut(decodeSegment(path[2]), patron));
+        } else if (path.length == 4 && path[3].equals("checkin")) {
+            requireMethod(method, "POST");
+            circulate(exchange, CirculationOperation.checkIn(decodeSegment(path[2])));
+        } else {
+            throw new RequestException(404, "No such resource");
+        }
+    }
+
+    /**
+     * Answers a search.
+     *
+     * @param exchange the request and response
+     * @param params the query parameters
+     * @throws IOException if the response cannot be sent
+     */
+    private void search(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String term = params.get("q");
+        if (term == null) {
+            throw new RequestException(400, "Missing q parameter");
+        }
+        int limit = DEFAULT_LIMIT;
+        if (params.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(params.get("limit"));
+            } catch (NumberFormatException e) {
+                limit = -1;
+            }
+            if (limit < 0) {
+                throw new RequestException(400, "Limit must be a whole number of at least 0");
+            }
+        }
+        List<LibraryItem> results = library.searchItems(term);
+        StringBuilder json = new StringBuilder();
+        json.append("{\"count\":").append(results.size()).append(",\"items\":[");
+        for (int i = 0; i < Math.min(limit, results.size()); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendItem(json, results.get(i));
+        }
+        send(exchange, 200, json.append("]}").toString());
+    }
+
+    /**
+     * Answers an item lookup.
+     *
+     * @param exchange the request and response
+     * @param callNumber the call number
+     * @throws IOException if the response cannot be sent
+     */
+    private void getItem(HttpExchange exchange, String callNumber) throws IOException {
+        LibraryItem item = library.getItem(callNumber);
+        if (item == null) {
+            throw new RequestException(404, "No item with call number " + callNumber);
+        }
+        StringBuilder json = new StringBuilder();
+        appendItem(json, item);
+        send(exchange, 200, json.toString());
+    }
+
+    /**
+     * Performs a checkout or check-in and answers with its outcome and the
+     * item's status afterwards.
+     *
+     * @param exchange the request and response
+     * @param operation the operation
+     * @throws IOException if the response cannot be sent
+     */
+    private void circulate(HttpExchange exchange, CirculationOperation operation) throws IOException {
+        CirculationResult result = library.circulate(operation);
+        int status;
+        switch (result) {
+            case SUCCESS:
+                status = 200;
+                break;
+            case ITEM_NOT_FOUND:
+            case PATRON_NOT_FOUND:
+                status = 404;
+                break;
+            default:
+                status = 409;
+                break;
+        }
+        StringBuilder json = new StringBuilder();
+        json.append("{\"result\":").append(quote(result.name()));
+        LibraryItem item = library.getItem(operation.getCallNumber());
+        if (item != null) {
+            json.append(",\"item\":");
+            appendItem(json, item);
+        }
+        send(exchange, status, json.append('}').toString());
+    }
+
+    /**
+     * Writes an item as a JSON object. The loan is read once, so the
+     * status fields always agree with each other.
+     *
+     * @param json the text to append to
+     * @param item the item
+     */
+    private static void appendItem(StringBuilder json, LibraryItem item) {
+        Loan loan = item.getLoan();
+        json.append("{\"callNumber\":").append(quote(item.getCallNumber()))
+            .append(",\"type\":").append(quote(item.getClass().getSimpleName()))
+            .append(",\"title\":").append(quote(item.getTitle()))
+            .append(",\"year\":").append(item.getYear());
+        if (item instanceof Book) {
+            Book book = (Book) item;
+            json.append(",\"authors\":[");
+            List<String> authors = book.getAuthors();
+            for (int i = 0; i < authors.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(quote(authors.get(i)));
+            }
+            json.append("],\"isbn\":").append(quote(book.getIsbn()));
+        }
+        json.append(",\"checkedOut\":").append(loan != null);
+        if (loan != null) {
+            Instant due = loan.getDueDate();
+            json.append(",\"checkedOutBy\":").append(quote(loan.getPatron().getStudentId()))
+                .append(",\"dueDate\":").append(due == null ? "null" : quote(due.toString()));
+        }
+        json.append('}');
+    }
+
+    /**
+     * Quotes a string as a JSON string literal.
+     *
+     * @param text the string, or null
+     * @return the literal, or {@code null}
+     */
+    static String quote(String text) {
+        if (text == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Sends a JSON response.
+     *
+     * @param exchange the request and response
+     * @param status the HTTP status
+     * @param json the body
+     * @throws IOException if the response cannot be sent
+     */
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Refuses a request made with the wrong method.
+     *
+     * @param method the request's method
+     * @param allowed the method the resource takes
+     */
+    private static void requireMethod(String method, String allowed) {
+        if (!allowed.equals(method)) {
+            throw new RequestException(405, "Use " + allowed);
+        }
+    }
+
+    /**
+     * Splits a raw query string into decoded parameters. When a name
+     * repeats, the last value wins.
+     *
+     * @param rawQuery the query string, or null
+     * @return the parameters by name
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                params.put(decodeParam(pair), "");
+            } else {
+                params.put(decodeParam(pair.substring(0, equals)), decodeParam(pair.substring(equals + 1)));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Decodes a percent-encoded path segment, where a plus is itself.
+     *
+     * @param raw the encoded segment
+     * @return the decoded segment
+     */
+    private static String decodeSegment(String raw) {
+        return decodeParam(raw.replace("+", "%2B"));
+    }
+
+    /**
+     * Decodes a form-encoded query component, where a plus is a space.
+     *
+     * @param raw the encoded component
+     * @return the decoded component
+     */
+    private static String decodeParam(String raw) {
+        try {
+            return URLDecoder.decode(raw, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new RequestException(400, "Malformed percent-encoding");
+        }
+    }
+
+    /**
+     * A request that cannot be served, and the status to answer with.
+     */
+    private static final class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
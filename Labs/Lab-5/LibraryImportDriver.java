@@ -0,0 +1,225 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Driver class to test bulk catalogue imports.
+ * Writes a CSV dump with a few duplicate call numbers and malformed rows,
+ * imports it into a silent library and checks the counts, that the first
+ * record with a call number wins and that the items are searchable. It then
+ * imports a small JSON-lines dump with quoting and escapes, and finally
+ * pages through and dumps the imported library.
+ *
+ * <p>The number of CSV records can be given as the first argument.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryImportDriver {
+    private static final int DEFAULT_RECORDS = 100_000;
+    private static final int DUPLICATE_EVERY = 10_000;
+    private static final int MALFORMED_EVERY = 25_000;
+    private static final int PAGE_SIZE = 1_000;
+
+    /**
+     * Main method to run the import test.
+     *
+     * @param args the number of CSV records to import (optional)
+     * @throws IOException if a dump cannot be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        System.out.println("========================================");
+        System.out.println("   Library System - Catalogue Import");
+        System.out.println("========================================\n");
+
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RECORDS;
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        boolean passed = checkCsv(library, records);
+        System.out.println();
+        passed &= checkJsonLines();
+        System.out.println();
+        passed &= checkListing(library);
+
+        System.out.println();
+        System.out.println(passed ? "Import test PASSED" : "Import test FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Imports a generated CSV dump and checks the outcome.
+     *
+     * @param library the empty library to import into
+     * @param records the number of records to write
+     * @return true if every check passed
+     * @throws IOException if the dump cannot be written or read
+     */
+    private static boolean checkCsv(LibrarySystem library, int records) throws IOException {
+        System.out.println("--- CSV ---");
+        Path file = Files.createTempFile("catalogue", ".csv");
+        int duplicates = 0;
+        int malformed = 0;
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                out.write("type,title,callNumber,year,isbn,authors\n");
+                for (int i = 0; i < records; i++) {
+                    if (i > 0 && i % MALFORMED_EVERY == 0) {
+                        out.write("book,Missing Columns," + i + "\n");
+                        malformed++;
+                    } else if (i > 0 && i % DUPLICATE_EVERY == 0) {
+                        out.write("dvd,Duplicate of Zero,CALL-0,2001,,\n");
+                        duplicates++;
+                    } else if (i % 2 == 0) {
+                        out.write("book,\"Volume " + i + ", \"\"Collected\"\"\",CALL-" + i + ","
+                                  + (1950 + i % 70) + ",978-" + i + ",Author " + i % 1000 + ";Editor\n");
+                    } else {
+                        out.write("dvd,Film " + i + ",CALL-" + i + "," + (1980 + i % 40) + ",,\n");
+                    }
+                }
+            }
+            System.out.printf("Wrote %,d records (%,d MB)%n", records, Files.size(file) >> 20);
+
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+            ImportSummary summary = new CatalogueImporter(library).importFile(file);
+            System.gc();
+            long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+            System.out.println(summary);
+            System.out.printf("%,.0f records/sec, %,d bytes of heap per item%n",
+                              records / (summary.getElapsed().toNanos() / 1e9),
+                              (heapAfter - heapBefore) / Math.max(1, summary.getAdded()));
+
+            int expected = records - duplicates - malformed;
+            boolean passed = report("Every valid record added", summary.getAdded() == expected);
+            passed &= report("Inventory holds them", library.getItem("CALL-" + (records - 1)) != null);
+            passed &= report("Duplicates counted", summary.getDuplicates() == duplicates);
+            passed &= report("Malformed rows counted", summary.getRejected() == malformed);
+            passed &= report("First record with a call number wins",
+                             library.getItem("CALL-0") instanceof Book);
+            passed &= report("Quoted title parsed",
+                             library.getItem("CALL-2").getTitle().equals("Volume 2, \"Collected\""));
+            List<String> problems = summary.getProblems();
+            if (!problems.isEmpty()) {
+                System.out.println("  First problem: " + problems.get(0));
+            }
+            passed &= report("Imported items searchable",
+                             library.searchByKeyword("Film " + (records - 1)).size() == 1);
+            return passed;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Imports a small JSON-lines dump and checks each record.
+     *
+     * @return true if every check passed
+     * @throws IOException if the dump cannot be written or read
+     */
+    private static boolean checkJsonLines() throws IOException {
+        System.out.println("--- JSON Lines ---");
+        Path file = Files.createTempFile("catalogue", ".jsonl");
+        try {
+            Files.write(file, List.of(
+                    "{\"type\": \"book\", \"title\": \"Clean Code\", \"callNumber\": \"QA76.76 M37\","
+                    + " \"year\": 2008, \"isbn\": \"978-0132350884\", \"authors\": [\"Robert C. Martin\"]}",
+                    "{\"type\":\"dvd\",\"title\":\"The \\\"Matrix\\\" \\u00e9dition\",\"callNumber\":\"DVD M38\","
+                    + "\"year\":1999,\"rating\":{\"stars\":[5,4]},\"extra\":null}",
+                    "",
+                    "{\"type\":\"book\",\"title\":\"No Year\",\"callNumber\":\"QA1\"}",
+                    "{\"type\":\"tape\",\"title\":\"Cassette\",\"callNumber\":\"T1\",\"year\":1985}",
+                    "{\"type\":\"dvd\",\"title\":\"Broken\""), StandardCharsets.UTF_8);
+
+            LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+            ImportSummary summary = new CatalogueImporter(library).importFile(file);
+            System.out.println(summary);
+            summary.getProblems().forEach(problem -> System.out.println("  " + problem));
+
+            boolean passed = report("Two records added", summary.getAdded() == 2);
+            passed &= report("Three records rejected", summary.getRejected() == 3);
+            LibraryItem book = library.getItem("QA76.76 M37");
+            passed &= report("Book fields read", book instanceof Book
+                             && ((Book) book).getAuthors().equals(List.of("Robert C. Martin"))
+                             && book.getYear() == 2008);
+            LibraryItem dvd = library.getItem("DVD M38");
+            passed &= report("Escapes decoded", dvd != null
+                             && dvd.getTitle().equals("The \"Matrix\" \u00e9dition"));
+            return passed;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Pages through a library and dumps it to a file, timing both.
+     *
+     * @param library the imported library
+     * @return true if paging and the dump each saw every item once
+     * @throws IOException if the dump cannot be written
+     */
+    private static boolean checkListing(LibrarySystem library) throws IOException {
+        System.out.println("--- Listing ---");
+        long expected = library.streamInventory().count();
+        long begin = System.nanoTime();
+        Set<String> seen = new HashSet<>();
+        int pages = 0;
+        boolean ordered = true;
+        String previous = null;
+        CallNumberComparator order = new CallNumberComparator();
+        Page<LibraryItem> page = library.listItems(null, PAGE_SIZE);
+        while (true) {
+            pages++;
+            for (LibraryItem item : page.getEntries()) {
+                seen.add(item.getCallNumber());
+                ordered &= previous == null || order.compare(previous, item.getCallNumber()) < 0;
+                previous = item.getCallNumber();
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+            page = library.listItems(page.getNextCursor(), PAGE_SIZE);
+        }
+        System.out.printf("Paged %,d items in %,d pages in %,d ms%n",
+                          seen.size(), pages, (System.nanoTime() - begin) / 1_000_000);
+
+        Path file = Files.createTempFile("inventory", ".txt");
+        try {
+            begin = System.nanoTime();
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                library.writeInventory(out);
+            }
+            long lines;
+            try (Stream<String> dump = Files.lines(file, StandardCharsets.UTF_8)) {
+                lines = dump.count();
+            }
+            System.out.printf("Dumped %,d lines (%,d MB) in %,d ms%n", lines, Files.size(file) >> 20,
+                              (System.nanoTime() - begin) / 1_000_000);
+            boolean passed = report("Paging saw every item once", seen.size() == expected);
+            passed &= report("Pages in call-number order", ordered);
+            // A blank line, the heading and the total surround the items.
+            passed &= report("Dump lists every item", lines == expected + 3);
+            return passed;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Prints the outcome of one check.
+     *
+     * @param description what was checked
+     * @param passed whether the check passed
+     * @return the outcome
+     */
+    private static boolean report(String description, boolean passed) {
+        System.out.println(description + ": " + (passed ? "yes" : "NO"));
+        return passed;
+    }
+}
@@ -1,15 +1,35 @@
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * Abstract base class representing a library item.
  * This class serves as a template for all types of items that can be
  * checked out from the library (books, DVDs, etc.).
+ * The checkout state is held in a single atomic reference to the current
+ * {@link Loan}, which records the borrower and the due date together, so
+ * checking out and in are compare-and-set operations that are safe to call
+ * from several threads without locking.
+ * The details and searchable text are derived once and cached, since
+ * searches and listings ask for them far more often than the fields change.
+ * 
+ * <p>Each checkout state is kept as a revision stamped by the
+ * {@link VersionClock}, linked to the state it replaced, so that a
+ * {@link LibraryView} opened earlier can still read the loan it saw.
+ * Revisions no open view can ask for are unlinked on the next change.
  * 
  * @author Orchlon Chinbat
  */
 public abstract class LibraryItem {
-    private String title;
-    private String callNumber;
-    private boolean checkedOut;
-    private Patron checkedOutBy;
+    /** Marks an item that has been withdrawn from the inventory. */
+    private static final Loan WITHDRAWN = new Loan(null, new Patron("", ""), null);
+    
+    private final String title;
+    private final String callNumber;
+    private final AtomicReference<Revision> state;
+    private final AtomicLong listedAt;
+    private String details;
+    private String searchableText;
     
     /**
      * Constructs a LibraryItem with the specified title and call number.
@@ -20,8 +40,8 @@ public abstract class LibraryItem {
     public LibraryItem(String title, String callNumber) {
         this.title = title;
         this.callNumber = callNumber;
-        this.checkedOut = false;
-        this.checkedOutBy = null;
+        this.state = new AtomicReference<>(new Revision(null, 0));
+        this.listedAt = new AtomicLong(VersionClock.NEVER);
     }
     
     /**
@@ -42,13 +62,30 @@ public abstract class LibraryItem {
         return callNumber;
     }
     
+    /**
+     * Gets the year the item was published or released.
+     * 
+     * @return the year
+     */
+    public abstract int getYear();
+    
     /**
      * Checks if the item is currently checked out.
      * 
      * @return true if checked out, false otherwise
      */
     public boolean isCheckedOut() {
-        return checkedOut;
+        return getLoan() != null;
+    }
+    
+    /**
+     * Gets the current loan of this item.
+     * 
+     * @return the loan, or null if the item is available
+     */
+    public Loan getLoan() {
+        Loan current = state.get().loan;
+        return current == WITHDRAWN ? null : current;
     }
     
     /**
@@ -57,22 +94,44 @@ public abstract class LibraryItem {
      * @return the patron who checked out the item, or null if available
      */
     public Patron getCheckedOutBy() {
-        return checkedOutBy;
+        Loan current = getLoan();
+        return current == null ? null : current.getPatron();
     }
     
     /**
-     * Checks out this item to a patron.
+     * Gets the date this item is due back.
+     * 
+     * @return the due date, or null if the item is available or has no due date
+     */
+    public Instant getDueDate() {
+        Loan current = getLoan();
+        return current == null ? null : current.getDueDate();
+    }
+    
+    /**
+     * Checks out this item to a patron without a due date.
+     * Only one of several concurrent callers can succeed.
      * 
      * @param patron the patron checking out the item
-     * @return true if successful, false if already checked out
+     * @return true if successful, false if already checked out or withdrawn
      */
     public boolean checkOut(Patron patron) {
-        if (!checkedOut) {
-            checkedOut = true;
-            checkedOutBy = patron;
-            return true;
+        return checkOut(new Loan(this, patron, null));
+    }
+    
+    /**
+     * Checks out this item under the given loan.
+     * Only one of several concurrent callers can succeed.
+     * 
+     * @param newLoan a loan of this item
+     * @return true if successful, false if already checked out or withdrawn
+     * @throws IllegalArgumentException if the loan is for a different item
+     */
+    public boolean checkOut(Loan newLoan) {
+        if (newLoan.getItem() != this) {
+            throw new IllegalArgumentException("Loan is for a different item");
         }
-        return false;
+        return advance(null, newLoan);
     }
     
     /**
@@ -81,34 +140,288 @@ public abstract class LibraryItem {
      * @return true if successful, false if not checked out
      */
     public boolean checkIn() {
-        if (checkedOut) {
-            checkedOut = false;
-            checkedOutBy = null;
-            return true;
+        Patron patron = getCheckedOutBy();
+        return patron != null && checkIn(patron);
+    }
+    
+    /**
+     * Checks in this item only if it is still checked out by the given patron.
+     * Callers that update the patron's loan list use this form so that the
+     * item and the list are changed for the same loan.
+     * 
+     * @param patron the patron expected to hold the item
+     * @return true if the item was checked out by the patron and is now available
+     */
+    public boolean checkIn(Patron patron) {
+        while (true) {
+            Loan current = getLoan();
+            if (current == null || current.getPatron() != patron) {
+                return false;
+            }
+            if (advance(current, null)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Ends the given loan, making the item available again.
+     * 
+     * @param expected the loan expected to be current
+     * @return true if the loan was current and has now ended
+     */
+    public boolean checkIn(Loan expected) {
+        return expected != WITHDRAWN && advance(expected, null);
+    }
+    
+    /**
+     * Withdraws this item so that it can no longer be checked out.
+     * Used when removing the item from the inventory.
+     * 
+     * @return true if the item was available and is now withdrawn
+     */
+    public boolean withdraw() {
+        return advance(null, WITHDRAWN);
+    }
+    
+    /**
+     * Checks whether this item has been withdrawn from the inventory.
+     * 
+     * @return true if the item was removed and can no longer circulate
+     */
+    boolean isWithdrawn() {
+        return state.get().loan == WITHDRAWN;
+    }
+    
+    /**
+     * Replaces the loan if it is still the expected one, then stamps the
+     * new state and unlinks states no open view needs any more.
+     * 
+     * @param expected the loan expected to be current, or null
+     * @param next the new loan, null, or the withdrawn marker
+     * @return true if the loan was the expected one and has been replaced
+     */
+    private boolean advance(Loan expected, Loan next) {
+        Revision revision = new Revision(next, VersionClock.PENDING);
+        while (true) {
+            Revision current = state.get();
+            if (current.loan != expected) {
+                return false;
+            }
+            // Stamps must grow along the chain, so wait out a change
+            // that is still being stamped.
+            current.awaitVersion();
+            revision.previous = current;
+            if (state.compareAndSet(current, revision)) {
+                revision.version = VersionClock.tick();
+                trim(revision);
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Unlinks the states older than the newest one that the oldest open
+     * view can see. With no view open, only the latest state is kept.
+     * 
+     * @param latest the state just stamped
+     */
+    private static void trim(Revision latest) {
+        long oldest = VersionClock.oldestPinned();
+        Revision kept = latest;
+        while (kept != null && kept.version > oldest) {
+            kept = kept.previous;
+        }
+        if (kept != null) {
+            kept.previous = null;
+        }
+    }
+    
+    /**
+     * Gets the loan, null or withdrawn marker current at a version.
+     * 
+     * @param version a version pinned by an open view
+     * @return the state at that version
+     */
+    private Loan stateAt(long version) {
+        Revision revision = state.get();
+        while (revision.awaitVersion() > version) {
+            revision = revision.previous;
+        }
+        return revision.loan;
+    }
+    
+    /**
+     * Gets the loan this item was under at a version.
+     * 
+     * @param version a version pinned by an open view
+     * @return the loan, or null if the item was available or not in the inventory
+     */
+    Loan loanAt(long version) {
+        Loan loan = stateAt(version);
+        return loan == WITHDRAWN ? null : loan;
+    }
+    
+    /**
+     * Checks whether this item was in the inventory at a version.
+     * 
+     * @param version a version pinned by an open view
+     * @return true if the item had been added and not yet removed
+     */
+    boolean isListedAt(long version) {
+        long listed;
+        while ((listed = listedAt.get()) == VersionClock.PENDING) {
+            VersionClock.awaitStamp();
         }
-        return false;
+        return listed <= version && stateAt(version) != WITHDRAWN;
+    }
+    
+    /**
+     * Gets the version at which this item was removed from the inventory.
+     * 
+     * @return the version, or {@link VersionClock#NEVER} if it has not been removed
+     */
+    long withdrawnAt() {
+        Revision current = state.get();
+        return current.loan == WITHDRAWN ? current.awaitVersion() : VersionClock.NEVER;
+    }
+    
+    /**
+     * Counts the checkout states this item is keeping, the current one
+     * included. More than one is kept only for views that may need them.
+     * 
+     * @return the number of states
+     */
+    int retainedStates() {
+        int count = 0;
+        for (Revision revision = state.get(); revision != null; revision = revision.previous) {
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Marks this item as joining an inventory. Views wait for the item's
+     * stamp from now until {@link #endListing(boolean)}.
+     * 
+     * @return true if the item was in no inventory before and must be stamped
+     */
+    boolean beginListing() {
+        return listedAt.compareAndSet(VersionClock.NEVER, VersionClock.PENDING);
+    }
+    
+    /**
+     * Stamps the item's arrival in the inventory once it is in place.
+     * 
+     * @param listed false if the item was not added after all
+     */
+    void endListing(boolean listed) {
+        listedAt.set(listed ? VersionClock.tick() : VersionClock.NEVER);
     }
     
     /**
      * Gets detailed information about the library item.
-     * Subclasses must implement this method to provide specific details.
+     * The text is formatted on first use and cached until
+     * {@link #invalidateDerivedText()} is called.
      * 
      * @return a string with detailed information about the item
      */
-    public abstract String getDetails();
+    public final String getDetails() {
+        // Racing threads may both format the text; either result is
+        // identical and Strings are safe to publish without locking.
+        String cached = details;
+        if (cached == null) {
+            cached = formatDetails();
+            details = cached;
+        }
+        return cached;
+    }
     
     /**
      * Gets searchable text for this item.
-     * Subclasses should override this to include relevant searchable fields.
+     * The text is built on first use and cached until
+     * {@link #invalidateDerivedText()} is called.
+     * 
+     * @return searchable text (lowercase)
+     */
+    public final String getSearchableText() {
+        String cached = searchableText;
+        if (cached == null) {
+            cached = buildSearchableText();
+            searchableText = cached;
+        }
+        return cached;
+    }
+    
+    /**
+     * Formats detailed information about the library item.
+     * Subclasses must implement this method to provide specific details.
+     * 
+     * @return a string with detailed information about the item
+     */
+    protected abstract String formatDetails();
+    
+    /**
+     * Builds the searchable text for this item.
+     * Subclasses should include all relevant searchable fields.
      * 
      * @return searchable text (lowercase)
      */
-    public abstract String getSearchableText();
+    protected abstract String buildSearchableText();
+    
+    /**
+     * Discards the cached details and searchable text.
+     * Subclasses with fields that can change must call this after changing
+     * them; the built-in item types are immutable and never need to.
+     */
+    protected void invalidateDerivedText() {
+        details = null;
+        searchableText = null;
+    }
     
     @Override
     public String toString() {
-        String status = checkedOut ? " [CHECKED OUT by " + checkedOutBy.getName() + "]" : " [AVAILABLE]";
+        return describe(getLoan());
+    }
+    
+    /**
+     * Formats the item's details with its checkout status under a loan.
+     * 
+     * @param current the loan to report, or null for an available item
+     * @return the details followed by the status
+     */
+    String describe(Loan current) {
+        String status = current != null ? " [CHECKED OUT by " + current.getPatron().getName() + "]"
+                                        : " [AVAILABLE]";
         return getDetails() + status;
     }
+    
+    /**
+     * One checkout state of an item, with the version that made it
+     * current and the state it replaced.
+     */
+    private static final class Revision {
+        final Loan loan;
+        volatile long version;
+        volatile Revision previous;
+        
+        Revision(Loan loan, long version) {
+            this.loan = loan;
+            this.version = version;
+        }
+        
+        /**
+         * Gets the version, waiting if it is still being stamped.
+         * 
+         * @return the version
+         */
+        long awaitVersion() {
+            long stamped;
+            while ((stamped = version) == VersionClock.PENDING) {
+                VersionClock.awaitStamp();
+            }
+            return stamped;
+        }
+    }
 }
 
@@ -0,0 +1,654 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of library changes.
+ * Attached to a {@link LibrarySystem} as an event listener, the journal
+ * records every added or removed item, registered patron, checkout,
+ * check-in and hold. Records are collected in memory and a background
+ * thread writes and forces whatever has accumulated in one go (group
+ * commit), so a burst of operations costs one disk sync rather than one
+ * per operation. By default an operation that made a change waits, in
+ * {@link #afterOperation()} once it has released its locks, until its
+ * record is on disk, so it never returns before the change would survive
+ * a crash; threads arriving together still share one sync.
+ *
+ * <p>Each record is framed as a length, a CRC32 of the payload and the
+ * payload itself, so a record torn by a crash is detected and discarded
+ * during recovery. {@link #checkpoint(LibrarySystem, Path)} writes a
+ * {@link LibrarySnapshot} tagged with the current journal offset and then
+ * drops the records before it, and {@link #recover(Path, Path)} loads the
+ * latest snapshot and replays only the records after it. Offsets count
+ * from the start of the journal's history, which the file header records,
+ * so they stay valid after earlier records are dropped.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryJournal implements LibraryEventListener, AutoCloseable {
+    private static final byte ADD_ITEM = 1;
+    private static final byte REMOVE_ITEM = 2;
+    private static final byte REGISTER_PATRON = 3;
+    /** A checkout without a due date, as written before due dates existed. */
+    private static final byte CHECK_OUT = 4;
+    private static final byte CHECK_IN = 5;
+    private static final byte CHECK_OUT_DUE = 6;
+    private static final byte PLACE_HOLD = 7;
+    private static final byte CANCEL_HOLD = 8;
+    private static final int HEADER_BYTES = 8;
+    /** Most added items replayed as one batch. */
+    private static final int REPLAY_BATCH = 8_192;
+    /**
+     * Starts the file header. Journals written before the header existed
+     * start with a record length, which is never negative.
+     */
+    private static final int FILE_MAGIC = 0xCA7A1061;
+    private static final int FILE_HEADER_BYTES = 12;
+    private static final ScheduledExecutorService CHECKPOINTS = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "library-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Path file;
+    private final boolean waitForDisk;
+    private final Object lock = new Object();
+    private final ByteArrayOutputStream pending;
+    private final DataOutputStream pendingOut;
+    private final Thread committer;
+    private FileChannel channel;
+    private long base;
+    private long headerBytes;
+    private long appendedOffset;
+    private long durableOffset;
+    private IOException failure;
+    private boolean closed;
+    private ScheduledFuture<?> checkpoints;
+    private volatile Exception checkpointFailure;
+
+    /**
+     * Opens a write-ahead journal for appending, creating the file if
+     * needed. Every change is on disk before the operation that made it
+     * returns.
+     *
+     * @param file the journal file
+     * @throws IOException if the file cannot be opened
+     */
+    public LibraryJournal(Path file) throws IOException {
+        this(file, true);
+    }
+
+    /**
+     * Opens a journal for appending, creating the file if needed.
+     *
+     * @param file the journal file
+     * @param waitForDisk true to make each operation wait until its record
+     *        is on disk; false to return as soon as the record is queued,
+     *        leaving {@link #sync()} to wait for it
+     * @throws IOException if the file cannot be opened
+     */
+    public LibraryJournal(Path file, boolean waitForDisk) throws IOException {
+        this.file = file;
+        this.waitForDisk = waitForDisk;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                        StandardOpenOption.WRITE);
+        if (channel.size() == 0) {
+            writeHeader(channel, 0);
+            channel.force(true);
+        }
+        long[] header = readHeader(channel);
+        this.base = header[0];
+        this.headerBytes = header[1];
+        this.channel.position(channel.size());
+        this.appendedOffset = base + channel.size() - headerBytes;
+        this.durableOffset = appendedOffset;
+        this.pending = new ByteArrayOutputStream(1 << 16);
+        this.pendingOut = new DataOutputStream(pending);
+        this.committer = new Thread(this::commitLoop, "library-journal");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Writes a file header at the current position of a channel.
+     *
+     * @param channel the new journal file
+     * @param base the offset of the first record the file will hold
+     * @throws IOException if the header cannot be written
+     */
+    private static void writeHeader(FileChannel channel, long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        header.putInt(FILE_MAGIC).putLong(base).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+
+    /**
+     * Reads the header of a journal file.
+     *
+     * @param channel the journal file
+     * @return the offset of the file's first record, and the length of the header
+     * @throws IOException if the header is damaged
+     */
+    private static long[] readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < Integer.BYTES || header.getInt(0) != FILE_MAGIC) {
+            // A journal from before headers: its history starts at the file.
+            return new long[] {0, 0};
+        }
+        if (header.remaining() < FILE_HEADER_BYTES) {
+            throw new IOException("Truncated journal header");
+        }
+        return new long[] {header.getLong(Integer.BYTES), FILE_HEADER_BYTES};
+    }
+
+    /**
+     * Records a change event. Refused operations are not journaled.
+     *
+     * @param event the event to record
+     */
+    @Override
+    public void onEvent(LibraryEvent event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            switch (event.getType()) {
+                case ITEM_ADDED:
+                    out.writeByte(ADD_ITEM);
+                    ItemCodec.writeItem(out, event.getItem());
+                    break;
+                case ITEM_REMOVED:
+                    out.writeByte(REMOVE_ITEM);
+                    out.writeUTF(event.getItem().getCallNumber());
+                    break;
+                case PATRON_REGISTERED:
+                    out.writeByte(REGISTER_PATRON);
+                    out.writeUTF(event.getPatron().getName());
+                    out.writeUTF(event.getPatron().getStudentId());
+                    break;
+                case ITEM_CHECKED_OUT:
+                    // Published under the borrower's monitor, so the item's
+                    // loan is still the one this event reports.
+                    out.writeByte(CHECK_OUT_DUE);
+                    out.writeUTF(event.getItem().getCallNumber());
+                    out.writeUTF(event.getPatron().getStudentId());
+                    ItemCodec.writeDueDate(out, event.getItem().getDueDate());
+                    break;
+                case ITEM_CHECKED_IN:
+                    out.writeByte(CHECK_IN);
+                    out.writeUTF(event.getItem().getCallNumber());
+                    break;
+                case HOLD_PLACED:
+                case HOLD_CANCELLED:
+                    out.writeByte(event.getType() == LibraryEvent.Type.HOLD_PLACED ? PLACE_HOLD : CANCEL_HOLD);
+                    out.writeUTF(event.getItem().getCallNumber());
+                    out.writeUTF(event.getPatron().getStudentId());
+                    break;
+                default:
+                    return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Appended in order here, while the library may still hold the
+        // item's or patron's lock, but waited for in afterOperation.
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Waits, for a write-ahead journal, until every record appended so far
+     * is on disk. That covers the records of the calling operation, and
+     * those of a batch appended from other threads; records of concurrent
+     * operations go in the same sync anyway.
+     */
+    @Override
+    public void afterOperation() {
+        if (waitForDisk) {
+            long end;
+            synchronized (lock) {
+                end = appendedOffset;
+            }
+            awaitDurable(end);
+        }
+    }
+
+    /**
+     * Frames a record and adds it to the pending group.
+     *
+     * @param payload the encoded record
+     * @return the journal offset just after the record
+     */
+    private long append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        synchronized (lock) {
+            if (failure != null) {
+                throw new UncheckedIOException("Journal is no longer writable", failure);
+            }
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            try {
+                pendingOut.writeInt(payload.length);
+                pendingOut.writeInt((int) crc.getValue());
+                pendingOut.write(payload);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            appendedOffset += HEADER_BYTES + payload.length;
+            lock.notifyAll();
+            return appendedOffset;
+        }
+    }
+
+    /**
+     * Waits until the records before an offset are on disk. The record is
+     * already queued and will be written regardless, so an interrupt does
+     * not end the wait early; it is passed on once the record is durable.
+     *
+     * @param offset the offset just after the record to wait for
+     */
+    private void awaitDurable(long offset) {
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (durableOffset < offset && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Journal is no longer writable", failure);
+        }
+    }
+
+    /**
+     * Writes and forces pending records in groups until the journal is closed.
+     */
+    private void commitLoop() {
+        while (true) {
+            byte[] group;
+            long groupEnd;
+            FileChannel target;
+            synchronized (lock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                group = pending.toByteArray();
+                pending.reset();
+                groupEnd = appendedOffset;
+                target = channel;
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(group);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                target.force(false);
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                durableOffset = groupEnd;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until every record appended so far is on disk.
+     *
+     * @return the journal offset up to which records are durable
+     * @throws IOException if the journal could not be written
+     */
+    public long sync() throws IOException {
+        synchronized (lock) {
+            long target = appendedOffset;
+            while (durableOffset < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while syncing journal");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return target;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the library tagged with the current journal
+     * offset, then drops the journal records before that offset. Later
+     * recovery replays only the records after it.
+     *
+     * @param library the library this journal is attached to
+     * @param snapshotFile the snapshot file to create or replace
+     * @throws IOException if the journal or snapshot cannot be written
+     */
+    public void checkpoint(LibrarySystem library, Path snapshotFile) throws IOException {
+        long offset = sync();
+        LibrarySnapshot.write(library, snapshotFile, offset);
+        discardBefore(offset);
+    }
+
+    /**
+     * Takes a checkpoint at a fixed interval on a background thread, so the
+     * journal stays short and recovery replays little beyond the snapshot.
+     * The first checkpoint that fails stops the schedule, since the
+     * journal would otherwise grow unnoticed while every later attempt
+     * failed too; {@link #getCheckpointFailure()} then tells why. Replaces
+     * any earlier schedule and clears its failure; {@link #close()} stops
+     * it.
+     *
+     * @param library the library this journal is attached to
+     * @param snapshotFile the snapshot file to create or replace
+     * @param interval the time between the end of one checkpoint and the next
+     */
+    public void scheduleCheckpoints(LibrarySystem library, Path snapshotFile, Duration interval) {
+        long millis = interval.toMillis();
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Checkpoint interval must be positive: " + interval);
+        }
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (checkpoints != null) {
+                checkpoints.cancel(false);
+            }
+            checkpointFailure = null;
+            checkpoints = CHECKPOINTS.scheduleWithFixedDelay(() -> {
+                try {
+                    checkpoint(library, snapshotFile);
+                } catch (IOException | RuntimeException e) {
+                    checkpointFailure = e;
+                    // Thrown on, so the executor runs this schedule no more.
+                    throw new IllegalStateException("Scheduled checkpoint failed", e);
+                }
+            }, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Gets why scheduled checkpoints stopped.
+     *
+     * @return the failure of the scheduled checkpoint that stopped the
+     *         schedule, or null if none has failed since it was started
+     */
+    public Exception getCheckpointFailure() {
+        return checkpointFailure;
+    }
+
+    /**
+     * Drops the records before an offset by copying the rest of the journal
+     * to a new file whose header starts its history at that offset, and
+     * moving the new file into place. Appends wait while the rest is
+     * copied, which is only what arrived since the snapshot began.
+     *
+     * @param offset an offset already covered by a snapshot
+     * @throws IOException if the new file cannot be written
+     */
+    private void discardBefore(long offset) throws IOException {
+        synchronized (lock) {
+            // Once everything appended is durable, the committer is idle
+            // and cannot pick up a new group while the lock is held.
+            while (durableOffset < appendedOffset && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while truncating journal");
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (closed || offset <= base) {
+                return;
+            }
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+                writeHeader(out, offset);
+                long position = offset - base + headerBytes;
+                long end = channel.size();
+                while (position < end) {
+                    position += channel.transferTo(position, end - position, out);
+                }
+                out.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            base = offset;
+            headerBytes = FILE_HEADER_BYTES;
+        }
+    }
+
+    /**
+     * Stops scheduled checkpoints, flushes pending records and closes the
+     * journal file.
+     *
+     * @throws IOException if the final records could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            if (checkpoints != null) {
+                checkpoints.cancel(false);
+            }
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Rebuilds a library from its latest snapshot and journal.
+     * Either file may be missing. A torn record at the end of the journal
+     * is discarded and the file truncated before it, so a new journal can
+     * be opened on the same file afterwards.
+     *
+     * @param snapshotFile the snapshot written by the last checkpoint
+     * @param journalFile the journal file
+     * @return the recovered library, with a silent event listener
+     * @throws IOException if the files cannot be read
+     */
+    public static LibrarySystem recover(Path snapshotFile, Path journalFile) throws IOException {
+        return recover(null, snapshotFile, journalFile);
+    }
+
+    /**
+     * Rebuilds a library backed by a catalogue file from its latest
+     * snapshot and journal. Catalogue items are never journaled as added,
+     * so the catalogue is attached before anything is loaded; checkouts,
+     * check-ins and removals of catalogue items then find their items.
+     *
+     * @param catalogue the catalogue the library had attached, opened afresh
+     *        since its items carry their circulation state; or null for none
+     * @param snapshotFile the snapshot written by the last checkpoint
+     * @param journalFile the journal file
+     * @return the recovered library, with a silent event listener and the
+     *         catalogue attached
+     * @throws IOException if the files cannot be read
+     */
+    public static LibrarySystem recover(CatalogueFile catalogue, Path snapshotFile, Path journalFile)
+            throws IOException {
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        library.attachCatalogue(catalogue);
+        // Hand-offs to waiting patrons are replayed from their checkout
+        // records, with the original due dates.
+        library.setHoldHandOff(false);
+        long offset = 0;
+        if (Files.exists(snapshotFile)) {
+            offset = LibrarySnapshot.load(library, snapshotFile);
+        }
+        if (Files.exists(journalFile)) {
+            replay(library, journalFile, offset);
+        }
+        library.setHoldHandOff(true);
+        return library;
+    }
+
+    /**
+     * Applies the journal records from the given offset to a library.
+     *
+     * @param library the library to update
+     * @param journalFile the journal file
+     * @param offset the offset of the first record to replay
+     * @throws IOException if the journal cannot be read
+     */
+    private static void replay(LibrarySystem library, Path journalFile, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long[] header = readHeader(channel);
+            if (offset < header[0]) {
+                throw new IOException("Journal starts at offset " + header[0]
+                                      + ", after the snapshot at " + offset + ": " + journalFile);
+            }
+            long good = offset - header[0] + header[1];
+            channel.position(good);
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            CRC32 crc = new CRC32();
+            List<LibraryItem> added = new ArrayList<>();
+            while (good + HEADER_BYTES <= size) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0 || good + HEADER_BYTES + length > size) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(library, payload, added);
+                good += HEADER_BYTES + length;
+            }
+            library.addItems(added);
+            if (good < size) {
+                channel.truncate(good);
+            }
+        }
+    }
+
+    /**
+     * Applies a single journal record to a library. Runs of added items
+     * are collected and added as one batch, so their search indexes are
+     * built in bulk; the batch is added before any other kind of record,
+     * which may refer to its items.
+     *
+     * @param library the library to update
+     * @param payload the encoded record
+     * @param added the added items not yet applied, emptied when applied
+     * @throws IOException if the record is malformed
+     */
+    private static void apply(LibrarySystem library, byte[] payload, List<LibraryItem> added)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        if (type == ADD_ITEM) {
+            added.add(ItemCodec.readItem(in));
+            if (added.size() >= REPLAY_BATCH) {
+                library.addItems(added);
+                added.clear();
+            }
+            return;
+        }
+        if (!added.isEmpty()) {
+            library.addItems(added);
+            added.clear();
+        }
+        switch (type) {
+            case REMOVE_ITEM:
+                library.removeItem(in.readUTF());
+                break;
+            case REGISTER_PATRON:
+                String name = in.readUTF();
+                library.registerPatron(new Patron(name, in.readUTF()));
+                break;
+            case CHECK_OUT:
+                String callNumber = in.readUTF();
+                String studentId = in.readUTF();
+                library.checkOutItem(callNumber, studentId, null);
+                break;
+            case CHECK_OUT_DUE:
+                String dueCallNumber = in.readUTF();
+                String borrowerId = in.readUTF();
+                library.checkOutItem(dueCallNumber, borrowerId, ItemCodec.readDueDate(in));
+                break;
+            case CHECK_IN:
+                library.checkInItem(in.readUTF());
+                break;
+            case PLACE_HOLD:
+                String heldCallNumber = in.readUTF();
+                library.placeHold(heldCallNumber, in.readUTF());
+                break;
+            case CANCEL_HOLD:
+                String cancelledCallNumber = in.readUTF();
+                library.cancelHold(cancelledCallNumber, in.readUTF());
+                break;
+            default:
+                throw new IOException("Unknown journal record type: " + type);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per-operation call counts and latency histograms of a
+ * {@link LibrarySystem}. The system times each public operation with
+ * {@link System#nanoTime()} and records it here; recording allocates
+ * nothing and takes no lock.
+ *
+ * <p>The numbers can be read in code, as text from {@link #getSnapshot()}
+ * or over HTTP through a {@link MetricsEndpoint}, or over JMX once
+ * {@link #registerMBean(String)} has been called.
+ *
+ * @author Orchlon Chinbat
+ */
+public final class LibraryMetrics implements LibraryMetricsMXBean {
+    /** The timed operations. */
+    public enum Operation {
+        ADD_ITEM("addItem"),
+        REMOVE_ITEM("removeItem"),
+        REGISTER_PATRON("registerPatron"),
+        SEARCH_ITEMS("searchItems"),
+        CHECK_OUT("checkOutItem"),
+        CHECK_IN("checkInItem");
+
+        private final String methodName;
+
+        Operation(String methodName) {
+            this.methodName = methodName;
+        }
+
+        /**
+         * Gets the name of the timed method, used in reports.
+         *
+         * @return the method name
+         */
+        public String getMethodName() {
+            return methodName;
+        }
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private final LatencyHistogram[] histograms;
+
+    /**
+     * Constructs metrics with nothing recorded.
+     */
+    public LibraryMetrics() {
+        this.histograms = new LatencyHistogram[OPERATIONS.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Records one call of an operation that started at the given time.
+     *
+     * @param operation the operation
+     * @param startNanos the {@link System#nanoTime()} reading taken when it started
+     */
+    void record(Operation operation, long startNanos) {
+        histograms[operation.ordinal()].record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets the histogram of one operation.
+     *
+     * @param operation the operation
+     * @return its latency histogram
+     */
+    public LatencyHistogram getHistogram(Operation operation) {
+        return histograms[operation.ordinal()];
+    }
+
+    /**
+     * Summarizes every operation.
+     *
+     * @return each operation's summary, in declaration order
+     */
+    public Map<Operation, LatencyHistogram.Summary> summarize() {
+        Map<Operation, LatencyHistogram.Summary> summaries = new EnumMap<>(Operation.class);
+        for (Operation operation : OPERATIONS) {
+            summaries.put(operation, getHistogram(operation).summarize());
+        }
+        return summaries;
+    }
+
+    @Override
+    public Map<String, OperationStats> getOperations() {
+        Map<String, OperationStats> stats = new LinkedHashMap<>();
+        for (Map.Entry<Operation, LatencyHistogram.Summary> entry : summarize().entrySet()) {
+            stats.put(entry.getKey().getMethodName(), new OperationStats(entry.getValue()));
+        }
+        return stats;
+    }
+
+    @Override
+    public String getSnapshot() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("%-16s %10s %10s %10s %10s %10s %10s %10s%n", "operation", "count",
+                                  "mean_us", "p50_us", "p90_us", "p99_us", "p99.9_us", "max_us"));
+        for (Map.Entry<Operation, LatencyHistogram.Summary> entry : summarize().entrySet()) {
+            LatencyHistogram.Summary summary = entry.getValue();
+            text.append(String.format("%-16s %10d %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                                      entry.getKey().getMethodName(), summary.getCount(),
+                                      summary.getMean() / 1e3, summary.getPercentile(50) / 1e3,
+                                      summary.getPercentile(90) / 1e3, summary.getPercentile(99) / 1e3,
+                                      summary.getPercentile(99.9) / 1e3, summary.getMax() / 1e3));
+        }
+        return text.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under
+     * {@code library:type=LibraryMetrics,name=<name>}, where JConsole and
+     * other JMX clients can read them.
+     *
+     * @param name a name telling this library apart from others in the process
+     * @return the name the MBean was registered under
+     * @throws JMException if the name is invalid or already registered
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("library:type=LibraryMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public String toString() {
+        return getSnapshot();
+    }
+}
@@ -0,0 +1,222 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+/**
+ * Driver class to test operation metrics.
+ * Checks that the latency histogram reports percentiles within its error
+ * bound, that every timed operation is counted, that recording costs well
+ * under 100 ns and allocates nothing, and that the numbers can be read
+ * over JMX and HTTP.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryMetricsDriver {
+    private static final int VALUES = 1_000_000;
+    private static final int ITEMS = 2_000;
+    private static final double MAX_RECORD_NANOS = 100;
+
+    /**
+     * Main method to run the metrics test.
+     *
+     * @param args command line arguments (not used)
+     * @throws IOException if the metrics endpoint cannot be served or read
+     * @throws JMException if the MBean cannot be registered or read
+     */
+    public static void main(String[] args) throws IOException, JMException {
+        System.out.println("========================================");
+        System.out.println("   Library System - Operation Metrics");
+        System.out.println("========================================\n");
+
+        boolean passed = checkHistogram();
+        System.out.println();
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        passed &= checkCounts(library);
+        System.out.println();
+        passed &= checkOverhead();
+        System.out.println();
+        passed &= checkPublishing(library);
+
+        System.out.println();
+        System.out.println(passed ? "Metrics test PASSED" : "Metrics test FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Checks percentiles of uniformly spread values against their exact
+     * values.
+     *
+     * @return true if every percentile was within the error bound
+     */
+    private static boolean checkHistogram() {
+        System.out.println("--- Histogram Accuracy ---");
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= VALUES; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Summary summary = histogram.summarize();
+        boolean accurate = summary.getCount() == VALUES && summary.getMax() == VALUES;
+        for (double percentile : new double[] {50, 90, 99, 99.9, 100}) {
+            long exact = (long) Math.ceil(VALUES * percentile / 100);
+            long reported = summary.getPercentile(percentile);
+            double error = (double) (reported - exact) / exact;
+            System.out.printf("p%-5s exact %,9d reported %,9d (%+.2f%%)%n",
+                              percentile, exact, reported, error * 100);
+            accurate &= error >= 0 && error <= 1.0 / 32;
+        }
+        return report("Percentiles within 1/32 above the exact value", accurate);
+    }
+
+    /**
+     * Checks that each timed operation is counted once per call.
+     *
+     * @param library the library to exercise
+     * @return true if every count matched
+     */
+    private static boolean checkCounts(LibrarySystem library) {
+        System.out.println("--- Operation Counts ---");
+        List<LibraryItem> items = new CatalogueGenerator(ITEMS, 3).generate(ITEMS);
+        for (LibraryItem item : items) {
+            library.addItem(item);
+        }
+        library.registerPatron(new Patron("Counted Reader", "COUNT"));
+        library.registerPatron(new Patron("Counted Twice", "COUNT"));
+        for (int i = 0; i < ITEMS; i++) {
+            String callNumber = items.get(i).getCallNumber();
+            library.checkOutItem(callNumber, "COUNT");
+            library.checkInItem(callNumber);
+            library.searchItems(items.get(i).getTitle());
+        }
+        library.removeItem(items.get(0).getCallNumber());
+        library.removeItem("NO SUCH ITEM");
+
+        LibraryMetrics metrics = library.getMetrics();
+        long[] expected = {ITEMS, 2, 2, ITEMS, ITEMS, ITEMS};
+        boolean counted = true;
+        for (LibraryMetrics.Operation operation : LibraryMetrics.Operation.values()) {
+            counted &= metrics.getHistogram(operation).getCount() == expected[operation.ordinal()];
+        }
+        System.out.print(metrics.getSnapshot());
+        return report("Every call counted, refused ones included", counted);
+    }
+
+    /**
+     * Times recording on its own and checks it allocates nothing. The
+     * cost of a timed call also includes two clock reads, which depend on
+     * the platform, so that is reported alongside but not checked.
+     *
+     * @return true if recording was cheap and allocation-free
+     */
+    private static boolean checkOverhead() {
+        System.out.println("--- Recording Cost ---");
+        LibraryMetrics metrics = new LibraryMetrics();
+        Random random = new Random(5);
+        long[] latencies = new long[1 << 16];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = (long) Math.exp(random.nextDouble() * 20);
+        }
+        LatencyHistogram histogram = metrics.getHistogram(LibraryMetrics.Operation.CHECK_OUT);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        double recordNanos = Double.MAX_VALUE;
+        double clockNanos = Double.MAX_VALUE;
+        double timedNanos = Double.MAX_VALUE;
+        long allocated = 0;
+        for (int round = 0; round < 5; round++) {
+            int calls = 10_000_000;
+            long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long begin = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                histogram.record(latencies[i & (latencies.length - 1)]);
+            }
+            recordNanos = Math.min(recordNanos, (double) (System.nanoTime() - begin) / calls);
+            begin = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                System.nanoTime();
+            }
+            clockNanos = Math.min(clockNanos, (double) (System.nanoTime() - begin) / calls);
+            begin = System.nanoTime();
+            for (int i = 0; i < calls; i++) {
+                metrics.record(LibraryMetrics.Operation.CHECK_OUT, System.nanoTime());
+            }
+            timedNanos = Math.min(timedNanos, (double) (System.nanoTime() - begin) / calls);
+            allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        }
+        System.out.printf("Recording a value: %.1f ns%n", recordNanos);
+        System.out.printf("Reading the clock: %.1f ns%n", clockNanos);
+        System.out.printf("Timing a call, both clock reads included: %.1f ns%n", timedNanos);
+        System.out.printf("Bytes allocated by 20 million recordings: %,d%n", allocated);
+        boolean passed = report("Recording costs under " + (int) MAX_RECORD_NANOS + " ns",
+                                recordNanos < MAX_RECORD_NANOS);
+        return passed & report("Recording allocates nothing", allocated == 0);
+    }
+
+    /**
+     * Reads the metrics over JMX and HTTP.
+     *
+     * @param library the library whose metrics to publish
+     * @return true if both agreed with the metrics
+     * @throws IOException if the endpoint cannot be served or read
+     * @throws JMException if the MBean cannot be registered or read
+     */
+    private static boolean checkPublishing(LibrarySystem library) throws IOException, JMException {
+        System.out.println("--- Publishing ---");
+        LibraryMetrics metrics = library.getMetrics();
+        long checkOuts = metrics.getHistogram(LibraryMetrics.Operation.CHECK_OUT).getCount();
+
+        ObjectName name = metrics.registerMBean("driver");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        TabularData operations = (TabularData) server.getAttribute(name, "Operations");
+        CompositeData row = operations.get(new Object[] {"checkOutItem"});
+        CompositeData stats = (CompositeData) row.get("value");
+        boolean passed = report("JMX reports the checkout count", (Long) stats.get("count") == checkOuts
+                                && (Long) stats.get("p99Nanos") >= (Long) stats.get("p50Nanos"));
+
+        HttpServer http = MetricsEndpoint.start(metrics, new InetSocketAddress("127.0.0.1", 0));
+        try {
+            URL url = new URL("http://127.0.0.1:" + http.getAddress().getPort() + "/metrics");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            String body;
+            try (InputStream in = connection.getInputStream()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            passed &= report("HTTP serves the snapshot", connection.getResponseCode() == 200
+                             && body.contains("checkOutItem") && body.contains("p99_us"));
+        } finally {
+            http.stop(0);
+        }
+
+        server.invoke(name, "reset", new Object[0], new String[0]);
+        passed &= report("JMX reset clears the counts",
+                         metrics.getHistogram(LibraryMetrics.Operation.CHECK_OUT).getCount() == 0);
+        server.unregisterMBean(name);
+        return passed;
+    }
+
+    /**
+     * Prints the outcome of one check.
+     *
+     * @param description what was checked
+     * @param passed whether the check passed
+     * @return the outcome
+     */
+    private static boolean report(String description, boolean passed) {
+        System.out.println(description + ": " + (passed ? "yes" : "NO"));
+        return passed;
+    }
+}
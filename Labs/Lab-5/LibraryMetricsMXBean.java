@@ -0,0 +1,27 @@
+import java.util.Map;
+
+/**
+ * Management interface of {@link LibraryMetrics}, as seen over JMX.
+ *
+ * @author Orchlon Chinbat
+ */
+public interface LibraryMetricsMXBean {
+    /**
+     * Gets the statistics of every timed operation.
+     *
+     * @return the statistics, keyed by method name
+     */
+    Map<String, OperationStats> getOperations();
+
+    /**
+     * Gets the statistics as a text table, one operation per line.
+     *
+     * @return the table
+     */
+    String getSnapshot();
+
+    /**
+     * Clears every count and histogram.
+     */
+    void reset();
+}
@@ -0,0 +1,172 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Driver class to test due dates and overdue notices.
+ * Checks items out with due dates a fraction of a second apart and checks
+ * that each notice arrives when its loan falls due, in due-date order, and
+ * that returned items get no notice. A listener that fails on one notice
+ * must not hold back the others, and the failure must reach the library's
+ * notice failure handler. It then fills a library with loans
+ * that are not due and times the overdue report, which should depend on
+ * the few overdue loans rather than on the size of the library.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryOverdueDriver {
+    private static final int LOAN_COUNT = 100_000;
+    private static final long ALLOWED_LATENESS_MS = 100;
+
+    /**
+     * Main method to run the overdue test.
+     *
+     * @param args command line arguments (not used)
+     * @throws InterruptedException if interrupted while waiting for notices
+     */
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("========================================");
+        System.out.println("   Library System - Overdue Notices");
+        System.out.println("========================================\n");
+
+        boolean passed = checkNotices();
+        System.out.println();
+        passed &= checkFailingNotice();
+        System.out.println();
+        passed &= checkReport();
+
+        System.out.println();
+        System.out.println(passed ? "Overdue test PASSED" : "Overdue test FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Checks that notices fire on time, in order and only for items still out.
+     *
+     * @return true if every check passed
+     * @throws InterruptedException if interrupted while waiting for notices
+     */
+    private static boolean checkNotices() throws InterruptedException {
+        System.out.println("--- Notices ---");
+        List<Loan> notices = Collections.synchronizedList(new ArrayList<>());
+        List<Instant> arrivals = Collections.synchronizedList(new ArrayList<>());
+        LibrarySystem library = new LibrarySystem(event -> {
+            if (event.getType() == LibraryEvent.Type.ITEM_OVERDUE) {
+                arrivals.add(Instant.now());
+                notices.add(event.getItem().getLoan());
+            }
+        });
+        library.registerPatron(new Patron("Late Reader", "LATE"));
+        Instant start = Instant.now();
+        // Checked out in reverse so the timer has to be re-armed earlier.
+        for (int i = 4; i >= 0; i--) {
+            library.addItem(new DVD("Overdue DVD " + i, "DVD-" + i, 2000 + i));
+            library.checkOutItem("DVD-" + i, "LATE", start.plusMillis(200 + 100 * i));
+        }
+        library.checkInItem("DVD-2");
+        Thread.sleep(900);
+
+        boolean passed = report("Four notices raised", notices.size() == 4);
+        boolean onTime = true;
+        boolean ordered = true;
+        for (int i = 0; i < notices.size(); i++) {
+            Instant due = notices.get(i).getDueDate();
+            long lateness = Duration.between(due, arrivals.get(i)).toMillis();
+            System.out.printf("  %s due +%d ms, notice after %d ms%n",
+                              notices.get(i).getItem().getCallNumber(),
+                              Duration.between(start, due).toMillis(), lateness);
+            onTime &= lateness >= 0 && lateness <= ALLOWED_LATENESS_MS;
+            ordered &= i == 0 || notices.get(i - 1).getDueDate().isBefore(due);
+        }
+        passed &= report("Notices on time", onTime);
+        passed &= report("Notices in due-date order", ordered);
+        passed &= report("Returned item not reported",
+                         notices.stream().noneMatch(loan -> loan.getItem().getCallNumber().equals("DVD-2")));
+        passed &= report("Overdue report lists the four loans", library.getOverdueLoans().size() == 4);
+        library.checkInItem("DVD-0");
+        passed &= report("Returned item leaves the report", library.getOverdueLoans().size() == 3);
+        return passed;
+    }
+
+    /**
+     * Checks that a listener failing on one notice does not stop the
+     * notices after it, in the same second or a later one, and that the
+     * failure is handed to the notice failure handler.
+     *
+     * @return true if every check passed
+     * @throws InterruptedException if interrupted while waiting for notices
+     */
+    private static boolean checkFailingNotice() throws InterruptedException {
+        System.out.println("--- Failing Notice ---");
+        List<String> notified = Collections.synchronizedList(new ArrayList<>());
+        LibrarySystem library = new LibrarySystem(event -> {
+            if (event.getType() == LibraryEvent.Type.ITEM_OVERDUE) {
+                notified.add(event.getKey());
+                if (notified.size() == 1) {
+                    throw new IllegalStateException("Notice failed on purpose for " + event.getKey());
+                }
+            }
+        });
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        library.setNoticeFailureHandler((thread, failure) -> failures.add(failure));
+        library.registerPatron(new Patron("Unlucky Reader", "UNLUCKY"));
+        Instant start = Instant.now();
+        long[] dueMillis = {100, 150, 1_300};
+        for (int i = 0; i < dueMillis.length; i++) {
+            library.addItem(new DVD("Failing DVD " + i, "DVD-" + i, 2000));
+            library.checkOutItem("DVD-" + i, "UNLUCKY", start.plusMillis(dueMillis[i]));
+        }
+        Thread.sleep(1_600);
+        System.out.println("Notices: " + notified);
+        boolean passed = report("Every notice raised after a failure", notified.size() == dueMillis.length);
+        return passed & report("Failure passed to the handler", failures.size() == 1
+                               && failures.get(0).getMessage().equals("Notice failed on purpose for DVD-0"));
+    }
+
+    /**
+     * Times the overdue report in a library where few loans are overdue.
+     *
+     * @return true if the report found exactly the overdue loans
+     */
+    private static boolean checkReport() {
+        System.out.println("--- Overdue Report ---");
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        library.registerPatron(new Patron("Busy Reader", "BUSY"));
+        Instant now = Instant.now();
+        for (int i = 0; i < LOAN_COUNT; i++) {
+            library.addItem(new DVD("Report DVD " + i, "DVD-" + i, 2000));
+            Instant due = i % 10_000 == 0 ? now.minus(Duration.ofDays(1 + i / 10_000))
+                                          : now.plus(Duration.ofDays(1 + i % 30));
+            library.checkOutItem("DVD-" + i, "BUSY", due);
+        }
+
+        List<Loan> overdue = library.getOverdueLoans();
+        long begin = System.nanoTime();
+        int runs = 1_000;
+        for (int i = 0; i < runs; i++) {
+            overdue = library.getOverdueLoans();
+        }
+        System.out.printf("%,d loans, %d overdue, report in %,d ns%n",
+                          LOAN_COUNT, overdue.size(), (System.nanoTime() - begin) / runs);
+        boolean passed = report("Report finds only overdue loans", overdue.size() == LOAN_COUNT / 10_000);
+        passed &= report("Report is earliest first",
+                         overdue.get(0).getItem().getCallNumber().equals("DVD-90000"));
+        return passed;
+    }
+
+    /**
+     * Prints the outcome of one check.
+     *
+     * @param description what was checked
+     * @param passed whether the check passed
+     * @return the outcome
+     */
+    private static boolean report(String description, boolean passed) {
+        System.out.println(description + ": " + (passed ? "yes" : "NO"));
+        return passed;
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Driver class to test attribute queries.
+ * Checks {@link LibrarySystem#findItems(ItemQuery)} against a plain scan
+ * of a generated catalogue for ISBN, author, type and year conditions and
+ * combinations of them, again after a third of the items are removed, and
+ * reports how much faster the indexes answer a selective query than the
+ * scan does.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryQueryDriver {
+    private static final int ITEMS = 50_000;
+    private static final int SAMPLES = 200;
+
+    /**
+     * Main method to run the query test.
+     *
+     * @param args command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("   Library System - Attribute Queries");
+        System.out.println("========================================\n");
+
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        List<LibraryItem> items = new CatalogueGenerator(ITEMS, 23).generate(ITEMS);
+        library.addItems(items);
+
+        boolean passed = checkQueries(library, items, "Full Catalogue");
+        System.out.println();
+        List<LibraryItem> remaining = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            if (i % 3 == 0) {
+                library.removeItem(items.get(i).getCallNumber());
+            } else {
+                remaining.add(items.get(i));
+            }
+        }
+        passed &= checkQueries(library, remaining, "After Removing a Third");
+        System.out.println();
+        passed &= checkEdgeCases(library, remaining);
+        System.out.println();
+        measure(library, remaining);
+
+        System.out.println();
+        System.out.println(passed ? "Query test PASSED" : "Query test FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs sample queries of each shape and compares them with a scan.
+     *
+     * @param library the library to query
+     * @param items the items the library holds
+     * @param heading the heading to print
+     * @return true if every query matched the scan
+     */
+    private static boolean checkQueries(LibrarySystem library, List<LibraryItem> items, String heading) {
+        System.out.println("--- " + heading + " ---");
+        Random random = new Random(items.size());
+        int[] checked = new int[5];
+        int[] wrong = new int[5];
+        for (int i = 0; i < SAMPLES; i++) {
+            LibraryItem item = items.get(random.nextInt(items.size()));
+            int year = item.getYear();
+            List<ItemQuery> queries = new ArrayList<>();
+            queries.add(ItemQuery.all().ofType(DVD.class).publishedBetween(year - 2, year + 2));
+            if (item instanceof Book) {
+                Book book = (Book) item;
+                String author = book.getAuthors().get(0);
+                queries.add(ItemQuery.all().withIsbn(book.getIsbn().replace("-", "")));
+                queries.add(ItemQuery.all().byAuthor(author));
+                queries.add(ItemQuery.all().byAuthor(author).publishedAfter(year - 10));
+                queries.add(ItemQuery.all().ofType(Book.class).byAuthor(author)
+                                     .byAuthor(book.getAuthors().get(book.getAuthors().size() - 1))
+                                     .publishedBetween(year, year).withIsbn(book.getIsbn()));
+            }
+            for (int q = 0; q < queries.size(); q++) {
+                int shape = item instanceof Book ? q : 0;
+                checked[shape]++;
+                if (!sameItems(library.findItems(queries.get(q)), scan(items, queries.get(q)))) {
+                    wrong[shape]++;
+                    System.out.println("Mismatch for " + queries.get(q));
+                }
+            }
+        }
+        String[] shapes = {"type and years", "ISBN", "author", "author and years", "all conditions"};
+        boolean passed = true;
+        for (int shape = 0; shape < shapes.length; shape++) {
+            passed &= report(String.format("%-16s %3d queries match the scan", shapes[shape], checked[shape]),
+                             wrong[shape] == 0 && checked[shape] > 0);
+        }
+        return passed;
+    }
+
+    /**
+     * Checks queries that should find nothing, or everything.
+     *
+     * @param library the library to query
+     * @param items the items the library holds
+     * @return true if every check passed
+     */
+    private static boolean checkEdgeCases(LibrarySystem library, List<LibraryItem> items) {
+        System.out.println("--- Edge Cases ---");
+        Book book = null;
+        for (LibraryItem item : items) {
+            if (item instanceof Book) {
+                book = (Book) item;
+                break;
+            }
+        }
+        boolean passed = report("Unknown author finds nothing",
+                                library.findItems(ItemQuery.all().byAuthor("Nobody Known")).isEmpty());
+        passed &= report("Unknown ISBN finds nothing", library.findByIsbn("979-9999999999").isEmpty());
+        passed &= report("Empty year range finds nothing",
+                         library.findItems(ItemQuery.all().publishedBetween(2010, 2000)).isEmpty());
+        passed &= report("ISBN found with or without hyphens",
+                         library.findByIsbn(book.getIsbn()).contains(book)
+                         && library.findByIsbn(book.getIsbn().replace("-", "")).contains(book));
+        passed &= report("DVDs never match an author",
+                         library.findItems(ItemQuery.all().ofType(DVD.class)
+                                                   .byAuthor(book.getAuthors().get(0))).isEmpty());
+        passed &= report("No conditions finds every item",
+                         library.findItems(ItemQuery.all()).size() == items.size());
+        library.removeItem(book.getCallNumber());
+        passed &= report("Removed book is no longer found", !library.findByIsbn(book.getIsbn()).contains(book));
+        library.addItem(book);
+        return passed;
+    }
+
+    /**
+     * Times a selective composite query through the indexes and by scanning.
+     *
+     * @param library the library to query
+     * @param items the items the library holds
+     */
+    private static void measure(LibrarySystem library, List<LibraryItem> items) {
+        System.out.println("--- Indexed vs Scan ---");
+        Random random = new Random(7);
+        List<ItemQuery> queries = new ArrayList<>();
+        while (queries.size() < 1_000) {
+            LibraryItem item = items.get(random.nextInt(items.size()));
+            if (item instanceof Book) {
+                queries.add(ItemQuery.all().byAuthor(((Book) item).getAuthors().get(0))
+                                     .publishedBetween(item.getYear() - 5, item.getYear() + 5));
+            }
+        }
+        long found = 0;
+        long indexedNanos = Long.MAX_VALUE;
+        long scanNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            found = 0;
+            long start = System.nanoTime();
+            for (ItemQuery query : queries) {
+                found += library.findItems(query).size();
+            }
+            indexedNanos = Math.min(indexedNanos, System.nanoTime() - start);
+        }
+        List<ItemQuery> scanned = queries.subList(0, 50);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (ItemQuery query : scanned) {
+                scan(items, query);
+            }
+            scanNanos = Math.min(scanNanos, System.nanoTime() - start);
+        }
+        double indexedMicros = indexedNanos / 1_000.0 / queries.size();
+        double scanMicros = scanNanos / 1_000.0 / scanned.size();
+        System.out.printf("Author and years over %,d items, %.0f matches on average%n",
+                          items.size(), (double) found / queries.size());
+        System.out.printf("Indexed %.1f us, scan %.1f us per query (%.0fx)%n",
+                          indexedMicros, scanMicros, scanMicros / indexedMicros);
+    }
+
+    /**
+     * Answers a query by checking every item.
+     *
+     * @param items the items to check
+     * @param query the query
+     * @return the matching items
+     */
+    private static List<LibraryItem> scan(List<LibraryItem> items, ItemQuery query) {
+        List<LibraryItem> results = new ArrayList<>();
+        for (LibraryItem item : items) {
+            if (!query.getType().isInstance(item)
+                    || item.getYear() < query.getFromYear() || item.getYear() > query.getToYear()) {
+                continue;
+            }
+            if (query.getIsbn() != null || !query.getAuthors().isEmpty()) {
+                if (!(item instanceof Book)) {
+                    continue;
+                }
+                Book book = (Book) item;
+                if (query.getIsbn() != null && !query.getIsbn().equals(book.getIsbn().replace("-", ""))) {
+                    continue;
+                }
+                if (!book.getAuthors().containsAll(query.getAuthors())) {
+                    continue;
+                }
+            }
+            results.add(item);
+        }
+        return results;
+    }
+
+    /**
+     * Compares two results, ignoring order.
+     *
+     * @param actual the items found
+     * @param expected the items expected
+     * @return true if both hold the same items once each
+     */
+    private static boolean sameItems(List<LibraryItem> actual, List<LibraryItem> expected) {
+        Set<LibraryItem> unique = new HashSet<>(actual);
+        return unique.size() == actual.size() && unique.equals(new HashSet<>(expected));
+    }
+
+    /**
+     * Prints the outcome of one check.
+     *
+     * @param description what was checked
+     * @param passed whether the check passed
+     * @return the outcome
+     */
+    private static boolean report(String description, boolean passed) {
+        System.out.println(description + ": " + (passed ? "yes" : "NO"));
+        return passed;
+    }
+}
@@ -0,0 +1,330 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Driver class to test journal and snapshot persistence.
+ * Builds a library with a journal attached, takes a checkpoint part way
+ * through, keeps changing the library, then recovers a second library from
+ * the files and compares the two. A torn record is then appended to the
+ * journal to check that recovery discards it. A second library takes
+ * checkpoints on a schedule while it changes, and a third one's schedule
+ * must stop and report the failure when its snapshot cannot be written.
+ * Finally the items are written to a compact catalogue file, which is
+ * reopened with lazy item creation, and a library backed by it is
+ * recovered from its own snapshot and journal.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryRecoveryDriver {
+    private static final int ITEM_COUNT = 50_000;
+
+    /**
+     * Main method to run the recovery test.
+     *
+     * @param args command line arguments (not used)
+     * @throws IOException if the temporary files cannot be used
+     * @throws InterruptedException if interrupted while waiting for a checkpoint
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("library-recovery");
+        Path snapshotFile = directory.resolve("library.snapshot");
+        Path journalFile = directory.resolve("library.journal");
+
+        System.out.println("========================================");
+        System.out.println("   Library System - Recovery Test");
+        System.out.println("========================================\n");
+
+        LibraryJournal journal = new LibraryJournal(journalFile);
+        LibrarySystem library = new LibrarySystem(journal);
+        long emptySize = Files.size(journalFile);
+        library.registerPatron(new Patron("Patron 0", "P0"));
+        boolean passed = report("Change on disk when the operation returns",
+                                Files.size(journalFile) > emptySize);
+        // A combined listener must still let the journal wait for the disk.
+        library.setEventListener(journal.andThen(event -> { }));
+        long oneSize = Files.size(journalFile);
+        library.registerPatron(new Patron("Patron 1", "P1"));
+        passed &= report("Also through a combined listener", Files.size(journalFile) > oneSize);
+        library.setEventListener(journal);
+        for (int p = 2; p < 100; p++) {
+            library.registerPatron(new Patron("Patron " + p, "P" + p));
+        }
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            if (i % 3 == 0) {
+                library.addItem(new DVD("Recovery DVD " + i, "DVD-" + i, 1990 + i % 30));
+            } else {
+                library.addItem(new Book("Recovery Book " + i, "QA" + i,
+                                         Arrays.asList("Author " + i % 500, "Editor " + i % 70),
+                                         1950 + i % 70, "978-" + i));
+            }
+        }
+        for (int i = 0; i < ITEM_COUNT; i += 7) {
+            library.checkOutItem(callNumber(i), "P" + i % 100);
+        }
+        library.placeHold(callNumber(35), "P3");
+
+        System.out.println("--- Checkpoint ---");
+        long start = System.nanoTime();
+        long fullSize = Files.size(journalFile);
+        journal.checkpoint(library, snapshotFile);
+        System.out.printf("Snapshot written in %,d ms (%,d bytes)%n",
+                          (System.nanoTime() - start) / 1_000_000, Files.size(snapshotFile));
+        passed &= report("Journal records before the snapshot dropped",
+                         Files.size(journalFile) == emptySize && fullSize > emptySize);
+
+        // Changes after the checkpoint only exist in the journal tail.
+        for (int i = 0; i < ITEM_COUNT; i += 14) {
+            library.checkInItem(callNumber(i));
+        }
+        for (int i = 1; i < ITEM_COUNT; i += 50) {
+            library.removeItem(callNumber(i));
+        }
+        library.registerPatron(new Patron("Late Patron", "LATE"));
+        library.addItem(new DVD("Added After Checkpoint", "DVD-LATE", 2024));
+        library.checkOutItem("DVD-LATE", "LATE");
+        library.placeHold(callNumber(7), "LATE");
+        library.placeHold(callNumber(7), "P1");
+        library.checkInItem(callNumber(7));
+        library.placeHold(callNumber(21), "P2");
+        journal.close();
+        System.out.printf("Journal size: %,d bytes%n", Files.size(journalFile));
+        System.out.println();
+
+        System.out.println("--- Recovery ---");
+        start = System.nanoTime();
+        LibrarySystem recovered = LibraryJournal.recover(snapshotFile, journalFile);
+        System.out.printf("Recovered in %,d ms%n", (System.nanoTime() - start) / 1_000_000);
+        passed &= report("Recovered state matches", sameState(library, recovered));
+
+        System.out.println();
+        System.out.println("--- Recovery After Torn Write ---");
+        long intactSize = Files.size(journalFile);
+        Files.write(journalFile, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+        recovered = LibraryJournal.recover(snapshotFile, journalFile);
+        passed &= report("Torn record discarded", sameState(library, recovered));
+        passed &= report("Journal truncated to last good record",
+                         Files.size(journalFile) == intactSize);
+
+        System.out.println();
+        System.out.println("--- Scheduled Checkpoints ---");
+        passed &= checkScheduledCheckpoints(directory);
+
+        System.out.println();
+        System.out.println("--- Catalogue File ---");
+        passed &= checkCatalogue(library, directory);
+
+        System.out.println();
+        System.out.println(passed ? "Recovery test PASSED" : "Recovery test FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Changes a library while its journal takes checkpoints on a schedule,
+     * and checks that the journal is cut short and the library recovers.
+     *
+     * @param directory the directory for the snapshot and journal
+     * @return true if every check passed
+     * @throws IOException if the files cannot be used
+     * @throws InterruptedException if interrupted while waiting for a checkpoint
+     */
+    private static boolean checkScheduledCheckpoints(Path directory)
+            throws IOException, InterruptedException {
+        Path snapshotFile = directory.resolve("scheduled.snapshot");
+        Path journalFile = directory.resolve("scheduled.journal");
+        LibraryJournal journal = new LibraryJournal(journalFile);
+        LibrarySystem library = new LibrarySystem(journal);
+        journal.scheduleCheckpoints(library, snapshotFile, Duration.ofMillis(20));
+        library.registerPatron(new Patron("Scheduled Patron", "SCHED"));
+        for (int i = 0; i < 1_000; i++) {
+            library.addItem(new DVD("Scheduled DVD " + i, "SCHED-" + i, 2000 + i % 20));
+            if (i % 10 == 0) {
+                library.checkOutItem("SCHED-" + i, "SCHED");
+            }
+        }
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!Files.exists(snapshotFile) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        // Let one more checkpoint pass so it covers every change above.
+        Thread.sleep(100);
+        journal.close();
+        System.out.printf("Journal size after checkpoints: %,d bytes%n", Files.size(journalFile));
+        boolean passed = report("Scheduled checkpoint written", Files.exists(snapshotFile));
+        passed &= report("Journal kept short", Files.size(journalFile) < 1_000);
+        passed &= report("Recovered state matches",
+                         sameState(library, LibraryJournal.recover(snapshotFile, journalFile)));
+        return passed & checkFailingCheckpoints(directory);
+    }
+
+    /**
+     * Schedules checkpoints to a snapshot that cannot be written and
+     * checks that the schedule stops and reports why.
+     *
+     * @param directory the directory for the journal
+     * @return true if every check passed
+     * @throws IOException if the journal cannot be used
+     * @throws InterruptedException if interrupted while waiting for a checkpoint
+     */
+    private static boolean checkFailingCheckpoints(Path directory)
+            throws IOException, InterruptedException {
+        Path journalFile = directory.resolve("failing.journal");
+        Path snapshotFile = directory.resolve("missing").resolve("failing.snapshot");
+        LibraryJournal journal = new LibraryJournal(journalFile);
+        LibrarySystem library = new LibrarySystem(journal);
+        journal.scheduleCheckpoints(library, snapshotFile, Duration.ofMillis(20));
+        library.registerPatron(new Patron("Failing Patron", "FAIL"));
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (journal.getCheckpointFailure() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        boolean passed = report("Failed checkpoint reported",
+                                journal.getCheckpointFailure() instanceof IOException);
+        // Stopped, so a snapshot made possible now is not written.
+        Files.createDirectories(snapshotFile.getParent());
+        Thread.sleep(100);
+        passed &= report("Schedule stopped after the failure", !Files.exists(snapshotFile));
+        journal.close();
+        return passed;
+    }
+
+    /**
+     * Writes the library's items to a catalogue file and checks that a
+     * library backed by the catalogue creates items only when touched, and
+     * that its changes to catalogue items survive recovery.
+     *
+     * @param library the library whose items to write
+     * @param directory the directory for the catalogue, snapshot and journal
+     * @return true if every check passed
+     * @throws IOException if the files cannot be written or read
+     */
+    private static boolean checkCatalogue(LibrarySystem library, Path directory) throws IOException {
+        Path file = directory.resolve("library.catalogue");
+        Path snapshotFile = directory.resolve("catalogue.snapshot");
+        Path journalFile = directory.resolve("catalogue.journal");
+        CatalogueFile.write(file, library.itemView());
+        long start = System.nanoTime();
+        CatalogueFile catalogue = CatalogueFile.open(file);
+        LibraryJournal journal = new LibraryJournal(journalFile);
+        LibrarySystem backed = new LibrarySystem(journal);
+        backed.attachCatalogue(catalogue);
+        System.out.printf("Opened %,d-item catalogue (%,d bytes) in %,d us%n",
+                          catalogue.size(), Files.size(file), (System.nanoTime() - start) / 1_000);
+
+        boolean passed = report("No items created on open", backed.itemView().isEmpty());
+        LibraryItem original = library.getItem("QA2");
+        LibraryItem loaded = backed.getItem("QA2");
+        passed &= report("Lookup creates the item",
+                         loaded != null && loaded.getDetails().equals(original.getDetails())
+                         && backed.itemView().size() == 1);
+        backed.registerPatron(new Patron("Catalogue Patron", "CAT"));
+        passed &= report("Untouched item can be checked out", backed.checkOutItem("DVD-3", "CAT"));
+        passed &= report("Removed item stays removed",
+                         backed.removeItem("QA2") && backed.getItem("QA2") == null);
+
+        // One change of each kind before the checkpoint and one after it.
+        journal.checkpoint(backed, snapshotFile);
+        backed.checkOutItem("DVD-6", "CAT");
+        backed.removeItem("QA5");
+        journal.close();
+        LibrarySystem recovered = LibraryJournal.recover(CatalogueFile.open(file), snapshotFile,
+                                                         journalFile);
+        passed &= report("Catalogue loans recovered",
+                         recovered.getItem("DVD-3").getCheckedOutBy() != null
+                         && recovered.getItem("DVD-6").getCheckedOutBy() != null
+                         && recovered.getCheckedOutCount() == 2);
+        passed &= report("Catalogue removals recovered",
+                         recovered.getItem("QA2") == null && recovered.getItem("QA5") == null
+                         && recovered.getItem("QA4") != null);
+
+        start = System.nanoTime();
+        int materialized = backed.materializeCatalogue();
+        System.out.printf("Materialized %,d items in %,d ms%n",
+                          materialized, (System.nanoTime() - start) / 1_000_000);
+        passed &= report("Whole catalogue searchable",
+                         backed.itemView().size() == library.itemView().size() - 2
+                         && backed.searchItems("recovery book 4").size()
+                            == library.searchItems("recovery book 4").size());
+        return passed;
+    }
+
+    /**
+     * Gets the call number used for the i-th generated item.
+     *
+     * @param i the item number
+     * @return the call number
+     */
+    private static String callNumber(int i) {
+        return i % 3 == 0 ? "DVD-" + i : "QA" + i;
+    }
+
+    /**
+     * Prints the outcome of one check.
+     *
+     * @param description what was checked
+     * @param passed whether the check passed
+     * @return the outcome
+     */
+    private static boolean report(String description, boolean passed) {
+        System.out.println(description + ": " + (passed ? "yes" : "NO"));
+        return passed;
+    }
+
+    /**
+     * Lists the student IDs waiting for each item with holds.
+     *
+     * @param library the library
+     * @return the queued student IDs by call number
+     */
+    private static Map<String, List<String>> holdIds(LibrarySystem library) {
+        Map<String, List<String>> ids = new HashMap<>();
+        library.holdView().forEach((callNumber, patrons) -> ids.put(callNumber,
+                patrons.stream().map(Patron::getStudentId).collect(Collectors.toList())));
+        return ids;
+    }
+
+    /**
+     * Compares the items, patrons, loans, due dates and holds of two libraries.
+     *
+     * @param expected the original library
+     * @param actual the recovered library
+     * @return true if both hold the same state
+     */
+    private static boolean sameState(LibrarySystem expected, LibrarySystem actual) {
+        if (!holdIds(expected).equals(holdIds(actual))) {
+            return false;
+        }
+        if (expected.itemView().size() != actual.itemView().size()
+                || expected.patronView().size() != actual.patronView().size()
+                || expected.getCheckedOutCount() != actual.getCheckedOutCount()) {
+            return false;
+        }
+        for (LibraryItem item : expected.itemView()) {
+            LibraryItem copy = actual.getItem(item.getCallNumber());
+            if (copy == null || !copy.getDetails().equals(item.getDetails())) {
+                return false;
+            }
+            Patron holder = item.getCheckedOutBy();
+            Patron copyHolder = copy.getCheckedOutBy();
+            if (holder == null ? copyHolder != null
+                               : copyHolder == null
+                                 || !holder.getStudentId().equals(copyHolder.getStudentId())) {
+                return false;
+            }
+            if (!Objects.equals(item.getDueDate(), copy.getDueDate())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
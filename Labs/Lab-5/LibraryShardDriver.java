@@ -0,0 +1,154 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Driver class to test the sharded library.
+ * Loads the same generated catalogue into a single library and into a
+ * sharded one and checks that searches return the same items, that items
+ * spread over the shards, and that a patron can borrow from several shards
+ * at once. It then times searches with one, two and four shards; on a
+ * machine with several cores, searches over more than two shards use more
+ * of them, while on a single core every shard is searched in turn.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryShardDriver {
+    private static final int ITEM_COUNT = 20_000;
+    private static final int SHARDS = 4;
+    private static final int QUERIES = 200;
+    private static final long SEED = 7;
+
+    /**
+     * Main method to run the sharding test.
+     *
+     * @param args command line arguments (not used)
+     */
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("   Library System - Sharding");
+        System.out.println("========================================\n");
+
+        List<LibraryItem> items = new CatalogueGenerator(ITEM_COUNT, SEED).generate(ITEM_COUNT);
+        boolean passed = checkConsistency(items);
+        System.out.println();
+        timeSearches(items);
+
+        System.out.println();
+        System.out.println(passed ? "Sharding test PASSED" : "Sharding test FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Compares a sharded library with a single one holding the same items.
+     *
+     * @param items the catalogue
+     * @return true if every check passed
+     */
+    private static boolean checkConsistency(List<LibraryItem> items) {
+        System.out.println("--- Consistency ---");
+        LibrarySystem single = new LibrarySystem(LibraryEventListener.SILENT);
+        ShardedLibrarySystem sharded = new ShardedLibrarySystem(SHARDS, LibraryEventListener.SILENT);
+        single.addItems(items);
+        List<LibraryItem> refused = sharded.addItems(items);
+
+        boolean passed = report("Every item added once", refused.isEmpty()
+                                && sharded.streamInventory().count() == items.size());
+        passed &= report("Duplicate call number refused", !sharded.addItem(
+                new DVD("Copy", items.get(0).getCallNumber(), 2000)));
+        int smallest = Integer.MAX_VALUE;
+        int largest = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            int size = (int) sharded.getShard(i).streamInventory().count();
+            smallest = Math.min(smallest, size);
+            largest = Math.max(largest, size);
+        }
+        System.out.printf("Shard sizes from %,d to %,d%n", smallest, largest);
+        passed &= report("Items spread evenly", largest < smallest * 1.2);
+
+        CatalogueGenerator words = new CatalogueGenerator(ITEM_COUNT, SEED + 1);
+        boolean same = true;
+        for (int i = 0; i < QUERIES; i++) {
+            String keyword = words.nextWord();
+            String fragment = keyword.length() > 3 ? keyword.substring(1) : keyword;
+            same &= new HashSet<>(single.searchByKeyword(keyword))
+                    .equals(new HashSet<>(sharded.searchByKeyword(keyword)));
+            same &= new HashSet<>(single.searchItems(fragment))
+                    .equals(new HashSet<>(sharded.searchItems(fragment)));
+        }
+        passed &= report("Searches match a single library", same);
+
+        Patron reader = new Patron("Shard Reader", "READER");
+        passed &= report("Patron registered once", sharded.registerPatron(reader)
+                         && !sharded.registerPatron(new Patron("Impostor", "READER")));
+        Set<LibrarySystem> used = new HashSet<>();
+        for (int i = 0; used.size() < SHARDS; i++) {
+            String callNumber = items.get(i).getCallNumber();
+            if (used.add(sharded.getShardFor(callNumber))) {
+                sharded.checkOutItem(callNumber, "READER");
+            }
+        }
+        passed &= report("Loans from every shard on one patron",
+                         reader.getCheckedOutCount() == SHARDS && sharded.getCheckedOutCount() == SHARDS);
+
+        String wanted = items.get(0).getCallNumber();
+        sharded.registerPatron(new Patron("Waiting Reader", "WAITER"));
+        sharded.placeHold(wanted, "WAITER");
+        sharded.checkInItem(wanted);
+        passed &= report("Hold filled at the owning shard",
+                         sharded.getItem(wanted).getCheckedOutBy() == sharded.getPatron("WAITER"));
+        return passed;
+    }
+
+    /**
+     * Times substring searches with different numbers of shards.
+     *
+     * @param items the catalogue
+     */
+    private static void timeSearches(List<LibraryItem> items) {
+        System.out.println("--- Search Throughput ---");
+        Random random = new Random(SEED);
+        String[] fragments = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String title = items.get(random.nextInt(items.size())).getTitle().toLowerCase();
+            int start = random.nextInt(Math.max(1, title.length() - 4));
+            fragments[i] = title.substring(start, Math.min(title.length(), start + 4));
+        }
+        for (int shardCount : new int[] {1, 2, 4}) {
+            ShardedLibrarySystem library = new ShardedLibrarySystem(shardCount, LibraryEventListener.SILENT);
+            library.addItems(items);
+            long found = 0;
+            for (int round = 0; round < 3; round++) {
+                for (String fragment : fragments) {
+                    found += library.searchItems(fragment).size();
+                }
+            }
+            long begin = System.nanoTime();
+            int rounds = 10;
+            for (int round = 0; round < rounds; round++) {
+                for (String fragment : fragments) {
+                    found += library.searchItems(fragment).size();
+                }
+            }
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.printf("%d shard%s: %,.0f searches/sec (%,d results)%n", shardCount,
+                              shardCount == 1 ? " " : "s", rounds * QUERIES / seconds, found);
+        }
+        System.out.printf("(%d cores available)%n", Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Prints the outcome of one check.
+     *
+     * @param description what was checked
+     * @param passed whether the check passed
+     * @return the outcome
+     */
+    private static boolean report(String description, boolean passed) {
+        System.out.println(description + ": " + (passed ? "yes" : "NO"));
+        return passed;
+    }
+}
@@ -0,0 +1,188 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact point-in-time image of a library's patrons, items, loans and holds.
+ * A snapshot records the journal offset it was taken at, so recovery only
+ * has to replay the journal records written after that offset.
+ *
+ * <p>Snapshots are taken while the library keeps running, so one may also
+ * contain some changes made after its journal offset. Replaying those
+ * records again is harmless: adding an existing item or patron is refused,
+ * and the last checkout or check-in replayed for an item determines its
+ * final state.
+ *
+ * <p>For a library backed by a {@link CatalogueFile}, the snapshot also
+ * lists the catalogue items that were removed, since the file itself
+ * still holds them. The same catalogue must be attached before loading.
+ *
+ * @author Orchlon Chinbat
+ */
+public final class LibrarySnapshot {
+    private static final int MAGIC = 0x4C494253; // "LIBS"
+    private static final int VERSION = 4;
+
+    private LibrarySnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the library. The file is written under a
+     * temporary name and moved into place, so a crash never leaves a
+     * partial snapshot behind.
+     *
+     * @param library the library to save
+     * @param file the snapshot file to create or replace
+     * @param journalOffset the journal offset already reflected in the library
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(LibrarySystem library, Path file, long journalOffset) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(journalOffset);
+
+            // Counts are not known up front while the library is changing,
+            // so each entry is preceded by a continuation flag instead.
+            for (Patron patron : library.patronView()) {
+                out.writeBoolean(true);
+                out.writeUTF(patron.getName());
+                out.writeUTF(patron.getStudentId());
+            }
+            out.writeBoolean(false);
+
+            for (LibraryItem item : library.itemView()) {
+                Loan loan = item.getLoan();
+                out.writeBoolean(true);
+                ItemCodec.writeItem(out, item);
+                out.writeUTF(loan == null ? "" : loan.getPatron().getStudentId());
+                ItemCodec.writeDueDate(out, loan == null ? null : loan.getDueDate());
+            }
+            out.writeBoolean(false);
+
+            for (Map.Entry<String, List<Patron>> queue : library.holdView().entrySet()) {
+                out.writeBoolean(true);
+                out.writeUTF(queue.getKey());
+                out.writeInt(queue.getValue().size());
+                for (Patron patron : queue.getValue()) {
+                    out.writeUTF(patron.getStudentId());
+                }
+            }
+            out.writeBoolean(false);
+
+            for (String callNumber : library.catalogueRemovals()) {
+                out.writeBoolean(true);
+                out.writeUTF(callNumber);
+            }
+            out.writeBoolean(false);
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads a snapshot into an empty library. The file is memory-mapped
+     * rather than read through a stream, and items are added as one batch,
+     * so the search indexes are built in bulk.
+     * Items the attached catalogue already holds are taken from it.
+     *
+     * @param library the library to populate, normally silent, with the
+     *        snapshotted library's catalogue attached
+     * @param file the snapshot file
+     * @return the journal offset to resume replay from
+     * @throws IOException if the file is missing, corrupt or truncated
+     */
+    public static long load(LibrarySystem library, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(mapped));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a library snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            long journalOffset = in.readLong();
+
+            while (in.readBoolean()) {
+                String name = in.readUTF();
+                library.registerPatron(new Patron(name, in.readUTF()));
+            }
+
+            List<LibraryItem> items = new ArrayList<>();
+            List<String> holders = new ArrayList<>();
+            List<Instant> dueDates = new ArrayList<>();
+            while (in.readBoolean()) {
+                items.add(ItemCodec.readItem(in));
+                holders.add(in.readUTF());
+                // Version 1 snapshots predate due dates.
+                dueDates.add(version >= 2 ? ItemCodec.readDueDate(in) : null);
+            }
+            library.addItems(items);
+            for (int i = 0; i < items.size(); i++) {
+                if (!holders.get(i).isEmpty()) {
+                    library.checkOutItem(items.get(i).getCallNumber(), holders.get(i), dueDates.get(i));
+                }
+            }
+
+            // Version 3 added hold queues.
+            while (version >= 3 && in.readBoolean()) {
+                String callNumber = in.readUTF();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    library.placeHold(callNumber, in.readUTF());
+                }
+            }
+
+            // Version 4 added removed catalogue items.
+            while (version >= 4 && in.readBoolean()) {
+                library.removeItem(in.readUTF());
+            }
+            return journalOffset;
+        }
+    }
+
+    /**
+     * Reads a byte buffer as an input stream.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
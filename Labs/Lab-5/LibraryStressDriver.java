@@ -0,0 +1,357 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Multi-threaded stress test for the library system.
+ * Several desk terminals (threads) check items in and out of a shared
+ * LibrarySystem as fast as they can. Each terminal serves its own patron and
+ * only returns items it borrowed, so any item held by two patrons at once is
+ * a detectable double checkout. After each run the patrons' loan lists are
+ * checked against the items' checkout state, and the throughput for each
+ * thread count is reported to show how the system scales with cores.
+ * Another round has terminals queue up for a few popular items with holds,
+ * Then a 100k-operation batch goes through processBatch, and a last round
+ * reports a batch through an {@link AsyncEventListener} whose listener
+ * fails now and then, checking that every event still arrives and every
+ * failure is counted and handed to the failure handler.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryStressDriver {
+    private static final int ITEM_COUNT = 2_000;
+    private static final int OPERATIONS_PER_THREAD = 200_000;
+
+    /**
+     * Main method to run the stress test.
+     *
+     * @param args command line arguments (not used)
+     */
+    public static void main(String[] args) throws InterruptedException {
+        PrintStream console = System.out;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        console.println("========================================");
+        console.println("   Library System - Concurrency Stress");
+        console.println("========================================\n");
+        console.println("Items: " + ITEM_COUNT + ", operations per thread: "
+                        + OPERATIONS_PER_THREAD + ", cores: " + cores);
+
+        boolean allPassed = true;
+        for (int threads = 1; threads <= Math.max(2, cores); threads *= 2) {
+            RunResult result = run(threads);
+
+            console.printf("Threads: %2d | %,12.0f ops/sec | double checkouts: %d | "
+                           + "inconsistent loans: %d%n",
+                           threads, result.opsPerSecond, result.doubleCheckouts,
+                           result.inconsistentLoans);
+            allPassed &= result.doubleCheckouts == 0 && result.inconsistentLoans == 0;
+        }
+
+        allPassed &= runHolds(console, Math.max(4, cores * 2));
+        allPassed &= runBatch(console);
+        allPassed &= runAsyncEvents(console);
+
+        console.println();
+        console.println(allPassed ? "Stress test PASSED" : "Stress test FAILED");
+        if (!allPassed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs one round of the stress test with the given number of threads.
+     *
+     * @param threads the number of concurrent terminals
+     * @return the measured throughput and detected violations
+     */
+    private static RunResult run(int threads) throws InterruptedException {
+        // Run silently so the test measures the library rather than the console.
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        String[] callNumbers = new String[ITEM_COUNT];
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            callNumbers[i] = "QA" + i + " .S" + i;
+            library.addItem(new Book("Stress Title " + i, callNumbers[i],
+                                     Arrays.asList("Author " + (i % 50)), 2000 + i % 20,
+                                     "978-" + i));
+        }
+        Patron[] patrons = new Patron[threads];
+        for (int t = 0; t < threads; t++) {
+            patrons[t] = new Patron("Terminal " + t, "T" + t);
+            library.registerPatron(patrons[t]);
+        }
+
+        AtomicIntegerArray holders = new AtomicIntegerArray(ITEM_COUNT);
+        AtomicInteger doubleCheckouts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            String studentId = patrons[t].getStudentId();
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<Integer> held = new ArrayList<>();
+                try {
+                    start.await();
+                    for (int op = 0; op < OPERATIONS_PER_THREAD; op++) {
+                        if (!held.isEmpty() && random.nextBoolean()) {
+                            int index = held.remove(random.nextInt(held.size()));
+                            // Release our claim before the item becomes
+                            // available to other terminals.
+                            holders.decrementAndGet(index);
+                            library.checkInItem(callNumbers[index]);
+                        } else {
+                            int index = random.nextInt(ITEM_COUNT);
+                            if (library.checkOutItem(callNumbers[index], studentId)) {
+                                if (holders.incrementAndGet(index) != 1) {
+                                    doubleCheckouts.incrementAndGet();
+                                }
+                                held.add(index);
+                            }
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            worker.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - startTime;
+
+        RunResult result = new RunResult();
+        result.opsPerSecond = (double) threads * OPERATIONS_PER_THREAD * 1e9 / elapsed;
+        result.doubleCheckouts = doubleCheckouts.get();
+        result.inconsistentLoans = countInconsistentLoans(library, callNumbers, patrons);
+        return result;
+    }
+
+    /**
+     * Has several terminals compete for a few popular items through holds.
+     * Each terminal repeatedly places a hold on one of the items, waits
+     * until a check-in hands the item to its patron and returns it again.
+     * Every hold must be filled exactly once, no item may go to two patrons
+     * and all queues must be gone at the end.
+     *
+     * @param console the stream to report to
+     * @param threads the number of concurrent terminals
+     * @return true if every hold was filled and the loans are consistent
+     */
+    private static boolean runHolds(PrintStream console, int threads) throws InterruptedException {
+        int hotItems = 3;
+        int holdsPerThread = 2_000;
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        String[] callNumbers = new String[hotItems];
+        for (int i = 0; i < hotItems; i++) {
+            callNumbers[i] = "QH" + i;
+            library.addItem(new DVD("Popular Title " + i, callNumbers[i], 2024));
+        }
+        Patron[] patrons = new Patron[threads];
+        for (int t = 0; t < threads; t++) {
+            patrons[t] = new Patron("Waiting Patron " + t, "H" + t);
+            library.registerPatron(patrons[t]);
+        }
+
+        AtomicIntegerArray holders = new AtomicIntegerArray(hotItems);
+        AtomicInteger doubleCheckouts = new AtomicInteger();
+        AtomicInteger filled = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Patron patron = patrons[t];
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int h = 0; h < holdsPerThread; h++) {
+                        int index = random.nextInt(hotItems);
+                        LibraryItem item = library.getItem(callNumbers[index]);
+                        if (!library.placeHold(callNumbers[index], patron.getStudentId())) {
+                            continue;
+                        }
+                        while (item.getCheckedOutBy() != patron) {
+                            Thread.yield();
+                        }
+                        if (holders.incrementAndGet(index) != 1) {
+                            doubleCheckouts.incrementAndGet();
+                        }
+                        filled.incrementAndGet();
+                        holders.decrementAndGet(index);
+                        library.checkInItem(callNumbers[index]);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        boolean finished = done.await(60, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - startTime;
+
+        int queued = 0;
+        for (String callNumber : callNumbers) {
+            queued += library.getHoldCount(callNumber);
+        }
+        int inconsistent = countInconsistentLoans(library, callNumbers, patrons);
+        console.printf("Holds: %d terminals, %,d holds filled in %,d ms | double checkouts: %d | "
+                       + "left in queues: %d | inconsistent loans: %d%n",
+                       threads, filled.get(), elapsed / 1_000_000, doubleCheckouts.get(),
+                       queued, inconsistent);
+        return finished && filled.get() == threads * holdsPerThread && doubleCheckouts.get() == 0
+               && queued == 0 && inconsistent == 0;
+    }
+
+    /**
+     * Submits a large batch of checkouts and returns and checks its results.
+     * Every item is checked out to one of a class of patrons and then
+     * returned, so every operation in the batch should succeed.
+     *
+     * @param console the stream to report to
+     * @return true if every operation succeeded and the loans are consistent
+     */
+    private static boolean runBatch(PrintStream console) {
+        int batchItems = 50_000;
+        // Run silently so the test measures the library rather than the console.
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        String[] callNumbers = new String[batchItems];
+        for (int i = 0; i < batchItems; i++) {
+            callNumbers[i] = "QB" + i + " .B" + i;
+            library.addItem(new DVD("Batch Title " + i, callNumbers[i], 2000 + i % 20));
+        }
+        Patron[] patrons = new Patron[30];
+        for (int p = 0; p < patrons.length; p++) {
+            patrons[p] = new Patron("Student " + p, "C" + p);
+            library.registerPatron(patrons[p]);
+        }
+
+        List<CirculationOperation> operations = new ArrayList<>();
+        for (int i = 0; i < batchItems; i++) {
+            operations.add(CirculationOperation.checkOut(callNumbers[i], "C" + (i % patrons.length)));
+        }
+        for (int i = 0; i < batchItems; i++) {
+            operations.add(CirculationOperation.checkIn(callNumbers[i]));
+        }
+
+        long startTime = System.nanoTime();
+        CirculationResult[] results = library.processBatch(operations);
+        long elapsed = System.nanoTime() - startTime;
+
+        int failures = 0;
+        for (CirculationResult result : results) {
+            if (result != CirculationResult.SUCCESS) {
+                failures++;
+            }
+        }
+        int inconsistent = countInconsistentLoans(library, callNumbers, patrons);
+        console.printf("Batch: %,d operations in %,d ms | failed: %d | inconsistent loans: %d%n",
+                       operations.size(), elapsed / 1_000_000, failures, inconsistent);
+        return failures == 0 && inconsistent == 0;
+    }
+
+    /**
+     * Reports a batch of checkouts and returns through a small asynchronous
+     * buffer to a listener that throws on every thousandth event.
+     *
+     * @param console the stream to report to
+     * @return true if every event arrived and every failure was reported
+     */
+    private static boolean runAsyncEvents(PrintStream console) {
+        int items = 20_000;
+        int failEvery = 1_000;
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger handled = new AtomicInteger();
+        AsyncEventListener events = new AsyncEventListener(event -> {
+            if (delivered.incrementAndGet() % failEvery == 0) {
+                throw new IllegalStateException("Listener failed on purpose");
+            }
+        }, 1_024, (thread, failure) -> handled.incrementAndGet());
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        library.registerPatron(new Patron("Async Student", "A0"));
+        List<CirculationOperation> operations = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            String callNumber = "QC" + i + " .A" + i;
+            library.addItem(new DVD("Async Title " + i, callNumber, 2000));
+            operations.add(CirculationOperation.checkOut(callNumber, "A0"));
+            operations.add(CirculationOperation.checkIn(callNumber));
+        }
+        library.setEventListener(events);
+        library.processBatch(operations);
+        events.close();
+
+        int expectedFailures = operations.size() / failEvery;
+        console.printf("Async events: %,d delivered | failures counted: %d, handled: %d%n",
+                       delivered.get(), events.getFailureCount(), handled.get());
+        return delivered.get() == operations.size() && events.getFailureCount() == expectedFailures
+                && handled.get() == expectedFailures;
+    }
+
+    /**
+     * Cross-checks each item's checkout state against the patrons' loan lists
+     * and the running circulation statistics.
+     *
+     * @param library the library after the run
+     * @param callNumbers the call numbers of all items
+     * @param patrons all registered patrons
+     * @return the number of mismatches found
+     */
+    private static int countInconsistentLoans(LibrarySystem library, String[] callNumbers,
+                                              Patron[] patrons) {
+        int mismatches = 0;
+        int checkedOut = 0;
+        for (String callNumber : callNumbers) {
+            LibraryItem item = library.getItem(callNumber);
+            Patron holder = item.getCheckedOutBy();
+            if (holder != null) {
+                checkedOut++;
+                if (!holder.getCheckedOutItems().contains(item)) {
+                    mismatches++;
+                }
+            }
+        }
+        int loans = 0;
+        int active = 0;
+        for (Patron patron : patrons) {
+            if (patron.getCheckedOutCount() > 0) {
+                active++;
+            }
+            for (LibraryItem item : patron.getCheckedOutItems()) {
+                loans++;
+                if (item.getCheckedOutBy() != patron) {
+                    mismatches++;
+                }
+            }
+        }
+        mismatches += (int) Math.abs(library.getCheckedOutCount() - checkedOut);
+        CirculationStats stats = library.getStatistics();
+        mismatches += (int) Math.abs(stats.getActivePatrons() - active);
+        long onLoan = stats.getOnLoanByDecade().values().stream().mapToLong(Long::longValue).sum();
+        mismatches += (int) Math.abs(onLoan - checkedOut);
+        return mismatches + Math.abs(loans - checkedOut);
+    }
+
+    /**
+     * Measurements from one round of the stress test.
+     */
+    private static class RunResult {
+        double opsPerSecond;
+        int doubleCheckouts;
+        int inconsistentLoans;
+    }
+}
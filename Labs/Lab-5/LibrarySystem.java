@@ -1,24 +1,201 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Main library management system that handles inventory and patron operations.
  * Uses efficient data structures (HashMap) for fast lookup of items and patrons.
  * 
+ * <p>The system is safe to use from several threads at once. Items and patrons
+ * live in concurrent maps, each item's checkout state is changed with an
+ * atomic compare-and-set, and a patron's loan list is updated while holding
+ * only that patron's monitor, so terminals serving different patrons never
+ * wait on each other.
+ * 
+ * <p>Every change and refused operation is reported to a
+ * {@link LibraryEventListener}. The default listener prints to the console;
+ * a silent or asynchronous listener can be supplied instead.
+ * 
+ * <p>Checkouts are due back after a configurable loan period. Loans are kept
+ * in due-date order, so an {@link LibraryEvent.Type#ITEM_OVERDUE} notice is
+ * published the moment each falls due and listing overdue loans does not
+ * scan the inventory.
+ * 
+ * <p>Patrons can place holds on items that are out. Each item with holds has
+ * a first-in, first-out queue, and checking the item in hands it straight
+ * to the patron at the front. Items without holds have no queue.
+ * 
+ * <p>Adding, removing, registering, searching, checking out and checking
+ * in are timed into the system's {@link LibraryMetrics}.
+ * 
+ * <p>Long reads can work on a {@link LibraryView} instead of the live
+ * system: a point-in-time image that stays the same while checkouts,
+ * check-ins and removals carry on, without either side locking.
+ * 
  * @author Orchlon Chinbat
  */
 public class LibrarySystem {
+    /** The loan period used unless {@link #setLoanPeriod(Duration)} is called. */
+    public static final Duration DEFAULT_LOAN_PERIOD = Duration.ofDays(14);
+    private static final int DISPLAY_BUFFER_CHARS = 1 << 16;
+    private static final long SEARCH_CACHE_CAPACITY = 1 << 18;
+    
     private final Map<String, LibraryItem> inventory;
     private final Map<String, Patron> patrons;
+    private final ConcurrentNavigableMap<String, Patron> roster;
+    private final TokenIndex tokenIndex;
+    private final TrigramIndex trigramIndex;
+    private final FuzzyIndex fuzzyIndex;
+    private final AttributeIndex attributeIndex;
+    private final SearchCache searchCache;
+    private final ConcurrentNavigableMap<String, LibraryItem> shelf;
+    private final LongAdder loansOut;
+    private final Clock clock;
+    private final OverdueTracker overdue;
+    private final Map<String, HoldQueue> holds;
+    private final CirculationStats stats;
+    private final Queue<LibraryItem> retired;
+    private final LibraryMetrics metrics;
+    private volatile boolean handOffHolds;
+    private volatile Duration loanPeriod;
+    private volatile LibraryEventListener listener;
+    private volatile Thread.UncaughtExceptionHandler noticeFailureHandler;
+    private volatile CatalogueFile catalogue;
     
     /**
      * Constructs a new LibrarySystem with empty inventory and patron list.
+     * Events are printed to the console.
      */
     public LibrarySystem() {
-        this.inventory = new HashMap<>();
-        this.patrons = new HashMap<>();
+        this(new ConsoleEventListener());
+    }
+    
+    /**
+     * Constructs a new LibrarySystem that reports events to the given listener.
+     * 
+     * @param listener the listener for events, or {@link LibraryEventListener#SILENT}
+     */
+    public LibrarySystem(LibraryEventListener listener) {
+        this(listener, Clock.systemUTC());
+    }
+    
+    /**
+     * Constructs a new LibrarySystem that reports events to the given
+     * listener and takes the time for due dates from the given clock.
+     * 
+     * @param listener the listener for events, or {@link LibraryEventListener#SILENT}
+     * @param clock the clock used to set and check due dates
+     */
+    public LibrarySystem(LibraryEventListener listener, Clock clock) {
+        this.listener = listener;
+        this.clock = clock;
+        this.loanPeriod = DEFAULT_LOAN_PERIOD;
+        this.overdue = new OverdueTracker(clock, this::publishOverdue, this::noticeFailed);
+        this.holds = new ConcurrentHashMap<>();
+        this.stats = new CirculationStats(clock);
+        this.retired = new ConcurrentLinkedQueue<>();
+        this.metrics = new LibraryMetrics();
+        this.handOffHolds = true;
+        this.inventory = new ConcurrentHashMap<>();
+        this.patrons = new ConcurrentHashMap<>();
+        this.roster = new ConcurrentSkipListMap<>();
+        this.tokenIndex = new TokenIndex();
+        this.trigramIndex = new TrigramIndex();
+        this.fuzzyIndex = new FuzzyIndex();
+        this.attributeIndex = new AttributeIndex();
+        this.searchCache = new SearchCache(SEARCH_CACHE_CAPACITY);
+        this.shelf = new ConcurrentSkipListMap<>(new CallNumberComparator());
+        this.loansOut = new LongAdder();
+    }
+    
+    /**
+     * Replaces the listener that receives this system's events.
+     * 
+     * @param listener the new listener, or {@link LibraryEventListener#SILENT}
+     */
+    public void setEventListener(LibraryEventListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Gets the listener that receives this system's events.
+     * 
+     * @return the current listener
+     */
+    public LibraryEventListener getEventListener() {
+        return listener;
+    }
+    
+    /**
+     * Sets the handler told when an overdue notice fails, for example
+     * because the listener threw while the notice was raised on the timer
+     * thread. The remaining notices are raised regardless.
+     * 
+     * @param handler the handler, or null to use the timer thread's
+     *        uncaught exception handler
+     */
+    public void setNoticeFailureHandler(Thread.UncaughtExceptionHandler handler) {
+        this.noticeFailureHandler = handler;
+    }
+    
+    /**
+     * Passes a failed overdue notice to the notice failure handler.
+     * 
+     * @param thread the thread the notice was raised on
+     * @param failure what the notice threw
+     */
+    private void noticeFailed(Thread thread, Throwable failure) {
+        Thread.UncaughtExceptionHandler handler = noticeFailureHandler;
+        if (handler == null) {
+            handler = thread.getUncaughtExceptionHandler();
+        }
+        handler.uncaughtException(thread, failure);
+    }
+    
+    /**
+     * Reports an event to the listener. No event object is created when
+     * the system is silent.
+     * 
+     * @param type the kind of event
+     * @param item the item involved, or null
+     * @param patron the patron involved, or null
+     * @param key the call number or student ID looked up, or null
+     */
+    private void publish(LibraryEvent.Type type, LibraryItem item, Patron patron, String key) {
+        LibraryEventListener current = listener;
+        if (current != LibraryEventListener.SILENT) {
+            current.onEvent(new LibraryEvent(type, item, patron, key));
+        }
+    }
+    
+    /**
+     * Lets the listener finish with the events of an operation that has
+     * released all its locks, such as by waiting for them to be journaled.
+     */
+    private void settle() {
+        listener.afterOperation();
     }
     
     /**
@@ -28,37 +205,311 @@ public class LibrarySystem {
      * @return true if successfully added, false if call number already exists
      */
     public boolean addItem(LibraryItem item) {
-        if (inventory.containsKey(item.getCallNumber())) {
-            System.out.println("Error: Item with call number " + 
-                             item.getCallNumber() + " already exists.");
+        long start = System.nanoTime();
+        boolean added = add(item, true);
+        if (!added) {
+            publish(LibraryEvent.Type.DUPLICATE_ITEM, item, null, item.getCallNumber());
+        }
+        settle();
+        metrics.record(LibraryMetrics.Operation.ADD_ITEM, start);
+        return added;
+    }
+    
+    /**
+     * Adds a batch of items to the inventory, for bulk loads such as
+     * imports and recovery. Items are inserted in parallel, then the
+     * search indexes take the whole batch at once, grouping its postings
+     * so each posting list is updated once per batch rather than once per
+     * item. Items of the batch therefore become searchable together, once
+     * the batch is indexed; lookups by call number find them as soon as
+     * they are inserted. Added items are reported to the listener as usual;
+     * refused ones are only reported through the returned list. When the
+     * batch holds the same call number more than once, the first item with
+     * it is added.
+     * 
+     * @param items the items to add
+     * @return the items refused because their call number already exists,
+     *         in batch order
+     */
+    public List<LibraryItem> addItems(List<? extends LibraryItem> items) {
+        Set<String> seen = new HashSet<>();
+        int[] firsts = IntStream.range(0, items.size())
+                                .filter(index -> seen.add(items.get(index).getCallNumber()))
+                                .toArray();
+        boolean[] added = new boolean[items.size()];
+        Arrays.stream(firsts).parallel().forEach(index -> added[index] = add(items.get(index), false));
+        
+        List<LibraryItem> accepted = new ArrayList<>(firsts.length);
+        List<LibraryItem> refused = new ArrayList<>();
+        for (int index = 0; index < added.length; index++) {
+            if (added[index]) {
+                accepted.add(items.get(index));
+            } else {
+                refused.add(items.get(index));
+            }
+        }
+        if (!accepted.isEmpty()) {
+            Stream.<Runnable>of(() -> tokenIndex.addAll(accepted),
+                                () -> trigramIndex.addAll(accepted),
+                                () -> fuzzyIndex.addAll(accepted))
+                  .parallel()
+                  .forEach(Runnable::run);
+            // An item removed before it was indexed missed its unindexing.
+            for (LibraryItem item : accepted) {
+                if (inventory.get(item.getCallNumber()) != item) {
+                    unindex(item);
+                }
+            }
+            searchCache.invalidate();
+        }
+        settle();
+        return refused;
+    }
+    
+    /**
+     * Adds an item unless its call number is taken by the inventory or by
+     * a live item of the attached catalogue. Added items are reported.
+     * 
+     * @param item the item to add
+     * @param indexText whether to add the item to the text search indexes
+     *        now, rather than leaving that to the caller
+     * @return true if added
+     */
+    private boolean add(LibraryItem item, boolean indexText) {
+        CatalogueFile source = catalogue;
+        if (source != null && isLive(source.find(item.getCallNumber()))) {
             return false;
         }
-        inventory.put(item.getCallNumber(), item);
-        System.out.println("Successfully added: " + item.getDetails());
-        return true;
+        return insert(item, true, indexText);
+    }
+    
+    /**
+     * Inserts an item into the inventory and the search indexes.
+     * 
+     * @param item the item to insert
+     * @param report whether to publish an {@code ITEM_ADDED} event
+     * @param indexText whether to add the item to the text search indexes
+     *        now, rather than leaving that to the caller
+     * @return true if inserted, false if the call number is already taken
+     */
+    private boolean insert(LibraryItem item, boolean report, boolean indexText) {
+        boolean[] added = new boolean[1];
+        boolean[] stamp = new boolean[1];
+        try {
+            inventory.compute(item.getCallNumber(), (callNumber, existing) -> {
+                if (existing != null) {
+                    return existing;
+                }
+                stamp[0] = item.beginListing();
+                // Index before the item becomes visible so a concurrent remove
+                // never sees an item that is only partly indexed.
+                try {
+                    if (indexText) {
+                        tokenIndex.add(item);
+                        trigramIndex.add(item);
+                        fuzzyIndex.add(item);
+                    }
+                    attributeIndex.add(item);
+                    shelf.put(callNumber, item);
+                    // Published while the call number is locked, so listeners see
+                    // the add before any later operation on the same call number.
+                    if (report) {
+                        publish(LibraryEvent.Type.ITEM_ADDED, item, null, callNumber);
+                    }
+                } catch (RuntimeException e) {
+                    // A listener such as the journal refused the add; the
+                    // compute leaves the call number free, so undo the rest.
+                    unindex(item);
+                    shelf.remove(callNumber, item);
+                    throw e;
+                }
+                added[0] = true;
+                return item;
+            });
+        } finally {
+            // Stamped once the item is in the inventory, so a view that can
+            // see the stamp can also find the item.
+            if (stamp[0]) {
+                item.endListing(added[0]);
+            }
+        }
+        if (added[0]) {
+            searchCache.invalidate();
+        }
+        return added[0];
+    }
+    
+    /**
+     * Attaches a catalogue file whose items join the inventory lazily.
+     * An item from the catalogue is created and indexed the first time it
+     * is looked up by call number, for example by {@link #getItem(String)}
+     * or {@link #checkOutItem(String, String)}. Searches only cover items
+     * that have been touched; call {@link #materializeCatalogue()} to make
+     * the whole catalogue searchable. Catalogue items are not reported as
+     * added, since the catalogue file already holds them.
+     * 
+     * @param catalogue the catalogue to attach, or null to detach
+     */
+    public void attachCatalogue(CatalogueFile catalogue) {
+        this.catalogue = catalogue;
+    }
+    
+    /**
+     * Brings every item of the attached catalogue into the inventory,
+     * creating and indexing them in parallel.
+     * 
+     * @return the number of catalogue items now in the inventory
+     */
+    public int materializeCatalogue() {
+        CatalogueFile source = catalogue;
+        if (source == null) {
+            return 0;
+        }
+        return (int) IntStream.range(0, source.size()).parallel()
+                              .mapToObj(source::get)
+                              .filter(item -> isLive(item) && admit(item) == item)
+                              .count();
+    }
+    
+    /**
+     * Looks up an item by call number, bringing it in from the attached
+     * catalogue if it has not been used yet.
+     * 
+     * @param callNumber the call number, or null
+     * @return the item, or null if neither the inventory nor the catalogue has it
+     */
+    private LibraryItem lookup(String callNumber) {
+        if (callNumber == null) {
+            return null;
+        }
+        LibraryItem item = inventory.get(callNumber);
+        CatalogueFile source = catalogue;
+        if (item != null || source == null) {
+            return item;
+        }
+        item = source.find(callNumber);
+        return isLive(item) ? admit(item) : null;
+    }
+    
+    /**
+     * Looks up a patron by student ID. Unlike the concurrent map itself,
+     * this accepts null, which no patron has.
+     * 
+     * @param studentId the student ID, or null
+     * @return the patron, or null if not registered
+     */
+    private Patron findPatron(String studentId) {
+        return studentId == null ? null : patrons.get(studentId);
+    }
+    
+    /**
+     * Adds a catalogue item to the inventory without reporting it.
+     * 
+     * @param item the catalogue item
+     * @return the item now in the inventory under its call number
+     */
+    private LibraryItem admit(LibraryItem item) {
+        if (insert(item, false, true)) {
+            return item;
+        }
+        return inventory.get(item.getCallNumber());
+    }
+    
+    /**
+     * Checks whether a catalogue item exists and has not been removed.
+     * 
+     * @param item a catalogue item, or null
+     * @return true if the item can join the inventory
+     */
+    private static boolean isLive(LibraryItem item) {
+        return item != null && !item.isWithdrawn();
     }
     
     /**
      * Removes a library item from the inventory.
+     * The item is withdrawn atomically first, so it cannot be checked out
+     * by another thread while it is being removed.
      * 
      * @param callNumber the call number of the item to remove
      * @return true if successfully removed, false if not found or checked out
      */
     public boolean removeItem(String callNumber) {
-        LibraryItem item = inventory.get(callNumber);
+        long start = System.nanoTime();
+        boolean removed = withdraw(callNumber);
+        settle();
+        metrics.record(LibraryMetrics.Operation.REMOVE_ITEM, start);
+        return removed;
+    }
+    
+    /**
+     * Withdraws an item and takes it out of the inventory and indexes,
+     * reporting the outcome to the listener.
+     * 
+     * @param callNumber the call number of the item to remove
+     * @return true if removed
+     */
+    private boolean withdraw(String callNumber) {
+        LibraryItem item = lookup(callNumber);
         if (item == null) {
-            System.out.println("Error: Item not found with call number: " + callNumber);
+            publish(LibraryEvent.Type.ITEM_NOT_FOUND, null, null, callNumber);
             return false;
         }
-        if (item.isCheckedOut()) {
-            System.out.println("Error: Cannot remove item that is currently checked out.");
+        if (!item.withdraw()) {
+            if (item.isCheckedOut()) {
+                publish(LibraryEvent.Type.REMOVE_REFUSED, item, item.getCheckedOutBy(), callNumber);
+            } else {
+                // Another thread withdrew the item first.
+                publish(LibraryEvent.Type.ITEM_NOT_FOUND, null, null, callNumber);
+            }
             return false;
         }
-        inventory.remove(callNumber);
-        System.out.println("Successfully removed: " + item.getDetails());
+        // Views opened before the withdrawal still list the item, and find
+        // it here once it has left the inventory.
+        retired.add(item);
+        inventory.computeIfPresent(callNumber, (key, current) -> {
+            if (current != item) {
+                return current;
+            }
+            shelf.remove(key, item);
+            publish(LibraryEvent.Type.ITEM_REMOVED, item, null, key);
+            return null;
+        });
+        unindex(item);
+        searchCache.invalidate();
+        HoldQueue queue = holds.remove(callNumber);
+        if (queue != null) {
+            queue.retire();
+        }
+        releaseRetired();
         return true;
     }
     
+    /**
+     * Takes an item out of every search index.
+     * 
+     * @param item the item to remove
+     */
+    private void unindex(LibraryItem item) {
+        tokenIndex.remove(item);
+        trigramIndex.remove(item);
+        fuzzyIndex.remove(item);
+        attributeIndex.remove(item);
+    }
+    
+    /**
+     * Forgets removed items that no open view can still list. Items are
+     * queued in about the order they were withdrawn, so only the head is
+     * examined; one withdrawn a little out of order just waits for those
+     * ahead of it.
+     */
+    private void releaseRetired() {
+        long oldest = VersionClock.oldestPinned();
+        LibraryItem head;
+        while ((head = retired.peek()) != null && head.withdrawnAt() <= oldest) {
+            retired.remove(head);
+        }
+    }
+    
     /**
      * Registers a new patron in the system.
      * 
@@ -66,132 +517,917 @@ public class LibrarySystem {
      * @return true if successfully registered, false if student ID already exists
      */
     public boolean registerPatron(Patron patron) {
-        if (patrons.containsKey(patron.getStudentId())) {
-            System.out.println("Error: Patron with ID " + 
-                             patron.getStudentId() + " already exists.");
-            return false;
+        long start = System.nanoTime();
+        boolean registered = enrollPatron(patron);
+        publish(registered ? LibraryEvent.Type.PATRON_REGISTERED : LibraryEvent.Type.DUPLICATE_PATRON,
+                null, patron, patron.getStudentId());
+        settle();
+        metrics.record(LibraryMetrics.Operation.REGISTER_PATRON, start);
+        return registered;
+    }
+    
+    /**
+     * Registers a patron without reporting it, for a sharded library that
+     * shares one patron object between its shards.
+     * 
+     * @param patron the patron to register
+     * @return true if registered, false if the student ID already exists
+     */
+    boolean enrollPatron(Patron patron) {
+        boolean stamp = patron.beginRegistration();
+        boolean added = false;
+        try {
+            added = patrons.putIfAbsent(patron.getStudentId(), patron) == null;
+            if (added) {
+                roster.put(patron.getStudentId(), patron);
+            }
+        } finally {
+            // Stamped even when a map refuses the ID, so views never wait forever.
+            if (stamp) {
+                patron.endRegistration(added);
+            }
         }
-        patrons.put(patron.getStudentId(), patron);
-        System.out.println("Successfully registered: " + patron);
-        return true;
+        return added;
     }
     
     /**
      * Searches for library items by title or author name.
+     * Matches any substring of an item's searchable text. Terms of three or
+     * more characters are answered from the trigram index; shorter terms
+     * fall back to scanning the whole inventory. Results are cached by
+     * lowercased term until the next item is added or removed; checkouts
+     * do not affect the cache, since loan status is read from the items.
+     * Use {@link #searchByKeyword(String)} for whole-word queries.
      * 
      * @param searchTerm the term to search for
      * @return a list of matching items
      */
     public List<LibraryItem> searchItems(String searchTerm) {
-        List<LibraryItem> results = new ArrayList<>();
+        long start = System.nanoTime();
         String lowerSearchTerm = searchTerm.toLowerCase();
-        
-        for (LibraryItem item : inventory.values()) {
-            if (item.getSearchableText().contains(lowerSearchTerm)) {
-                results.add(item);
+        List<LibraryItem> results = searchCache.get(lowerSearchTerm);
+        if (results == null) {
+            long version = searchCache.version();
+            if (trigramIndex.canAnswer(lowerSearchTerm)) {
+                results = trigramIndex.search(lowerSearchTerm);
+            } else {
+                results = new ArrayList<>();
+                for (LibraryItem item : inventory.values()) {
+                    if (item.getSearchableText().contains(lowerSearchTerm)) {
+                        results.add(item);
+                    }
+                }
             }
+            searchCache.put(lowerSearchTerm, version, results);
         }
-        
+        // Callers get their own copy, so the cached result stays intact.
+        results = new ArrayList<>(results);
+        metrics.record(LibraryMetrics.Operation.SEARCH_ITEMS, start);
         return results;
     }
     
     /**
-     * Checks out an item to a patron.
+     * Searches for library items containing every word of the query.
+     * Uses the inverted token index, so the cost depends on the size of the
+     * matching posting lists rather than the size of the inventory.
+     * Unlike {@link #searchItems(String)}, partial words do not match.
+     * 
+     * @param keywords the words to search for
+     * @return a list of items containing all of the words
+     */
+    public List<LibraryItem> searchByKeyword(String keywords) {
+        return tokenIndex.search(keywords);
+    }
+    
+    /**
+     * Searches for the items most relevant to a query.
+     * Items matching any word are scored with BM25, where a word counts
+     * more in a title or author name than in an ISBN or call number, and
+     * rarer words count more than common ones. Only the best {@code limit}
+     * items are kept, so a short query over a large inventory does not
+     * build and sort the whole result set.
+     * 
+     * @param query the words to search for
+     * @param limit the maximum number of items to return
+     * @return up to {@code limit} items, most relevant first
+     */
+    public List<LibraryItem> searchRanked(String query, int limit) {
+        return tokenIndex.searchRanked(query, limit);
+    }
+
+    /**
+     * Searches titles and authors allowing for typos.
+     * Up to one edit is allowed for queries of four to eight characters and
+     * two for longer ones; shorter queries must match exactly.
+     * 
+     * @param query a title, author name or single word, possibly misspelled
+     * @return the matching items, closest matches first
+     */
+    public List<LibraryItem> searchFuzzy(String query) {
+        String normalized = FuzzyIndex.normalize(query);
+        return fuzzyIndex.search(normalized, FuzzyIndex.defaultMaxDistance(normalized));
+    }
+    
+    /**
+     * Searches titles and authors within a given number of typos.
+     * Matching is served from a BK-tree, so only terms that can lie within
+     * the distance are compared against the query.
+     * 
+     * @param query a title, author name or single word, possibly misspelled
+     * @param maxDistance the number of inserted, deleted or changed characters allowed
+     * @return the matching items, closest matches first
+     */
+    public List<LibraryItem> searchFuzzy(String query, int maxDistance) {
+        return fuzzyIndex.search(FuzzyIndex.normalize(query), maxDistance);
+    }
+    
+    /**
+     * Finds the items matching every condition of a query, such as books by
+     * one author published in a range of years. Each condition is backed by
+     * its own index, and only the items under the most selective one are
+     * checked, so a narrow query stays fast however large the inventory.
+     * 
+     * @param query the conditions to match
+     * @return the matching items, in no particular order
+     */
+    public List<LibraryItem> findItems(ItemQuery query) {
+        return attributeIndex.find(query);
+    }
+    
+    /**
+     * Finds the books with an ISBN. Hyphens and spaces are ignored.
+     * 
+     * @param isbn the ISBN
+     * @return the books with the ISBN, usually one copy each
+     */
+    public List<LibraryItem> findByIsbn(String isbn) {
+        return attributeIndex.find(ItemQuery.all().withIsbn(isbn));
+    }
+    
+    /**
+     * Lists the items shelved between two call numbers, in shelf order.
+     * Call numbers are ordered by {@link CallNumberComparator}, so
+     * {@code browseShelf("QA76", "QA77")} yields QA76, QA76.6, QA76.64 and
+     * QA76.9 items but nothing from QA77 on. The stream is lazy and walks a
+     * skip list, so each step costs O(log n) and only the items actually
+     * consumed are visited. Neither bound needs to be an existing call number.
+     * 
+     * @param from the first call number to include
+     * @param to the call number to stop before
+     * @return a stream of the items in the range
+     */
+    public Stream<LibraryItem> browseShelf(String from, String to) {
+        return shelf.subMap(from, true, to, false).values().stream();
+    }
+    
+    /**
+     * Gets the item shelved directly after a call number.
+     * 
+     * @param callNumber any call number, not necessarily in the inventory
+     * @return the next item on the shelf, or null if there is none
+     */
+    public LibraryItem nextOnShelf(String callNumber) {
+        Map.Entry<String, LibraryItem> entry = shelf.higherEntry(callNumber);
+        return entry == null ? null : entry.getValue();
+    }
+    
+    /**
+     * Gets the item shelved directly before a call number.
+     * 
+     * @param callNumber any call number, not necessarily in the inventory
+     * @return the previous item on the shelf, or null if there is none
+     */
+    public LibraryItem previousOnShelf(String callNumber) {
+        Map.Entry<String, LibraryItem> entry = shelf.lowerEntry(callNumber);
+        return entry == null ? null : entry.getValue();
+    }
+    
+    /**
+     * Gets the time a loan lasts before the item is overdue.
+     * 
+     * @return the loan period
+     */
+    public Duration getLoanPeriod() {
+        return loanPeriod;
+    }
+    
+    /**
+     * Sets the time a loan lasts before the item is overdue.
+     * Loans already made keep their due dates.
+     * 
+     * @param loanPeriod the new loan period
+     */
+    public void setLoanPeriod(Duration loanPeriod) {
+        this.loanPeriod = loanPeriod;
+    }
+    
+    /**
+     * Checks out an item to a patron for the loan period.
      * 
      * @param callNumber the call number of the item to check out
      * @param studentId the student ID of the patron
      * @return true if successful, false otherwise
      */
     public boolean checkOutItem(String callNumber, String studentId) {
-        LibraryItem item = inventory.get(callNumber);
-        Patron patron = patrons.get(studentId);
+        long start = System.nanoTime();
+        Instant now = clock.instant();
+        boolean done = checkOut(callNumber, studentId, now, now.plus(loanPeriod));
+        settle();
+        metrics.record(LibraryMetrics.Operation.CHECK_OUT, start);
+        return done;
+    }
+    
+    /**
+     * Checks out an item to a patron until the given due date.
+     * 
+     * @param callNumber the call number of the item to check out
+     * @param studentId the student ID of the patron
+     * @param dueDate when the item is due back, or null for no due date
+     * @return true if successful, false otherwise
+     */
+    public boolean checkOutItem(String callNumber, String studentId, Instant dueDate) {
+        long start = System.nanoTime();
+        boolean done = checkOut(callNumber, studentId, clock.instant(), dueDate);
+        settle();
+        metrics.record(LibraryMetrics.Operation.CHECK_OUT, start);
+        return done;
+    }
+    
+    /**
+     * Checks out an item to a patron, reporting the outcome to the listener.
+     * 
+     * @param callNumber the call number of the item to check out
+     * @param studentId the student ID of the patron
+     * @param now the time of the checkout
+     * @param dueDate when the item is due back, or null for no due date
+     * @return true if successful, false otherwise
+     */
+    private boolean checkOut(String callNumber, String studentId, Instant now, Instant dueDate) {
+        LibraryItem item = lookup(callNumber);
+        Patron patron = findPatron(studentId);
         
         if (item == null) {
-            System.out.println("Error: Item not found with call number: " + callNumber);
+            publish(LibraryEvent.Type.ITEM_NOT_FOUND, null, null, callNumber);
             return false;
         }
         
         if (patron == null) {
-            System.out.println("Error: Patron not found with ID: " + studentId);
+            publish(LibraryEvent.Type.PATRON_NOT_FOUND, item, null, studentId);
             return false;
         }
         
-        if (item.checkOut(patron)) {
-            patron.addCheckedOutItem(item);
-            System.out.println("Successfully checked out:");
-            System.out.println("  Item: " + item.getDetails());
-            System.out.println("  To: " + patron.getName() + " (ID: " + studentId + ")");
+        CirculationResult result = borrow(item, patron, now, dueDate);
+        if (result == CirculationResult.SUCCESS) {
             return true;
+        } else if (result == CirculationResult.ON_HOLD) {
+            publish(LibraryEvent.Type.ITEM_ON_HOLD, item, patron, callNumber);
+            return false;
         } else {
-            System.out.println("Error: Item is already checked out.");
+            publish(LibraryEvent.Type.ALREADY_CHECKED_OUT, item, patron, callNumber);
             return false;
         }
     }
     
     /**
      * Checks in an item, making it available again.
+     * If patrons have holds on the item, it is checked out to the first
+     * of them instead of returning to the shelf.
      * 
      * @param callNumber the call number of the item to check in
      * @return true if successful, false otherwise
      */
     public boolean checkInItem(String callNumber) {
-        LibraryItem item = inventory.get(callNumber);
+        long start = System.nanoTime();
+        boolean done = checkIn(callNumber);
+        settle();
+        metrics.record(LibraryMetrics.Operation.CHECK_IN, start);
+        return done;
+    }
+    
+    /**
+     * Checks in an item, reporting the outcome to the listener.
+     * 
+     * @param callNumber the call number of the item to check in
+     * @return true if successful
+     */
+    private boolean checkIn(String callNumber) {
+        LibraryItem item = lookup(callNumber);
         
         if (item == null) {
-            System.out.println("Error: Item not found with call number: " + callNumber);
+            publish(LibraryEvent.Type.ITEM_NOT_FOUND, null, null, callNumber);
             return false;
         }
         
-        if (!item.isCheckedOut()) {
-            System.out.println("Error: Item is not currently checked out.");
+        if (giveBack(item) == null) {
+            publish(LibraryEvent.Type.NOT_CHECKED_OUT, item, null, callNumber);
             return false;
         }
+        return true;
+    }
+    
+    /**
+     * Processes a batch of checkouts and check-ins.
+     * Successful operations are reported to the listener as usual; refused
+     * ones are only reported through the returned results. Operations are
+     * grouped by call number; each group runs in submission order, and
+     * different groups run in parallel since they touch different items.
+     * Operations on different items for the same patron only contend on
+     * that patron's monitor.
+     * 
+     * @param operations the operations to perform
+     * @return the outcome of each operation, at the same index as the operation
+     */
+    public CirculationResult[] processBatch(List<CirculationOperation> operations) {
+        CirculationResult[] results = new CirculationResult[operations.size()];
+        Map<String, List<Integer>> byItem = new HashMap<>();
+        for (int i = 0; i < operations.size(); i++) {
+            byItem.computeIfAbsent(operations.get(i).getCallNumber(), k -> new ArrayList<>()).add(i);
+        }
         
-        Patron patron = item.getCheckedOutBy();
-        if (item.checkIn()) {
-            patron.removeCheckedOutItem(item);
-            System.out.println("Successfully checked in: " + item.getDetails());
-            return true;
+        byItem.values().parallelStream().forEach(indices -> {
+            for (int index : indices) {
+                results[index] = perform(operations.get(index));
+            }
+        });
+        settle();
+        return results;
+    }
+    
+    /**
+     * Performs one checkout or check-in and tells why it was refused, if it
+     * was. As with {@link #processBatch(List)}, a successful operation is
+     * reported to the listener and a refused one only through the result.
+     * 
+     * @param operation the operation to perform
+     * @return the outcome of the operation
+     */
+    public CirculationResult circulate(CirculationOperation operation) {
+        long start = System.nanoTime();
+        CirculationResult result = perform(operation);
+        settle();
+        metrics.record(operation.getType() == CirculationOperation.Type.CHECK_IN
+                       ? LibraryMetrics.Operation.CHECK_IN : LibraryMetrics.Operation.CHECK_OUT, start);
+        return result;
+    }
+    
+    /**
+     * Performs a single circulation operation without reporting refusals.
+     * 
+     * @param operation the operation to perform
+     * @return the outcome of the operation
+     */
+    private CirculationResult perform(CirculationOperation operation) {
+        LibraryItem item = lookup(operation.getCallNumber());
+        if (item == null) {
+            return CirculationResult.ITEM_NOT_FOUND;
+        }
+        
+        if (operation.getType() == CirculationOperation.Type.CHECK_IN) {
+            return giveBack(item) != null ? CirculationResult.SUCCESS
+                                          : CirculationResult.NOT_CHECKED_OUT;
         }
         
-        return false;
+        Patron patron = findPatron(operation.getStudentId());
+        if (patron == null) {
+            return CirculationResult.PATRON_NOT_FOUND;
+        }
+        Instant now = clock.instant();
+        return borrow(item, patron, now, now.plus(loanPeriod));
     }
     
     /**
-     * Displays all items in the inventory.
+     * Checks an item out to a patron who walked up to the desk.
+     * The checkout is refused if other patrons are waiting for the item
+     * and this patron is not first in line; if they are first, their hold
+     * is filled by the checkout.
+     * 
+     * @param item the item to check out
+     * @param patron the borrowing patron
+     * @param now the time of the checkout
+     * @param dueDate when the item is due back, or null for no due date
+     * @return SUCCESS, ALREADY_CHECKED_OUT or ON_HOLD
      */
-    public void displayInventory() {
-        System.out.println("\n=== Library Inventory ===");
-        if (inventory.isEmpty()) {
-            System.out.println("No items in inventory.");
-        } else {
-            for (LibraryItem item : inventory.values()) {
-                System.out.println(item);
+    private CirculationResult borrow(LibraryItem item, Patron patron, Instant now, Instant dueDate) {
+        HoldQueue queue = holds.get(item.getCallNumber());
+        if (queue != null && !queue.admits(patron)) {
+            return item.isCheckedOut() ? CirculationResult.ALREADY_CHECKED_OUT
+                                       : CirculationResult.ON_HOLD;
+        }
+        if (!lend(item, patron, now, dueDate)) {
+            return CirculationResult.ALREADY_CHECKED_OUT;
+        }
+        if (queue != null) {
+            // Outside the patron's monitor: queues are always locked first.
+            fillHold(item.getCallNumber(), queue, patron);
+        }
+        return CirculationResult.SUCCESS;
+    }
+    
+    /**
+     * Places a hold on an item for a patron.
+     * The patron joins the end of the item's queue. If the item is on the
+     * shelf and nobody is ahead of them, it is checked out to them at once.
+     * 
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the patron
+     * @return true if the hold was placed
+     */
+    public boolean placeHold(String callNumber, String studentId) {
+        boolean placed = hold(callNumber, studentId);
+        settle();
+        return placed;
+    }
+    
+    /**
+     * Places a hold on an item, reporting the outcome to the listener.
+     * 
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the patron
+     * @return true if the hold was placed
+     */
+    private boolean hold(String callNumber, String studentId) {
+        LibraryItem item = lookup(callNumber);
+        if (item == null) {
+            publish(LibraryEvent.Type.ITEM_NOT_FOUND, null, null, callNumber);
+            return false;
+        }
+        Patron patron = findPatron(studentId);
+        if (patron == null) {
+            publish(LibraryEvent.Type.PATRON_NOT_FOUND, item, null, studentId);
+            return false;
+        }
+        if (item.getCheckedOutBy() == patron) {
+            publish(LibraryEvent.Type.HOLD_REFUSED, item, patron, callNumber);
+            return false;
+        }
+        
+        while (true) {
+            HoldQueue queue = holds.computeIfAbsent(callNumber, key -> new HoldQueue());
+            int position;
+            synchronized (queue) {
+                position = queue.offer(patron);
+                if (position > 0) {
+                    // Published while the queue is locked, so the event
+                    // comes before the checkout that fills the hold.
+                    publish(LibraryEvent.Type.HOLD_PLACED, item, patron, callNumber);
+                }
             }
+            if (position < 0) {
+                // The queue emptied and was dropped meanwhile; use a new one.
+                holds.remove(callNumber, queue);
+                continue;
+            }
+            if (position == 0) {
+                publish(LibraryEvent.Type.HOLD_REFUSED, item, patron, callNumber);
+                return false;
+            }
+            handOff(item);
+            return true;
         }
-        System.out.println("Total items: " + inventory.size());
     }
     
     /**
-     * Displays all registered patrons.
+     * Cancels a patron's hold on an item.
+     * 
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the patron
+     * @return true if the patron had a hold and it was cancelled
      */
-    public void displayPatrons() {
-        System.out.println("\n=== Registered Patrons ===");
-        if (patrons.isEmpty()) {
-            System.out.println("No registered patrons.");
-        } else {
-            for (Patron patron : patrons.values()) {
-                System.out.println(patron);
-                List<LibraryItem> items = patron.getCheckedOutItems();
-                if (!items.isEmpty()) {
-                    System.out.println("  Checked out items:");
-                    for (LibraryItem item : items) {
-                        System.out.println("    - " + item.getDetails());
-                    }
+    public boolean cancelHold(String callNumber, String studentId) {
+        boolean cancelled = unhold(callNumber, studentId);
+        settle();
+        return cancelled;
+    }
+    
+    /**
+     * Cancels a patron's hold on an item, reporting the outcome to the
+     * listener.
+     * 
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the patron
+     * @return true if the patron had a hold and it was cancelled
+     */
+    private boolean unhold(String callNumber, String studentId) {
+        LibraryItem item = lookup(callNumber);
+        if (item == null) {
+            publish(LibraryEvent.Type.ITEM_NOT_FOUND, null, null, callNumber);
+            return false;
+        }
+        Patron patron = findPatron(studentId);
+        if (patron == null) {
+            publish(LibraryEvent.Type.PATRON_NOT_FOUND, item, null, studentId);
+            return false;
+        }
+        HoldQueue queue = holds.get(callNumber);
+        if (queue == null) {
+            publish(LibraryEvent.Type.HOLD_NOT_FOUND, item, patron, callNumber);
+            return false;
+        }
+        boolean cancelled;
+        synchronized (queue) {
+            cancelled = queue.remove(patron);
+            if (cancelled) {
+                publish(LibraryEvent.Type.HOLD_CANCELLED, item, patron, callNumber);
+            }
+        }
+        if (queue.isRetired()) {
+            holds.remove(callNumber, queue);
+        }
+        if (!cancelled) {
+            publish(LibraryEvent.Type.HOLD_NOT_FOUND, item, patron, callNumber);
+            return false;
+        }
+        // The next patron may now be first in line for an item on the shelf.
+        handOff(item);
+        return true;
+    }
+    
+    /**
+     * Gets a patron's place in the queue for an item.
+     * Only the item's own queue is examined.
+     * 
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the patron
+     * @return the 1-based position, or 0 if the patron has no hold on the item
+     */
+    public int getHoldPosition(String callNumber, String studentId) {
+        HoldQueue queue = callNumber == null ? null : holds.get(callNumber);
+        Patron patron = findPatron(studentId);
+        return queue == null || patron == null ? 0 : queue.positionOf(patron);
+    }
+    
+    /**
+     * Gets the number of patrons waiting for an item.
+     * 
+     * @param callNumber the call number of the item
+     * @return the number of holds on the item
+     */
+    public int getHoldCount(String callNumber) {
+        HoldQueue queue = callNumber == null ? null : holds.get(callNumber);
+        return queue == null ? 0 : queue.size();
+    }
+    
+    /**
+     * Removes a filled hold, dropping the queue if it is now empty.
+     * 
+     * @param callNumber the call number of the item
+     * @param queue the item's queue
+     * @param patron the patron whose hold was filled
+     */
+    private void fillHold(String callNumber, HoldQueue queue, Patron patron) {
+        queue.remove(patron);
+        if (queue.isRetired()) {
+            holds.remove(callNumber, queue);
+        }
+    }
+    
+    /**
+     * Checks an item that is on the shelf out to the first patron waiting
+     * for it. The queue stays locked from choosing the patron until the
+     * checkout is recorded, so two terminals checking the item in or
+     * placing holds at once cannot hand it to two patrons.
+     * 
+     * @param item the item that may now be handed on
+     */
+    private void handOff(LibraryItem item) {
+        HoldQueue queue = holds.get(item.getCallNumber());
+        if (queue == null || !handOffHolds) {
+            return;
+        }
+        synchronized (queue) {
+            Patron next = queue.peek();
+            Instant now = clock.instant();
+            if (next != null && lend(item, next, now, now.plus(loanPeriod))) {
+                fillHold(item.getCallNumber(), queue, next);
+            }
+        }
+    }
+    
+    /**
+     * Turns automatic hand-off of returned items to waiting patrons on or
+     * off. Recovery turns it off while replaying, since the journal
+     * already records each hand-off as a checkout; turning it back on
+     * hands any waiting items on.
+     * 
+     * @param enabled whether check-ins fill holds
+     */
+    void setHoldHandOff(boolean enabled) {
+        handOffHolds = enabled;
+        if (enabled) {
+            for (String callNumber : holds.keySet()) {
+                LibraryItem item = inventory.get(callNumber);
+                if (item != null) {
+                    handOff(item);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Copies every hold queue, for persistence code in this package.
+     * 
+     * @return the waiting patrons of each item with holds, first in line first
+     */
+    Map<String, List<Patron>> holdView() {
+        Map<String, List<Patron>> view = new HashMap<>();
+        for (Map.Entry<String, HoldQueue> entry : holds.entrySet()) {
+            List<Patron> waiting = entry.getValue().toList();
+            if (!waiting.isEmpty()) {
+                view.put(entry.getKey(), waiting);
+            }
+        }
+        return view;
+    }
+    
+    /**
+     * Checks an item out to a patron and records the loan on the patron.
+     * Both changes, and the event reporting them, happen under the patron's
+     * monitor, so a concurrent check-in of the same loan sees them together
+     * and listeners receive the two events in order.
+     * 
+     * @param item the item to check out
+     * @param patron the borrowing patron
+     * @param now the time of the checkout
+     * @param dueDate when the item is due back, or null for no due date
+     * @return true if the item was available and is now checked out
+     */
+    private boolean lend(LibraryItem item, Patron patron, Instant now, Instant dueDate) {
+        Loan loan = new Loan(item, patron, dueDate);
+        synchronized (patron) {
+            Long borrowed = patron.beginBorrowing(item);
+            if (item.checkOut(loan)) {
+                patron.addCheckedOutItem(item);
+                loansOut.increment();
+                overdue.track(loan);
+                stats.recordCheckout(item, patron.getCheckedOutCount() == 1, now.toEpochMilli());
+                publish(LibraryEvent.Type.ITEM_CHECKED_OUT, item, patron, item.getCallNumber());
+                return true;
+            }
+            patron.forgetBorrowing(item, borrowed);
+            return false;
+        }
+    }
+    
+    /**
+     * Checks an item in and removes the loan from its borrower.
+     * The loan can change between reading it and taking its borrower's
+     * monitor, so this retries until the check-in succeeds for the current
+     * loan or the item is found to be available. If patrons are waiting
+     * for the item, it is then handed to the first of them.
+     * 
+     * @param item the item to check in
+     * @return the patron who had the item, or null if it was not checked out
+     */
+    private Patron giveBack(LibraryItem item) {
+        while (true) {
+            Loan loan = item.getLoan();
+            if (loan == null) {
+                return null;
+            }
+            
+            Patron patron = loan.getPatron();
+            boolean returned = false;
+            synchronized (patron) {
+                if (item.checkIn(loan)) {
+                    patron.endBorrowing(item);
+                    patron.removeCheckedOutItem(item);
+                    loansOut.decrement();
+                    overdue.untrack(loan);
+                    stats.recordCheckin(item, patron.getCheckedOutCount() == 0);
+                    publish(LibraryEvent.Type.ITEM_CHECKED_IN, item, patron, item.getCallNumber());
+                    returned = true;
                 }
             }
+            if (returned) {
+                // Outside the patron's monitor: queues are always locked first.
+                handOff(item);
+                return patron;
+            }
         }
-        System.out.println("Total patrons: " + patrons.size());
+    }
+    
+    /**
+     * Reports a loan that has just fallen due. The notice is published
+     * under the borrower's monitor and only while the loan is still
+     * current, so it never follows the item's check-in event.
+     * 
+     * @param loan the loan that fell due
+     */
+    private void publishOverdue(Loan loan) {
+        synchronized (loan.getPatron()) {
+            if (loan.isActive()) {
+                publish(LibraryEvent.Type.ITEM_OVERDUE, loan.getItem(), loan.getPatron(),
+                        loan.getItem().getCallNumber());
+            }
+        }
+    }
+    
+    /**
+     * Gets the loans that are past their due date now.
+     * Served from the due-date ordered loan list, so the cost depends on
+     * the number of overdue loans rather than the size of the inventory.
+     * 
+     * @return the overdue loans, earliest due date first
+     */
+    public List<Loan> getOverdueLoans() {
+        return overdue.overdueAt(clock.instant());
+    }
+    
+    /**
+     * Displays all items in the inventory.
+     * The listing is written through one large buffer rather than a line
+     * at a time, so printing a big inventory is bound by the console.
+     */
+    public void displayInventory() {
+        display(this::writeInventory);
+    }
+    
+    /**
+     * Displays all registered patrons and the items they have checked out.
+     */
+    public void displayPatrons() {
+        display(this::writePatrons);
+    }
+    
+    /**
+     * Writes every item in the inventory, one per line, in the format of
+     * {@link #displayInventory()}. Nothing is flushed; pass a buffered
+     * writer for large inventories. The listing is taken from a
+     * {@link LibraryView}, so the total always matches the lines written.
+     * 
+     * @param out where to write the listing
+     * @throws IOException if writing fails
+     */
+    public void writeInventory(Writer out) throws IOException {
+        try (LibraryView view = openView()) {
+            view.writeInventory(out);
+        }
+    }
+    
+    /**
+     * Writes every registered patron with their checked out items, in the
+     * format of {@link #displayPatrons()}. Nothing is flushed; pass a
+     * buffered writer for many patrons. Like the inventory listing, this
+     * is taken from a {@link LibraryView}.
+     * 
+     * @param out where to write the listing
+     * @throws IOException if writing fails
+     */
+    public void writePatrons(Writer out) throws IOException {
+        try (LibraryView view = openView()) {
+            view.writePatrons(out);
+        }
+    }
+    
+    /**
+     * Writes a listing to the console through a single buffer.
+     * 
+     * @param listing the listing to write
+     */
+    static void display(Listing listing) {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), DISPLAY_BUFFER_CHARS);
+        try {
+            listing.writeTo(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Writes one line of a listing.
+     * 
+     * @param out where to write
+     * @param line the line, without a line separator
+     * @throws IOException if writing fails
+     */
+    static void writeLine(Writer out, String line) throws IOException {
+        out.write(line);
+        out.write(System.lineSeparator());
+    }
+    
+    /**
+     * Something that writes a listing, such as {@link #writeInventory(Writer)}.
+     */
+    interface Listing {
+        /**
+         * Writes the listing.
+         * 
+         * @param out where to write
+         * @throws IOException if writing fails
+         */
+        void writeTo(Writer out) throws IOException;
+    }
+    
+    /**
+     * Lists the inventory a page at a time, in call-number order.
+     * Items of an attached catalogue are listed once they have been used.
+     * 
+     * @param cursor the cursor from the previous page, or null for the first page
+     * @param limit the most items on the page
+     * @return the page of items
+     */
+    public Page<LibraryItem> listItems(String cursor, int limit) {
+        return page(cursor == null ? shelf : shelf.tailMap(cursor, false), limit);
+    }
+    
+    /**
+     * Lists the registered patrons a page at a time, in student ID order.
+     * 
+     * @param cursor the cursor from the previous page, or null for the first page
+     * @param limit the most patrons on the page
+     * @return the page of patrons
+     */
+    public Page<Patron> listPatrons(String cursor, int limit) {
+        return page(cursor == null ? roster : roster.tailMap(cursor, false), limit);
+    }
+    
+    /**
+     * Takes the first entries of a sorted map as a page. The next cursor
+     * is the key of the last entry taken, if any entries follow it.
+     * 
+     * @param entries the entries from the cursor onwards
+     * @param limit the most entries on the page
+     * @return the page
+     */
+    private static <T> Page<T> page(ConcurrentNavigableMap<String, T> entries, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+        List<T> taken = new ArrayList<>(Math.min(limit, 1024));
+        String lastKey = null;
+        for (Map.Entry<String, T> entry : entries.entrySet()) {
+            if (taken.size() == limit) {
+                return new Page<>(taken, lastKey);
+            }
+            taken.add(entry.getValue());
+            lastKey = entry.getKey();
+        }
+        return new Page<>(taken, null);
+    }
+    
+    /**
+     * Streams the inventory without copying it. The stream splits well
+     * for parallel use and reflects concurrent changes like a concurrent
+     * map's iterator: it never fails, and sees each item at most once.
+     * Items of an attached catalogue are included once they have been used.
+     * 
+     * @return a stream of the items, in no particular order
+     */
+    public Stream<LibraryItem> streamInventory() {
+        return inventory.values().stream();
+    }
+    
+    /**
+     * Streams the registered patrons without copying them, with the same
+     * guarantees as {@link #streamInventory()}.
+     * 
+     * @return a stream of the patrons, in no particular order
+     */
+    public Stream<Patron> streamPatrons() {
+        return patrons.values().stream();
+    }
+    
+    /**
+     * Gets the number of items currently checked out across all patrons.
+     * Maintained as a counter on every checkout and check-in, so this does
+     * not scan the inventory. Use {@link Patron#getCheckedOutCount()} for a
+     * single patron.
+     * 
+     * @return the number of items currently checked out
+     */
+    public long getCheckedOutCount() {
+        return loansOut.sum();
+    }
+    
+    /**
+     * Gets the running circulation statistics: most borrowed titles,
+     * loans per decade and active patrons. They are updated on every
+     * checkout and check-in, so reading them does not scan anything.
+     * 
+     * @return the statistics
+     */
+    public CirculationStats getStatistics() {
+        return stats;
+    }
+    
+    /**
+     * Gets the latency histograms of this system's operations.
+     * 
+     * @return the metrics
+     */
+    public LibraryMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Gets the cache that answers repeated {@link #searchItems(String)}
+     * queries, for example to read its hit rate.
+     * 
+     * @return the search cache
+     */
+    public SearchCache getSearchCache() {
+        return searchCache;
     }
     
     /**
@@ -201,7 +1437,7 @@ public class LibrarySystem {
      * @return the patron, or null if not found
      */
     public Patron getPatron(String studentId) {
-        return patrons.get(studentId);
+        return findPatron(studentId);
     }
     
     /**
@@ -211,7 +1447,61 @@ public class LibrarySystem {
      * @return the item, or null if not found
      */
     public LibraryItem getItem(String callNumber) {
-        return inventory.get(callNumber);
+        return lookup(callNumber);
+    }
+    
+    /**
+     * Opens a point-in-time view of the library. The view sees every item,
+     * patron and loan as they were when it opened, however long it is
+     * used, and neither waits for nor delays circulation. Close it when
+     * done so that superseded loan states can be reclaimed.
+     * 
+     * @return the view
+     */
+    public LibraryView openView() {
+        return new LibraryView(inventory, patrons, retired,
+                               tokenIndex, trigramIndex, this::releaseRetired);
+    }
+    
+    /**
+     * Gets a read-only live view of the items in the inventory.
+     * Used by persistence code in this package to write snapshots.
+     * 
+     * @return an unmodifiable view of all items
+     */
+    Collection<LibraryItem> itemView() {
+        return Collections.unmodifiableCollection(inventory.values());
+    }
+    
+    /**
+     * Lists the call numbers of attached catalogue items that have been
+     * removed. The catalogue file still holds them, so persistence code
+     * in this package records them to keep them removed after recovery.
+     * 
+     * @return the removed call numbers, empty without a catalogue
+     */
+    List<String> catalogueRemovals() {
+        CatalogueFile source = catalogue;
+        if (source == null) {
+            return Collections.emptyList();
+        }
+        List<String> removed = new ArrayList<>();
+        for (LibraryItem item : source.loadedItems()) {
+            if (item.isWithdrawn()) {
+                removed.add(item.getCallNumber());
+            }
+        }
+        return removed;
+    }
+    
+    /**
+     * Gets a read-only live view of the registered patrons.
+     * Used by persistence code in this package to write snapshots.
+     * 
+     * @return an unmodifiable view of all patrons
+     */
+    Collection<Patron> patronView() {
+        return Collections.unmodifiableCollection(patrons.values());
     }
 }
 
@@ -0,0 +1,364 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Point-in-time view of a {@link LibrarySystem}, opened with
+ * {@link LibrarySystem#openView()}. A view lists the items, patrons and
+ * loans exactly as they were when it opened: items added later are left
+ * out, items removed later are still listed, and every item shows the
+ * loan it was under then. Reading a view takes no locks, so long scans
+ * and reports never hold up the circulation desk, and checkouts never
+ * make a scan inconsistent.
+ *
+ * <p>The view shares the library's items rather than copying them. Each
+ * item keeps the loan states an open view may still ask for, and drops
+ * them on its next change once every such view is closed, and each patron
+ * likewise keeps the items it returned while such a view was open, so a view
+ * should be closed promptly, ideally with try-with-resources. A closed
+ * view can no longer be read.
+ *
+ * @author Orchlon Chinbat
+ */
+public final class LibraryView implements AutoCloseable {
+    private final long pinned;
+    private final long version;
+    private final Map<String, LibraryItem> inventory;
+    private final Map<String, Patron> patrons;
+    private final Queue<LibraryItem> retired;
+    private final TokenIndex tokenIndex;
+    private final TrigramIndex trigramIndex;
+    private final Runnable onClose;
+    private final AtomicBoolean closed;
+
+    /**
+     * Opens a view of the given library state at the latest version.
+     *
+     * @param inventory the live inventory by call number
+     * @param patrons the live patrons by student ID
+     * @param retired items removed while views may still list them
+     * @param tokenIndex the library's keyword index
+     * @param trigramIndex the library's substring index
+     * @param onClose run once when the view is closed
+     */
+    LibraryView(Map<String, LibraryItem> inventory, Map<String, Patron> patrons,
+                Queue<LibraryItem> retired, TokenIndex tokenIndex, TrigramIndex trigramIndex,
+                Runnable onClose) {
+        this.pinned = VersionClock.pin();
+        this.version = VersionClock.latest();
+        this.inventory = inventory;
+        this.patrons = patrons;
+        this.retired = retired;
+        this.tokenIndex = tokenIndex;
+        this.trigramIndex = trigramIndex;
+        this.onClose = onClose;
+        this.closed = new AtomicBoolean();
+    }
+
+    /**
+     * Gets the version this view shows. Views with equal versions show the
+     * same state, and a later view never misses a change an earlier one saw.
+     *
+     * @return the version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets an item by call number.
+     *
+     * @param callNumber the call number
+     * @return the item in the inventory at this view's version, or null
+     */
+    public LibraryItem getItem(String callNumber) {
+        checkOpen();
+        LibraryItem item = inventory.get(callNumber);
+        if (item != null && item.isListedAt(version)) {
+            return item;
+        }
+        for (LibraryItem gone : retired) {
+            if (gone.getCallNumber().equals(callNumber) && gone.isListedAt(version)) {
+                return gone;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets a patron by student ID.
+     *
+     * @param studentId the student ID
+     * @return the patron registered at this view's version, or null
+     */
+    public Patron getPatron(String studentId) {
+        checkOpen();
+        Patron patron = patrons.get(studentId);
+        return patron != null && patron.isRegisteredAt(version) ? patron : null;
+    }
+
+    /**
+     * Gets the loan an item was under.
+     *
+     * @param item an item of this library
+     * @return the loan at this view's version, or null if the item was
+     *         available or not in the inventory
+     */
+    public Loan getLoan(LibraryItem item) {
+        checkOpen();
+        return item.isListedAt(version) ? item.loanAt(version) : null;
+    }
+
+    /**
+     * Streams the items in the inventory at this view's version.
+     *
+     * @return a stream of the items, in no particular order
+     */
+    public Stream<LibraryItem> streamInventory() {
+        checkOpen();
+        Set<LibraryItem> departed = departed();
+        return Stream.concat(inventory.values().stream()
+                                      .filter(item -> !departed.contains(item) && item.isListedAt(version)),
+                             departed.stream());
+    }
+
+    /**
+     * Streams the patrons registered at this view's version.
+     *
+     * @return a stream of the patrons, in no particular order
+     */
+    public Stream<Patron> streamPatrons() {
+        checkOpen();
+        return patrons.values().stream().filter(patron -> patron.isRegisteredAt(version));
+    }
+
+    /**
+     * Gets the items a patron had checked out.
+     *
+     * @param patron the patron
+     * @return the patron's checked out items at this view's version
+     */
+    public List<LibraryItem> getCheckedOutItems(Patron patron) {
+        List<LibraryItem> items = new ArrayList<>();
+        for (Loan loan : loans(patron)) {
+            items.add(loan.getItem());
+        }
+        return items;
+    }
+
+    /**
+     * Gets the number of items checked out across all patrons.
+     *
+     * @return the number of loans at this view's version
+     */
+    public long getCheckedOutCount() {
+        return streamPatrons().mapToLong(patron -> loans(patron).size()).sum();
+    }
+
+    /**
+     * Gets the loans of this view that are past their due date at a time.
+     *
+     * @param now the time to judge due dates by
+     * @return the overdue loans, earliest due date first
+     */
+    public List<Loan> getOverdueLoans(Instant now) {
+        List<Loan> overdue = new ArrayList<>();
+        for (Patron patron : streamPatrons().collect(Collectors.toList())) {
+            for (Loan loan : loans(patron)) {
+                if (loan.isOverdue(now)) {
+                    overdue.add(loan);
+                }
+            }
+        }
+        overdue.sort(Loan.BY_DUE_DATE);
+        return overdue;
+    }
+
+    /**
+     * Finds the items whose searchable text contains a term, as
+     * {@link LibrarySystem#searchItems(String)} does.
+     *
+     * @param searchTerm the term to search for
+     * @return the matching items in the inventory at this view's version
+     */
+    public List<LibraryItem> searchItems(String searchTerm) {
+        checkOpen();
+        String lowerSearchTerm = searchTerm.toLowerCase();
+        Set<LibraryItem> departed = departed();
+        List<LibraryItem> results = new ArrayList<>();
+        Iterable<LibraryItem> candidates = trigramIndex.canAnswer(lowerSearchTerm)
+                ? trigramIndex.search(lowerSearchTerm) : inventory.values();
+        for (LibraryItem item : candidates) {
+            if (!departed.contains(item) && item.isListedAt(version)
+                    && item.getSearchableText().contains(lowerSearchTerm)) {
+                results.add(item);
+            }
+        }
+        for (LibraryItem item : departed) {
+            if (item.getSearchableText().contains(lowerSearchTerm)) {
+                results.add(item);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finds the items containing every word of a query, as
+     * {@link LibrarySystem#searchByKeyword(String)} does.
+     *
+     * @param keywords the words to search for
+     * @return the matching items in the inventory at this view's version
+     */
+    public List<LibraryItem> searchByKeyword(String keywords) {
+        checkOpen();
+        Set<LibraryItem> departed = departed();
+        List<LibraryItem> results = new ArrayList<>();
+        for (LibraryItem item : tokenIndex.search(keywords)) {
+            if (!departed.contains(item) && item.isListedAt(version)) {
+                results.add(item);
+            }
+        }
+        // Removed items have left the index, so match them directly.
+        List<String> tokens = TokenIndex.tokenize(keywords);
+        for (LibraryItem item : departed) {
+            if (!tokens.isEmpty() && TokenIndex.tokenize(item.getSearchableText()).containsAll(tokens)) {
+                results.add(item);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Displays the inventory at this view's version, in the format of
+     * {@link LibrarySystem#displayInventory()}.
+     */
+    public void displayInventory() {
+        LibrarySystem.display(this::writeInventory);
+    }
+
+    /**
+     * Displays the patrons and their loans at this view's version, in the
+     * format of {@link LibrarySystem#displayPatrons()}.
+     */
+    public void displayPatrons() {
+        LibrarySystem.display(this::writePatrons);
+    }
+
+    /**
+     * Writes every item of this view, one per line, with the checkout
+     * status it had at this view's version.
+     *
+     * @param out where to write the listing
+     * @throws IOException if writing fails
+     */
+    public void writeInventory(Writer out) throws IOException {
+        List<LibraryItem> items = streamInventory().collect(Collectors.toList());
+        LibrarySystem.writeLine(out, "\n=== Library Inventory ===");
+        if (items.isEmpty()) {
+            LibrarySystem.writeLine(out, "No items in inventory.");
+        } else {
+            for (LibraryItem item : items) {
+                LibrarySystem.writeLine(out, item.describe(item.loanAt(version)));
+            }
+        }
+        LibrarySystem.writeLine(out, "Total items: " + items.size());
+    }
+
+    /**
+     * Writes every patron of this view with the items they had checked
+     * out at this view's version.
+     *
+     * @param out where to write the listing
+     * @throws IOException if writing fails
+     */
+    public void writePatrons(Writer out) throws IOException {
+        List<Patron> registered = streamPatrons().collect(Collectors.toList());
+        LibrarySystem.writeLine(out, "\n=== Registered Patrons ===");
+        if (registered.isEmpty()) {
+            LibrarySystem.writeLine(out, "No registered patrons.");
+        } else {
+            for (Patron patron : registered) {
+                List<Loan> loans = loans(patron);
+                LibrarySystem.writeLine(out, patron.describe(loans.size()));
+                if (!loans.isEmpty()) {
+                    LibrarySystem.writeLine(out, "  Checked out items:");
+                    for (Loan loan : loans) {
+                        LibrarySystem.writeLine(out, "    - " + loan.getItem().getDetails());
+                    }
+                }
+            }
+        }
+        LibrarySystem.writeLine(out, "Total patrons: " + registered.size());
+    }
+
+    /**
+     * Closes the view, letting the library reclaim the states it kept for
+     * it. Closing an already closed view does nothing.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            VersionClock.unpin(pinned);
+            onClose.run();
+        }
+    }
+
+    /**
+     * Gets the removed items that this view still lists.
+     *
+     * @return the items, which have left the live inventory or are leaving it
+     */
+    private Set<LibraryItem> departed() {
+        Set<LibraryItem> departed = new HashSet<>();
+        for (LibraryItem item : retired) {
+            if (item.isListedAt(version)) {
+                departed.add(item);
+            }
+        }
+        return departed;
+    }
+
+    /**
+     * Gets a patron's loans at this view's version from the items the
+     * patron has borrowed, keeping those of this library that were on loan
+     * to the patron then. That takes time in proportion to the patron's
+     * loans rather than to the inventory.
+     *
+     * @param patron the patron
+     * @return the loans, in the order they were made
+     */
+    private List<Loan> loans(Patron patron) {
+        checkOpen();
+        List<Loan> loans = new ArrayList<>();
+        for (LibraryItem item : patron.borrowedItems()) {
+            Loan loan = item.isListedAt(version) ? item.loanAt(version) : null;
+            // The patron may be shared with other shards, whose items
+            // this view does not cover.
+            if (loan != null && loan.getPatron() == patron && getItem(item.getCallNumber()) == item) {
+                loans.add(loan);
+            }
+        }
+        loans.sort(Loan.BY_CHECKOUT);
+        return loans;
+    }
+
+    /**
+     * Checks that the view is still open.
+     *
+     * @throws IllegalStateException if the view has been closed
+     */
+    private void checkOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("Library view is closed");
+        }
+    }
+}
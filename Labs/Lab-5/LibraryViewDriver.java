@@ -0,0 +1,222 @@
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Driver class to test point-in-time library views.
+ * A writer thread keeps one patron's loans moving around a ring of items,
+ * always checking the next item out before returning the oldest, so at
+ * every moment the patron holds exactly {@code HELD} or {@code HELD + 1}
+ * items. Views opened while it runs must always see one of those two
+ * counts, and see the same loans however often they are read; a scan of
+ * the live library can tear and see other counts. The driver also checks
+ * that removed and added items and later checkouts and returns keep out
+ * of views opened before, that the states kept for a view are released
+ * when it closes, and that a closed view refuses to be read.
+ *
+ * @author Orchlon Chinbat
+ */
+public class LibraryViewDriver {
+    private static final int RING = 20_000;
+    private static final int HELD = 100;
+    private static final long RUN_MS = 3_000;
+
+    /**
+     * Main method to run the view test.
+     *
+     * @param args command line arguments (not used)
+     * @throws InterruptedException if interrupted while waiting for the writer
+     */
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("========================================");
+        System.out.println("   Library System - Point-in-Time Views");
+        System.out.println("========================================\n");
+
+        boolean passed = checkConsistency();
+        System.out.println();
+        passed &= checkMembership();
+        System.out.println();
+        passed &= checkReclaim();
+
+        System.out.println();
+        System.out.println(passed ? "View test PASSED" : "View test FAILED");
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads views and the live library while a writer circulates items.
+     *
+     * @return true if every view was consistent
+     * @throws InterruptedException if interrupted while waiting for the writer
+     */
+    private static boolean checkConsistency() throws InterruptedException {
+        System.out.println("--- Consistency Under Circulation ---");
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        List<LibraryItem> items = new CatalogueGenerator(RING, 11).generate(RING);
+        library.addItems(items);
+        Patron reader = new Patron("Ring Reader", "RING");
+        library.registerPatron(reader);
+        for (int i = 0; i < HELD; i++) {
+            library.checkOutItem(items.get(i).getCallNumber(), "RING");
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder moves = new LongAdder();
+        Thread writer = new Thread(() -> {
+            for (int oldest = 0; running.get(); oldest = (oldest + 1) % RING) {
+                library.checkOutItem(items.get((oldest + HELD) % RING).getCallNumber(), "RING");
+                library.checkInItem(items.get(oldest).getCallNumber());
+                moves.increment();
+            }
+        });
+        writer.start();
+
+        int views = 0;
+        int badViews = 0;
+        int tornScans = 0;
+        long deadline = System.currentTimeMillis() + RUN_MS;
+        while (System.currentTimeMillis() < deadline) {
+            try (LibraryView view = library.openView()) {
+                Map<LibraryItem, Loan> first = loansIn(view);
+                Thread.yield();
+                Map<LibraryItem, Loan> second = loansIn(view);
+                boolean counted = first.size() == HELD || first.size() == HELD + 1;
+                if (!counted || !first.equals(second) || view.getCheckedOutCount() != first.size()
+                        || view.getCheckedOutItems(reader).size() != first.size()) {
+                    badViews++;
+                }
+                views++;
+            }
+            long live = library.streamInventory().filter(LibraryItem::isCheckedOut).count();
+            if (live != HELD && live != HELD + 1) {
+                tornScans++;
+            }
+        }
+        running.set(false);
+        writer.join();
+
+        System.out.printf("%,d views read during %,d loan moves%n", views, moves.sum());
+        System.out.printf("Live scans that tore: %d (possible, not an error)%n", tornScans);
+        return report("Every view saw " + HELD + " or " + (HELD + 1) + " loans, twice alike",
+                      views > 0 && badViews == 0);
+    }
+
+    /**
+     * Collects the loans a view shows.
+     *
+     * @param view the view
+     * @return each checked out item with its loan
+     */
+    private static Map<LibraryItem, Loan> loansIn(LibraryView view) {
+        Map<LibraryItem, Loan> loans = new IdentityHashMap<>();
+        view.streamInventory().forEach(item -> {
+            Loan loan = view.getLoan(item);
+            if (loan != null) {
+                loans.put(item, loan);
+            }
+        });
+        return loans;
+    }
+
+    /**
+     * Checks that items added or removed after a view opened do not
+     * change what it lists or finds.
+     *
+     * @return true if every check passed
+     */
+    private static boolean checkMembership() {
+        System.out.println("--- Added and Removed Items ---");
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        library.addItem(new Book("Old Atlas", "G1021 .O43 1990", List.of("Ana Mapper"), 1990, "978-0000000001"));
+        library.addItem(new DVD("Kept Film", "DVD-791.43 K47 2001", 2001));
+        library.addItem(new DVD("Lent Film", "DVD-791.43 L46 2003", 2003));
+        Patron early = new Patron("Early Bird", "EARLY");
+        library.registerPatron(early);
+        library.checkOutItem("DVD-791.43 L46 2003", "EARLY");
+
+        boolean passed;
+        try (LibraryView view = library.openView()) {
+            library.checkInItem("DVD-791.43 L46 2003");
+            library.removeItem("G1021 .O43 1990");
+            library.addItem(new Book("New Atlas", "G1021 .N49 2024", List.of("Ana Mapper"), 2024, "978-0000000002"));
+            library.registerPatron(new Patron("Late Bird", "LATE"));
+            library.checkOutItem("DVD-791.43 K47 2001", "EARLY");
+
+            passed = report("Removed item still listed", view.getItem("G1021 .O43 1990") != null
+                            && view.streamInventory().count() == 3);
+            passed &= report("Later return left out", view.getCheckedOutItems(early).size() == 1
+                             && view.getCheckedOutItems(early).get(0).getTitle().equals("Lent Film"));
+            passed &= report("Removed item still found", view.searchItems("old atl").size() == 1
+                             && view.searchByKeyword("atlas").size() == 1);
+            passed &= report("Added item and patron left out", view.getItem("G1021 .N49 2024") == null
+                             && view.getPatron("LATE") == null && view.streamPatrons().count() == 1);
+            passed &= report("Later checkout left out", view.getCheckedOutCount() == 1
+                             && view.getLoan(library.getItem("DVD-791.43 K47 2001")) == null);
+            passed &= report("Live library moved on", library.getItem("G1021 .O43 1990") == null
+                             && library.searchByKeyword("atlas").size() == 1
+                             && library.getCheckedOutCount() == 1);
+        }
+        try (LibraryView view = library.openView()) {
+            passed &= report("New view sees the changes", view.getItem("G1021 .O43 1990") == null
+                             && view.getItem("G1021 .N49 2024") != null && view.getCheckedOutCount() == 1);
+        }
+        return passed;
+    }
+
+    /**
+     * Checks that superseded states are kept only while a view needs them.
+     *
+     * @return true if every check passed
+     */
+    private static boolean checkReclaim() {
+        System.out.println("--- Reclaiming Old States ---");
+        LibrarySystem library = new LibrarySystem(LibraryEventListener.SILENT);
+        LibraryItem item = new DVD("Busy Film", "DVD-791.43 B87 2015", 2015);
+        library.addItem(item);
+        Patron reader = new Patron("Busy Reader", "BUSY");
+        library.registerPatron(reader);
+        LibraryItem other = new DVD("Quiet Film", "DVD-791.43 Q54 2016", 2016);
+        library.addItem(other);
+
+        LibraryView view = library.openView();
+        for (int i = 0; i < 50; i++) {
+            library.checkOutItem(item.getCallNumber(), "BUSY");
+            library.checkInItem(item.getCallNumber());
+        }
+        library.checkOutItem(other.getCallNumber(), "BUSY");
+        library.checkInItem(other.getCallNumber());
+        boolean passed = report("States kept while a view is open", item.retainedStates() > 1
+                                && view.getLoan(item) == null && reader.borrowedItems().size() == 2);
+        view.close();
+        library.checkOutItem(item.getCallNumber(), "BUSY");
+        library.checkInItem(item.getCallNumber());
+        passed &= report("States released after it closes", item.retainedStates() == 1
+                         && reader.borrowedItems().isEmpty());
+
+        boolean refused;
+        try {
+            view.streamInventory();
+            refused = false;
+        } catch (IllegalStateException e) {
+            refused = true;
+        }
+        passed &= report("Closed view refuses reads", refused);
+        return passed;
+    }
+
+    /**
+     * Prints the outcome of one check.
+     *
+     * @param description what was checked
+     * @param passed whether the check passed
+     * @return the outcome
+     */
+    private static boolean report(String description, boolean passed) {
+        System.out.println(description + ": " + (passed ? "yes" : "NO"));
+        return passed;
+    }
+}
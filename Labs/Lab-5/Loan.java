@@ -0,0 +1,115 @@
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single checkout of an item by a patron, with the date it is due back.
+ * Loans are immutable; checking an item out again creates a new loan, so a
+ * loan object identifies one checkout even if the same patron borrows the
+ * same item again later.
+ *
+ * @author Orchlon Chinbat
+ */
+public final class Loan {
+    /** Orders loans by due date, then by the order they were made. */
+    static final Comparator<Loan> BY_DUE_DATE =
+            Comparator.comparing(Loan::getDueDate).thenComparingLong(loan -> loan.sequence);
+    /** Orders loans by the order they were made. */
+    static final Comparator<Loan> BY_CHECKOUT = Comparator.comparingLong(loan -> loan.sequence);
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final LibraryItem item;
+    private final Patron patron;
+    private final Instant dueDate;
+    private final long sequence;
+
+    /**
+     * Constructs a loan.
+     *
+     * @param item the borrowed item
+     * @param patron the borrowing patron
+     * @param dueDate when the item is due back, or null if it has no due date
+     */
+    public Loan(LibraryItem item, Patron patron, Instant dueDate) {
+        this.item = item;
+        this.patron = patron;
+        this.dueDate = dueDate;
+        this.sequence = SEQUENCE.getAndIncrement();
+    }
+
+    /**
+     * Gets the borrowed item.
+     *
+     * @return the item
+     */
+    public LibraryItem getItem() {
+        return item;
+    }
+
+    /**
+     * Gets the borrowing patron.
+     *
+     * @return the patron
+     */
+    public Patron getPatron() {
+        return patron;
+    }
+
+    /**
+     * Gets the date the item is due back.
+     *
+     * @return the due date, or null if the loan has no due date
+     */
+    public Instant getDueDate() {
+        return dueDate;
+    }
+
+    /**
+     * Checks whether the loan is past its due date.
+     *
+     * @param now the current time
+     * @return true if the loan has a due date before or at {@code now}
+     */
+    public boolean isOverdue(Instant now) {
+        return dueDate != null && !dueDate.isAfter(now);
+    }
+
+    /**
+     * Checks whether this loan is still the item's current checkout.
+     *
+     * @return true if the item has not been checked in since this loan
+     */
+    public boolean isActive() {
+        return item.getLoan() == this;
+    }
+
+    /**
+     * Compares loans by sequence number. Every loan gets its own, so this
+     * is the same as identity, stated in terms of the field the hash uses.
+     *
+     * @param other the object to compare with
+     * @return true if other is this loan
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Loan && ((Loan) other).sequence == sequence;
+    }
+
+    /**
+     * Hashes the loan by its sequence number, which is unique per loan, so
+     * that loan sets do not need identity hash codes.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(sequence * 0x9E3779B97F4A7C15L);
+    }
+
+    @Override
+    public String toString() {
+        return item.getTitle() + " to " + patron.getName()
+               + (dueDate == null ? "" : " (due " + dueDate + ")");
+    }
+}
@@ -0,0 +1,64 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP handler that answers every GET with the text snapshot of a
+ * library's {@link LibraryMetrics}. It can be mounted on an existing
+ * server or started on its own with {@link #start(LibraryMetrics, InetSocketAddress)}.
+ *
+ * @author Orchlon Chinbat
+ */
+public class MetricsEndpoint implements HttpHandler {
+    private final LibraryMetrics metrics;
+
+    /**
+     * Constructs an endpoint for the given metrics.
+     *
+     * @param metrics the metrics to serve
+     */
+    public MetricsEndpoint(LibraryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts a server that serves the metrics at {@code /metrics}.
+     *
+     * @param metrics the metrics to serve
+     * @param address the address to listen on; port 0 picks a free port
+     * @return the running server, to stop when done
+     * @throws IOException if the server cannot listen on the address
+     */
+    public static HttpServer start(LibraryMetrics metrics, InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", new MetricsEndpoint(metrics));
+        server.start();
+        return server;
+    }
+
+    /**
+     * Answers a request with the snapshot, or 405 for anything but GET.
+     *
+     * @param exchange the request and response
+     * @throws IOException if the response cannot be sent
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.getSnapshot().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+}
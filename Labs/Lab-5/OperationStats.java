@@ -0,0 +1,93 @@
+/**
+ * Call count and latency percentiles of one library operation, in the
+ * shape JMX clients display as a composite value.
+ *
+ * @author Orchlon Chinbat
+ */
+public final class OperationStats {
+    private final long count;
+    private final double meanNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    /**
+     * Constructs the statistics from a histogram summary.
+     *
+     * @param summary the summary
+     */
+    OperationStats(LatencyHistogram.Summary summary) {
+        this.count = summary.getCount();
+        this.meanNanos = summary.getMean();
+        this.p50Nanos = summary.getPercentile(50);
+        this.p90Nanos = summary.getPercentile(90);
+        this.p99Nanos = summary.getPercentile(99);
+        this.p999Nanos = summary.getPercentile(99.9);
+        this.maxNanos = summary.getMax();
+    }
+
+    /**
+     * Gets the number of calls.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the mean latency.
+     *
+     * @return the mean in nanoseconds
+     */
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    /**
+     * Gets the median latency.
+     *
+     * @return the median in nanoseconds
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * Gets the 90th percentile latency.
+     *
+     * @return the percentile in nanoseconds
+     */
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    /**
+     * Gets the 99th percentile latency.
+     *
+     * @return the percentile in nanoseconds
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * Gets the 99.9th percentile latency.
+     *
+     * @return the percentile in nanoseconds
+     */
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    /**
+     * Gets the largest latency.
+     *
+     * @return the maximum in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+}
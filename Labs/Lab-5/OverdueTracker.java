@@ -0,0 +1,250 @@
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps loans with a due date in due-date order and raises a notice for
+ * each one the moment it falls due.
+ * Loans that are not yet due are filed in one-second buckets, like the
+ * slots of a timer wheel: a loan is added to or removed from its bucket in
+ * constant time, and only the numbers of occupied buckets are kept sorted,
+ * which changes once per bucket rather than once per loan. A single timer
+ * is armed for the earliest due date and re-armed whenever an earlier loan
+ * arrives, so nothing is ever swept periodically. When the timer fires,
+ * the due loans of the leading buckets are moved to a set of overdue loans
+ * and a notice is raised for each. Listing what is overdue therefore reads
+ * the overdue set plus the leading buckets, in time proportional to the
+ * number of overdue loans.
+ *
+ * <p>All trackers share one daemon timer thread.
+ *
+ * @author Orchlon Chinbat
+ */
+final class OverdueTracker {
+    private static final long BUCKET_MILLIS = 1_000;
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "library-overdue");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Clock clock;
+    private final Consumer<Loan> notice;
+    private final Thread.UncaughtExceptionHandler failures;
+    private final Map<Long, Set<Loan>> buckets;
+    private final NavigableSet<Long> occupied;
+    private final Set<Loan> overdue;
+    private ScheduledFuture<?> wakeUp;
+    private volatile long wakeUpAt;
+
+    /**
+     * Constructs an empty tracker.
+     *
+     * @param clock the clock that decides when loans fall due
+     * @param notice called once for each loan as it falls due
+     * @param failures told of each notice that throws, on the timer thread
+     */
+    OverdueTracker(Clock clock, Consumer<Loan> notice, Thread.UncaughtExceptionHandler failures) {
+        this.clock = clock;
+        this.notice = notice;
+        this.failures = failures;
+        this.buckets = new ConcurrentHashMap<>();
+        this.occupied = new ConcurrentSkipListSet<>();
+        this.overdue = ConcurrentHashMap.newKeySet();
+        this.wakeUpAt = Long.MAX_VALUE;
+    }
+
+    /**
+     * Gets the bucket a due date is filed under.
+     *
+     * @param dueDate the due date
+     * @return the bucket number
+     */
+    private static long bucketOf(Instant dueDate) {
+        return Math.floorDiv(dueDate.toEpochMilli(), BUCKET_MILLIS);
+    }
+
+    /**
+     * Starts tracking a loan. Loans without a due date are ignored.
+     *
+     * @param loan the new loan
+     */
+    void track(Loan loan) {
+        if (loan.getDueDate() == null) {
+            return;
+        }
+        buckets.compute(bucketOf(loan.getDueDate()), (bucket, loans) -> {
+            if (loans == null) {
+                loans = ConcurrentHashMap.newKeySet();
+                occupied.add(bucket);
+            }
+            loans.add(loan);
+            return loans;
+        });
+        schedule(loan.getDueDate().toEpochMilli());
+    }
+
+    /**
+     * Stops tracking a loan that has ended.
+     *
+     * @param loan the ended loan
+     */
+    void untrack(Loan loan) {
+        if (loan.getDueDate() == null) {
+            return;
+        }
+        boolean[] removed = new boolean[1];
+        buckets.computeIfPresent(bucketOf(loan.getDueDate()), (bucket, loans) -> {
+            removed[0] = loans.remove(loan);
+            if (loans.isEmpty()) {
+                occupied.remove(bucket);
+                return null;
+            }
+            return loans;
+        });
+        if (!removed[0]) {
+            overdue.remove(loan);
+        }
+    }
+
+    /**
+     * Lists the loans that are overdue at the given time.
+     *
+     * @param now the time to check against
+     * @return the overdue loans, earliest due date first
+     */
+    List<Loan> overdueAt(Instant now) {
+        List<Loan> result = new ArrayList<>();
+        for (Loan loan : overdue) {
+            if (loan.isOverdue(now)) {
+                result.add(loan);
+            }
+        }
+        long last = bucketOf(now);
+        for (long bucket : occupied) {
+            if (bucket > last) {
+                break;
+            }
+            Set<Loan> loans = buckets.get(bucket);
+            if (loans != null) {
+                for (Loan loan : loans) {
+                    if (loan.isOverdue(now)) {
+                        result.add(loan);
+                    }
+                }
+            }
+        }
+        result.sort(Loan.BY_DUE_DATE);
+        return result;
+    }
+
+    /**
+     * Arms the timer for a due date unless it already fires no later.
+     *
+     * @param dueMillis the due date in epoch milliseconds
+     */
+    private void schedule(long dueMillis) {
+        // Most loans fall due after the armed time; skip the lock for them.
+        if (wakeUpAt <= dueMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (wakeUp != null) {
+                if (wakeUpAt <= dueMillis) {
+                    return;
+                }
+                wakeUp.cancel(false);
+            }
+            long delay = Math.max(0, dueMillis - clock.millis());
+            wakeUpAt = dueMillis;
+            wakeUp = TIMER.schedule(this::fire, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Raises notices for every tracked loan that has fallen due, then
+     * re-arms the timer for the next one. The timer is re-armed even if
+     * this fails part way, so one failure cannot stop later notices.
+     */
+    private void fire() {
+        synchronized (this) {
+            wakeUp = null;
+            wakeUpAt = Long.MAX_VALUE;
+        }
+        Instant now = clock.instant();
+        // Kept if raising fails, so the remaining loans are retried later.
+        long next = now.toEpochMilli() + BUCKET_MILLIS;
+        try {
+            next = raiseDue(now);
+        } finally {
+            if (next != Long.MAX_VALUE) {
+                schedule(next);
+            }
+        }
+    }
+
+    /**
+     * Moves the loans that have fallen due to the overdue set and raises
+     * a notice for each. A notice that throws is reported and skipped, so
+     * the loans after it still get theirs.
+     *
+     * @param now the current time
+     * @return when the next tracked loan falls due, in epoch milliseconds,
+     *         or {@link Long#MAX_VALUE} if no loans are waiting
+     */
+    private long raiseDue(Instant now) {
+        long last = bucketOf(now);
+        for (long bucket : occupied) {
+            if (bucket > last) {
+                return bucket * BUCKET_MILLIS;
+            }
+            List<Loan> due = new ArrayList<>();
+            long[] nextDue = {Long.MAX_VALUE};
+            buckets.computeIfPresent(bucket, (key, loans) -> {
+                for (Loan loan : loans) {
+                    if (loan.isOverdue(now)) {
+                        due.add(loan);
+                    } else {
+                        nextDue[0] = Math.min(nextDue[0], loan.getDueDate().toEpochMilli());
+                    }
+                }
+                loans.removeAll(due);
+                if (loans.isEmpty()) {
+                    occupied.remove(key);
+                    return null;
+                }
+                return loans;
+            });
+            due.sort(Loan.BY_DUE_DATE);
+            for (Loan loan : due) {
+                // A loan ended while being moved is dropped again, so
+                // untrack cannot miss it.
+                overdue.add(loan);
+                if (!loan.isActive()) {
+                    overdue.remove(loan);
+                    continue;
+                }
+                try {
+                    notice.accept(loan);
+                } catch (RuntimeException e) {
+                    failures.uncaughtException(Thread.currentThread(), e);
+                }
+            }
+            if (nextDue[0] != Long.MAX_VALUE) {
+                return nextDue[0];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,54 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a listing, with the cursor that fetches the next page.
+ * Cursors are keys rather than offsets: the next page starts after the
+ * last entry of this one, so items added or removed between requests
+ * never make a listing skip or repeat an entry that was there throughout.
+ *
+ * @param <T> the type of the listed entries
+ * @author Orchlon Chinbat
+ */
+public final class Page<T> {
+    private final List<T> entries;
+    private final String nextCursor;
+
+    /**
+     * Constructs a page.
+     *
+     * @param entries the entries on this page
+     * @param nextCursor the cursor for the next page, or null if this is the last
+     */
+    Page(List<T> entries, String nextCursor) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Gets the entries on this page.
+     *
+     * @return an unmodifiable list of entries, in listing order
+     */
+    public List<T> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Gets the cursor to pass back for the next page.
+     *
+     * @return the cursor, or null if there are no more entries
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Checks whether more entries follow this page.
+     *
+     * @return true if {@link #getNextCursor()} leads to another page
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
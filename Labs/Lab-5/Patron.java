@@ -1,16 +1,34 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a library patron who can check out items.
  * Each patron has a name and student ID number.
+ * Checked out items are kept in a concurrent set, so recording and clearing
+ * a loan take constant time even for institutional accounts holding
+ * thousands of items. The library system holds the patron's own monitor
+ * while changing a loan, so loan bookkeeping for different patrons never
+ * contends on a shared lock.
+ * 
+ * <p>For {@link LibraryView}s, a patron also remembers each item it has
+ * borrowed until no open view can still see it on loan, so a view finds a
+ * patron's loans without scanning the inventory.
  * 
  * @author Orchlon Chinbat
  */
 public class Patron {
     private final String name;
     private final String studentId;
-    private final List<LibraryItem> checkedOutItems;
+    private final Set<LibraryItem> checkedOutItems;
+    private final Set<LibraryItem> checkedOutView;
+    private final Map<LibraryItem, Long> borrowed;
+    private final Queue<Return> returns;
+    private final AtomicLong registeredAt;
     
     /**
      * Constructs a Patron with the specified name and student ID.
@@ -21,7 +39,11 @@ public class Patron {
     public Patron(String name, String studentId) {
         this.name = name;
         this.studentId = studentId;
-        this.checkedOutItems = new ArrayList<>();
+        this.checkedOutItems = ConcurrentHashMap.newKeySet();
+        this.checkedOutView = Collections.unmodifiableSet(checkedOutItems);
+        this.borrowed = new ConcurrentHashMap<>();
+        this.returns = new ArrayDeque<>();
+        this.registeredAt = new AtomicLong(VersionClock.NEVER);
     }
     
     /**
@@ -43,38 +65,175 @@ public class Patron {
     }
     
     /**
-     * Gets the list of items currently checked out by this patron.
+     * Gets the items currently checked out by this patron.
+     * The returned set is a read-only live view rather than a copy; it
+     * reflects later checkouts and check-ins and can be iterated while
+     * they happen.
      * 
-     * @return a list of checked out items
+     * @return an unmodifiable view of the checked out items
      */
-    public List<LibraryItem> getCheckedOutItems() {
-        return new ArrayList<>(checkedOutItems);
+    public Set<LibraryItem> getCheckedOutItems() {
+        return checkedOutView;
     }
     
     /**
-     * Adds an item to the patron's checked out list.
+     * Gets the number of items currently checked out by this patron.
+     * 
+     * @return the number of checked out items
+     */
+    public int getCheckedOutCount() {
+        return checkedOutItems.size();
+    }
+    
+    /**
+     * Adds an item to the patron's checked out items.
      * 
      * @param item the item to add
+     * @return true if the item was not already recorded
      */
-    public void addCheckedOutItem(LibraryItem item) {
-        if (!checkedOutItems.contains(item)) {
-            checkedOutItems.add(item);
-        }
+    public boolean addCheckedOutItem(LibraryItem item) {
+        return checkedOutItems.add(item);
     }
     
     /**
-     * Removes an item from the patron's checked out list.
+     * Removes an item from the patron's checked out items.
      * 
      * @param item the item to remove
+     * @return true if the item was recorded
+     */
+    public boolean removeCheckedOutItem(LibraryItem item) {
+        return checkedOutItems.remove(item);
+    }
+    
+    /**
+     * Gets the items this patron has on loan or returned while a view may
+     * still see them on loan. Views check each item's loan at their own
+     * version, since the set also holds items borrowed after they opened.
+     * 
+     * @return a live view of the items
+     */
+    Set<LibraryItem> borrowedItems() {
+        return Collections.unmodifiableSet(borrowed.keySet());
+    }
+    
+    /**
+     * Remembers an item for views before it is checked out to this patron,
+     * so that a view stamped after the checkout always finds it. The
+     * caller holds this patron's monitor until the checkout succeeds or
+     * {@link #forgetBorrowing(LibraryItem, Long)} undoes this.
+     * 
+     * @param item the item about to be checked out
+     * @return what was remembered about the item before, to undo with
+     */
+    Long beginBorrowing(LibraryItem item) {
+        return borrowed.put(item, VersionClock.NEVER);
+    }
+    
+    /**
+     * Undoes {@link #beginBorrowing(LibraryItem)} after a failed checkout.
+     * 
+     * @param item the item that was not checked out
+     * @param previous the value returned by beginBorrowing
+     */
+    void forgetBorrowing(LibraryItem item, Long previous) {
+        if (previous == null) {
+            borrowed.remove(item);
+        } else {
+            borrowed.put(item, previous);
+        }
+    }
+    
+    /**
+     * Records that an item has just been checked in, keeping it for views
+     * that opened before the check-in and forgetting returned items that
+     * no open view needs any more. Returns are queued in the order they
+     * happen, so only the expired head of the queue is looked at and a
+     * check-in costs constant amortized time however many items the
+     * patron holds. The caller holds this patron's monitor.
+     * 
+     * @param item the returned item
      */
-    public void removeCheckedOutItem(LibraryItem item) {
-        checkedOutItems.remove(item);
+    void endBorrowing(LibraryItem item) {
+        long oldest = VersionClock.oldestPinned();
+        if (oldest == VersionClock.NEVER) {
+            // No view is open, and any view opened from now on sees the
+            // check-in, which is stamped already.
+            borrowed.remove(item);
+        } else {
+            // The latest version is no earlier than the check-in's own.
+            long returned = VersionClock.latest();
+            borrowed.put(item, returned);
+            returns.add(new Return(item, returned));
+        }
+        Return head;
+        while ((head = returns.peek()) != null && head.version <= oldest) {
+            returns.remove();
+            // Unless the item has been borrowed or returned again since.
+            borrowed.remove(head.item, head.version);
+        }
+    }
+    
+    /**
+     * Checks whether this patron was registered at a version.
+     * 
+     * @param version a version pinned by an open {@link LibraryView}
+     * @return true if the patron had been registered by then
+     */
+    boolean isRegisteredAt(long version) {
+        long registered;
+        while ((registered = registeredAt.get()) == VersionClock.PENDING) {
+            VersionClock.awaitStamp();
+        }
+        return registered <= version;
+    }
+    
+    /**
+     * Marks this patron as being registered. Views wait for the patron's
+     * stamp from now until {@link #endRegistration(boolean)}.
+     * 
+     * @return true if the patron was not registered before and must be stamped
+     */
+    boolean beginRegistration() {
+        return registeredAt.compareAndSet(VersionClock.NEVER, VersionClock.PENDING);
+    }
+    
+    /**
+     * Stamps the patron's registration once it is in place.
+     * 
+     * @param registered false if the patron was not registered after all
+     */
+    void endRegistration(boolean registered) {
+        registeredAt.set(registered ? VersionClock.tick() : VersionClock.NEVER);
     }
     
     @Override
     public String toString() {
+        return describe(getCheckedOutCount());
+    }
+    
+    /**
+     * Formats the patron with a number of checked out items.
+     * 
+     * @param checkedOut the number of items to report
+     * @return the description
+     */
+    String describe(int checkedOut) {
         return String.format("Patron: %s (ID: %s) - %d items checked out",
-                           name, studentId, checkedOutItems.size());
+                           name, studentId, checkedOut);
+    }
+    
+    /**
+     * An item checked in while a view was open, with the version of the
+     * check-in.
+     */
+    private static final class Return {
+        final LibraryItem item;
+        final Long version;
+        
+        Return(LibraryItem item, Long version) {
+            this.item = item;
+            this.version = version;
+        }
     }
 }
 
@@ -0,0 +1,207 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of search results, bounded by the total number of items the
+ * cached results hold rather than by the number of queries, so memory
+ * stays bounded however broad the cached queries are. When over budget
+ * the least recently used results are dropped.
+ *
+ * <p>Results are stamped with the inventory version they were computed
+ * at. Adding or removing an item calls {@link #invalidate()}, which only
+ * bumps the version; stale results are then ignored on lookup and
+ * dropped when found or when they age out, so invalidation costs the
+ * same however much is cached. Results hold the items themselves, whose
+ * loan status is read live, so checkouts and check-ins leave the cache
+ * alone.
+ *
+ * <p>Invalidation is not scoped to the terms an item matches: every add
+ * or remove, or imported batch, empties the cache, even for queries the
+ * item could never match. The cache therefore pays off while the
+ * inventory is stable and does little during a steady stream of
+ * additions.
+ *
+ * <p>The cache is safe to use from several threads. Lookups and stores
+ * take a short lock; the searches themselves run outside it.
+ *
+ * @author Orchlon Chinbat
+ */
+public class SearchCache {
+    private final long capacity;
+    private final Map<String, Entry> entries;
+    private final AtomicLong version;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private long weight;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param capacity the most items all cached results may hold together
+     */
+    public SearchCache(long capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.version = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * Gets the current inventory version. Read it before searching and
+     * pass it to {@link #put(String, long, List)}, so a result that races
+     * with a change to the inventory is never served after the change.
+     *
+     * @return the version
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Marks every cached result as stale. Call after the inventory's
+     * indexes have been updated.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Gets the cached result of a query if it is still current.
+     *
+     * @param query the normalized query
+     * @return the cached items, not to be modified, or null if absent or stale
+     */
+    public List<LibraryItem> get(String query) {
+        long current = version.get();
+        synchronized (this) {
+            Entry entry = entries.get(query);
+            if (entry != null && entry.version == current) {
+                hits.increment();
+                return entry.items;
+            }
+            if (entry != null && entry.version < current) {
+                entries.remove(query);
+                weight -= weigh(entry.items);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches the result of a query. Results computed before the latest
+     * invalidation, or holding more items than the whole cache, are not
+     * kept.
+     *
+     * @param query the normalized query
+     * @param searchedAt the version read before the search began
+     * @param items the items found, not to be modified afterwards
+     */
+    public void put(String query, long searchedAt, List<LibraryItem> items) {
+        long size = weigh(items);
+        if (size > capacity || searchedAt != version.get()) {
+            return;
+        }
+        synchronized (this) {
+            Entry previous = entries.put(query, new Entry(searchedAt, items));
+            if (previous != null) {
+                weight -= weigh(previous.items);
+            }
+            weight += size;
+            // Stale entries are never hit again, so they soon become the
+            // least recently used and go first.
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (weight > capacity) {
+                Entry entry = eldest.next().getValue();
+                eldest.remove();
+                weight -= weigh(entry.items);
+            }
+        }
+    }
+
+    /**
+     * Gets what a result counts against the capacity: one per item, plus
+     * one so that empty results are not free.
+     *
+     * @param items the result
+     * @return the weight
+     */
+    private static long weigh(List<LibraryItem> items) {
+        return items.size() + 1L;
+    }
+
+    /**
+     * Drops every cached result.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * Gets the number of cached results, stale ones included.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of items the cached results hold, counting one
+     * extra per result.
+     *
+     * @return the weight, never above the capacity
+     */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * Gets the most items all cached results may hold together.
+     *
+     * @return the capacity
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that had to search.
+     *
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * A cached result and the version it was computed at.
+     */
+    private static final class Entry {
+        final long version;
+        final List<LibraryItem> items;
+
+        Entry(long version, List<LibraryItem> items) {
+            this.version = version;
+            this.items = items;
+        }
+    }
+}
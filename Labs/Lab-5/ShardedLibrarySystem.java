@@ -0,0 +1,403 @@
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Library made of several {@link LibrarySystem} shards, such as one per
+ * branch or one per core. Each item lives in exactly one shard, chosen by
+ * a hash of its call number, so operations on an item go straight to its
+ * shard and items in different shards never share a map, an index or a
+ * hold queue. Searches run on every shard at once and the results are
+ * merged.
+ *
+ * <p>Handing a search to another thread costs more than searching a small
+ * shard, so with a single core, or only a couple of shards, the calling
+ * thread searches every shard itself. Otherwise the shards are searched
+ * on a pool of daemon threads, one per core, shared by all sharded
+ * libraries and kept apart from the common fork-join pool that parallel
+ * streams use.
+ *
+ * <p>Patrons are registered in every shard as the same {@link Patron}
+ * object, so a patron can borrow from any shard and their loans, which
+ * are kept on the patron, are counted across all of them. Every shard
+ * reports to the same listener.
+ *
+ * @author Orchlon Chinbat
+ */
+public class ShardedLibrarySystem {
+    /** Largest shard count that is always searched on the calling thread. */
+    private static final int INLINE_SHARDS = 2;
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final Executor SEARCH_POOL = Executors.newFixedThreadPool(CORES, task -> {
+        Thread thread = new Thread(task, "library-shard-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LibrarySystem[] shards;
+    private final Executor executor;
+    private final boolean fanOut;
+
+    /**
+     * Constructs a sharded library that searches its shards on the shared
+     * shard search pool.
+     *
+     * @param shardCount the number of shards
+     * @param listener the listener for events from every shard
+     */
+    public ShardedLibrarySystem(int shardCount, LibraryEventListener listener) {
+        this(shardCount, listener, SEARCH_POOL);
+    }
+
+    /**
+     * Constructs a sharded library that searches its shards on the given
+     * executor, unless it searches them on the calling thread.
+     *
+     * @param shardCount the number of shards
+     * @param listener the listener for events from every shard
+     * @param executor runs the per-shard parts of a search
+     */
+    public ShardedLibrarySystem(int shardCount, LibraryEventListener listener, Executor executor) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        this.shards = new LibrarySystem[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new LibrarySystem(listener);
+        }
+        this.executor = executor;
+        this.fanOut = CORES > 1 && shardCount > INLINE_SHARDS;
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Gets one shard, for per-branch reports such as its statistics.
+     * A patron's first loan and last return can fall in different shards,
+     * so only the sum of the shards' active patron counts is meaningful.
+     *
+     * @param index the shard number, from 0 to getShardCount() - 1
+     * @return the shard
+     */
+    public LibrarySystem getShard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * Gets the shard that owns a call number.
+     *
+     * @param callNumber the call number
+     * @return the shard holding, or that would hold, the item
+     */
+    public LibrarySystem getShardFor(String callNumber) {
+        return shards[shardIndex(callNumber)];
+    }
+
+    /**
+     * Gets the number of the shard that owns a call number. The hash is
+     * re-mixed so that call numbers differing only in their last
+     * characters still spread across shards.
+     *
+     * @param callNumber the call number
+     * @return the shard number
+     */
+    private int shardIndex(String callNumber) {
+        int hash = (callNumber == null ? 0 : callNumber.hashCode()) * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    /**
+     * Replaces the listener of every shard.
+     *
+     * @param listener the new listener
+     */
+    public void setEventListener(LibraryEventListener listener) {
+        for (LibrarySystem shard : shards) {
+            shard.setEventListener(listener);
+        }
+    }
+
+    /**
+     * Sets the handler every shard tells when an overdue notice fails.
+     *
+     * @param handler the handler, or null for the timer thread's own
+     * @see LibrarySystem#setNoticeFailureHandler(Thread.UncaughtExceptionHandler)
+     */
+    public void setNoticeFailureHandler(Thread.UncaughtExceptionHandler handler) {
+        for (LibrarySystem shard : shards) {
+            shard.setNoticeFailureHandler(handler);
+        }
+    }
+
+    /**
+     * Adds an item to its shard.
+     *
+     * @param item the item to add
+     * @return true if added, false if the call number already exists
+     */
+    public boolean addItem(LibraryItem item) {
+        return getShardFor(item.getCallNumber()).addItem(item);
+    }
+
+    /**
+     * Adds a batch of items, each shard inserting its part in parallel.
+     *
+     * @param items the items to add
+     * @return the items refused because their call number already exists
+     * @see LibrarySystem#addItems(List)
+     */
+    public List<LibraryItem> addItems(List<? extends LibraryItem> items) {
+        List<List<LibraryItem>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (LibraryItem item : items) {
+            parts.get(shardIndex(item.getCallNumber())).add(item);
+        }
+        return gather(i -> shards[i].addItems(parts.get(i)));
+    }
+
+    /**
+     * Removes an item from its shard.
+     *
+     * @param callNumber the call number of the item to remove
+     * @return true if removed
+     */
+    public boolean removeItem(String callNumber) {
+        return getShardFor(callNumber).removeItem(callNumber);
+    }
+
+    /**
+     * Registers a patron with every shard. Only one registration is
+     * reported.
+     *
+     * @param patron the patron to register
+     * @return true if registered, false if the student ID already exists
+     */
+    public boolean registerPatron(Patron patron) {
+        // The first shard decides, so two registrations racing for one ID
+        // cannot leave different patron objects in different shards.
+        if (!shards[0].registerPatron(patron)) {
+            return false;
+        }
+        for (int i = 1; i < shards.length; i++) {
+            shards[i].enrollPatron(patron);
+        }
+        return true;
+    }
+
+    /**
+     * Gets a patron by student ID.
+     *
+     * @param studentId the student ID
+     * @return the patron, or null if not found
+     */
+    public Patron getPatron(String studentId) {
+        return shards[0].getPatron(studentId);
+    }
+
+    /**
+     * Gets an item from its shard.
+     *
+     * @param callNumber the call number
+     * @return the item, or null if not found
+     */
+    public LibraryItem getItem(String callNumber) {
+        return getShardFor(callNumber).getItem(callNumber);
+    }
+
+    /**
+     * Checks out an item for the loan period of its shard.
+     *
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the patron
+     * @return true if successful
+     */
+    public boolean checkOutItem(String callNumber, String studentId) {
+        return getShardFor(callNumber).checkOutItem(callNumber, studentId);
+    }
+
+    /**
+     * Checks out an item until the given due date.
+     *
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the patron
+     * @param dueDate when the item is due back, or null for no due date
+     * @return true if successful
+     */
+    public boolean checkOutItem(String callNumber, String studentId, Instant dueDate) {
+        return getShardFor(callNumber).checkOutItem(callNumber, studentId, dueDate);
+    }
+
+    /**
+     * Checks in an item at its shard.
+     *
+     * @param callNumber the call number of the item
+     * @return true if successful
+     */
+    public boolean checkInItem(String callNumber) {
+        return getShardFor(callNumber).checkInItem(callNumber);
+    }
+
+    /**
+     * Places a hold on an item at its shard.
+     *
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the patron
+     * @return true if the hold was placed or the item checked out at once
+     */
+    public boolean placeHold(String callNumber, String studentId) {
+        return getShardFor(callNumber).placeHold(callNumber, studentId);
+    }
+
+    /**
+     * Cancels a hold on an item at its shard.
+     *
+     * @param callNumber the call number of the item
+     * @param studentId the student ID of the patron
+     * @return true if the hold was cancelled
+     */
+    public boolean cancelHold(String callNumber, String studentId) {
+        return getShardFor(callNumber).cancelHold(callNumber, studentId);
+    }
+
+    /**
+     * Processes a batch of checkouts and check-ins, each shard working
+     * through its part in parallel.
+     *
+     * @param operations the operations to perform
+     * @return the outcome of each operation, at the same index as the operation
+     * @see LibrarySystem#processBatch(List)
+     */
+    public CirculationResult[] processBatch(List<CirculationOperation> operations) {
+        List<List<Integer>> indices = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            indices.add(new ArrayList<>());
+        }
+        for (int i = 0; i < operations.size(); i++) {
+            indices.get(shardIndex(operations.get(i).getCallNumber())).add(i);
+        }
+        CirculationResult[] results = new CirculationResult[operations.size()];
+        gather(shard -> {
+            List<Integer> mine = indices.get(shard);
+            List<CirculationOperation> part = new ArrayList<>(mine.size());
+            for (int index : mine) {
+                part.add(operations.get(index));
+            }
+            CirculationResult[] partResults = shards[shard].processBatch(part);
+            for (int i = 0; i < partResults.length; i++) {
+                results[mine.get(i)] = partResults[i];
+            }
+            return Collections.emptyList();
+        });
+        return results;
+    }
+
+    /**
+     * Finds items whose searchable text contains a term, searching every
+     * shard in parallel.
+     *
+     * @param searchTerm the text to search for
+     * @return the matching items from all shards
+     */
+    public List<LibraryItem> searchItems(String searchTerm) {
+        return gather(shard -> shards[shard].searchItems(searchTerm));
+    }
+
+    /**
+     * Finds items containing every keyword, searching every shard in
+     * parallel.
+     *
+     * @param keywords the keywords
+     * @return the matching items from all shards
+     */
+    public List<LibraryItem> searchByKeyword(String keywords) {
+        return gather(shard -> shards[shard].searchByKeyword(keywords));
+    }
+
+    /**
+     * Finds items matching every condition of a query, querying every
+     * shard's attribute indexes in parallel.
+     *
+     * @param query the conditions to match
+     * @return the matching items from all shards
+     */
+    public List<LibraryItem> findItems(ItemQuery query) {
+        return gather(shard -> shards[shard].findItems(query));
+    }
+
+    /**
+     * Gets the loans past their due date in every shard.
+     *
+     * @return the overdue loans, earliest due date first
+     */
+    public List<Loan> getOverdueLoans() {
+        List<Loan> loans = gather(shard -> shards[shard].getOverdueLoans());
+        loans.sort(Loan.BY_DUE_DATE);
+        return loans;
+    }
+
+    /**
+     * Gets the number of items checked out across all shards.
+     *
+     * @return the number of items checked out
+     */
+    public long getCheckedOutCount() {
+        long count = 0;
+        for (LibrarySystem shard : shards) {
+            count += shard.getCheckedOutCount();
+        }
+        return count;
+    }
+
+    /**
+     * Streams the inventory of every shard.
+     *
+     * @return a stream of all items, in no particular order
+     */
+    public Stream<LibraryItem> streamInventory() {
+        return Stream.of(shards).flatMap(LibrarySystem::streamInventory);
+    }
+
+    /**
+     * Runs a query on every shard and concatenates the answers in shard
+     * order. When fanning out, the shards are queried at once and the
+     * calling thread queries the first shard itself rather than waiting
+     * idle; otherwise it queries them one after another.
+     *
+     * @param query the query to run, given a shard number
+     * @return the combined answers
+     */
+    private <T> List<T> gather(IntFunction<List<T>> query) {
+        if (!fanOut) {
+            List<T> results = new ArrayList<>();
+            for (int i = 0; i < shards.length; i++) {
+                results.addAll(query.apply(i));
+            }
+            return results;
+        }
+        List<CompletableFuture<List<T>>> parts = new ArrayList<>(shards.length - 1);
+        for (int i = 1; i < shards.length; i++) {
+            int shard = i;
+            parts.add(CompletableFuture.supplyAsync(() -> query.apply(shard), executor));
+        }
+        List<T> results = new ArrayList<>(query.apply(0));
+        for (CompletableFuture<List<T>> part : parts) {
+            results.addAll(part.join());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary that gives each distinct string a small integer id, so that
+ * many objects repeating the same few strings can store ids instead.
+ * Each string is kept once, as the canonical instance returned by
+ * {@link #term(int)}, however many times it was interned.
+ *
+ * <p>Ids are dense, start at zero and never change or get reused, so
+ * equal strings always have equal ids and comparing two ids is the same
+ * as comparing the strings. Looking up an id or a known string takes no
+ * lock; only adding a new string does. Strings are never removed.
+ *
+ * @author Orchlon Chinbat
+ */
+public final class TermDictionary {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<String, Integer> ids;
+    private volatile String[] terms;
+    private int size;
+
+    /**
+     * Constructs an empty dictionary.
+     */
+    public TermDictionary() {
+        this.ids = new ConcurrentHashMap<>();
+        this.terms = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Gets the id of a string, adding the string if it is new.
+     *
+     * @param term the string
+     * @return its id
+     */
+    public int intern(String term) {
+        Integer id = ids.get(term);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(term);
+            if (id != null) {
+                return id;
+            }
+            int next = size;
+            String[] current = terms;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, next * 2);
+                terms = current;
+            }
+            current[next] = term;
+            size = next + 1;
+            // Published last, so whoever finds the id can read the term.
+            ids.put(term, next);
+            return next;
+        }
+    }
+
+    /**
+     * Gets the id of a string without adding it.
+     *
+     * @param term the string, or null
+     * @return its id, or -1 if it is null or has never been interned
+     */
+    public int find(String term) {
+        if (term == null) {
+            return -1;
+        }
+        Integer id = ids.get(term);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the string with an id.
+     *
+     * @param id an id returned by {@link #intern(String)}
+     * @return the canonical instance of the string
+     */
+    public String term(int id) {
+        return terms[id];
+    }
+
+    /**
+     * Gets the number of distinct strings interned.
+     *
+     * @return the size
+     */
+    public int size() {
+        return ids.size();
+    }
+}
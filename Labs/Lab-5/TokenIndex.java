@@ -0,0 +1,282 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inverted index from normalized search tokens to the library items that
+ * contain them. The index is updated incrementally as items are added to or
+ * removed from the inventory, so a keyword query only touches the posting
+ * lists of its own tokens instead of every item in the library.
+ * Posting lists are concurrent maps that are created and dropped atomically,
+ * so the index can be updated and queried from several threads.
+ *
+ * <p>Each posting also records a field-weighted term frequency: a token
+ * counts three times in a title, twice in an author name and once in the
+ * ISBN or call number. Together with each item's length these feed a
+ * BM25 ranking for {@link #searchRanked(String, int)}.
+ *
+ * @author Orchlon Chinbat
+ */
+public class TokenIndex {
+    /** BM25 term frequency saturation. */
+    private static final double K1 = 1.2;
+    /** BM25 length normalization. */
+    private static final double B = 0.75;
+    private static final float TITLE_WEIGHT = 3f;
+    private static final float AUTHOR_WEIGHT = 2f;
+
+    private final Map<String, Map<LibraryItem, Float>> postings;
+    private final Map<LibraryItem, Integer> lengths;
+    private final AtomicLong totalLength;
+
+    /**
+     * Constructs an empty token index.
+     */
+    public TokenIndex() {
+        this.postings = new ConcurrentHashMap<>();
+        this.lengths = new ConcurrentHashMap<>();
+        this.totalLength = new AtomicLong();
+    }
+
+    /**
+     * Splits text into lowercase alphanumeric tokens.
+     * Punctuation such as hyphens and periods acts as a separator, so an
+     * ISBN like "978-0262033848" yields the tokens "978" and "0262033848".
+     *
+     * @param text the text to tokenize
+     * @return the tokens in order of appearance (may contain duplicates)
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String lower = text.toLowerCase();
+        int start = -1;
+        for (int i = 0; i < lower.length(); i++) {
+            if (Character.isLetterOrDigit(lower.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(lower.substring(start));
+        }
+        return tokens;
+    }
+
+    /**
+     * Computes the field-weighted frequency of each token of an item.
+     * Every token of the searchable text counts once; tokens of the title
+     * and of author names get extra weight on top.
+     *
+     * @param item the item
+     * @param text the tokens of the item's searchable text
+     * @return the weighted frequency of each distinct token
+     */
+    private static Map<String, Float> weightedFrequencies(LibraryItem item, List<String> text) {
+        Map<String, Float> frequencies = new HashMap<>();
+        for (String token : text) {
+            frequencies.merge(token, 1f, Float::sum);
+        }
+        for (String token : tokenize(item.getTitle())) {
+            frequencies.merge(token, TITLE_WEIGHT - 1, Float::sum);
+        }
+        if (item instanceof Book) {
+            for (String author : ((Book) item).getAuthors()) {
+                for (String token : tokenize(author)) {
+                    frequencies.merge(token, AUTHOR_WEIGHT - 1, Float::sum);
+                }
+            }
+        }
+        return frequencies;
+    }
+
+    /**
+     * Adds an item's searchable text to the index.
+     *
+     * @param item the item to index
+     */
+    public void add(LibraryItem item) {
+        List<String> text = tokenize(item.getSearchableText());
+        for (Map.Entry<String, Float> entry : weightedFrequencies(item, text).entrySet()) {
+            postings.compute(entry.getKey(), (t, items) -> {
+                if (items == null) {
+                    items = new ConcurrentHashMap<>();
+                }
+                items.put(item, entry.getValue());
+                return items;
+            });
+        }
+        if (lengths.put(item, text.size()) == null) {
+            totalLength.addAndGet(text.size());
+        }
+    }
+
+    /**
+     * Adds a batch of items. Their postings are grouped by token first, so
+     * each posting list is looked up and grown once per batch rather than
+     * once per item.
+     *
+     * @param items the items to index
+     */
+    public void addAll(Collection<? extends LibraryItem> items) {
+        Map<String, Map<LibraryItem, Float>> grouped = new HashMap<>();
+        for (LibraryItem item : items) {
+            List<String> text = tokenize(item.getSearchableText());
+            for (Map.Entry<String, Float> entry : weightedFrequencies(item, text).entrySet()) {
+                grouped.computeIfAbsent(entry.getKey(), t -> new HashMap<>()).put(item, entry.getValue());
+            }
+            if (lengths.put(item, text.size()) == null) {
+                totalLength.addAndGet(text.size());
+            }
+        }
+        grouped.forEach((token, batch) -> postings.compute(token, (t, posted) -> {
+            if (posted == null) {
+                posted = new ConcurrentHashMap<>(batch.size());
+            }
+            posted.putAll(batch);
+            return posted;
+        }));
+    }
+
+    /**
+     * Removes an item from every posting list it appears in.
+     * Empty posting lists are dropped so the index does not grow with
+     * tokens that no longer occur in the inventory.
+     *
+     * @param item the item to remove
+     */
+    public void remove(LibraryItem item) {
+        for (String token : new LinkedHashSet<>(tokenize(item.getSearchableText()))) {
+            postings.computeIfPresent(token, (t, items) -> {
+                items.remove(item);
+                return items.isEmpty() ? null : items;
+            });
+        }
+        Integer length = lengths.remove(item);
+        if (length != null) {
+            totalLength.addAndGet(-length);
+        }
+    }
+
+    /**
+     * Finds the items that contain every token of the query as a whole word.
+     * Posting lists are intersected starting from the shortest one, so the
+     * cost is bounded by the size of the rarest token's list.
+     *
+     * @param query the keyword query
+     * @return the matching items, or an empty list if the query has no tokens
+     */
+    public List<LibraryItem> search(String query) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Set<LibraryItem>> lists = new ArrayList<>();
+        for (String token : tokens) {
+            Map<LibraryItem, Float> items = postings.get(token);
+            if (items == null) {
+                return new ArrayList<>();
+            }
+            lists.add(items.keySet());
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        List<LibraryItem> results = new ArrayList<>();
+        for (LibraryItem item : lists.get(0)) {
+            boolean matchesAll = true;
+            for (int i = 1; i < lists.size() && matchesAll; i++) {
+                matchesAll = lists.get(i).contains(item);
+            }
+            if (matchesAll) {
+                results.add(item);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Finds the items that best match any of the query's tokens.
+     * Items are scored with BM25 over the field-weighted term frequencies,
+     * and only the best {@code limit} are kept in a bounded min-heap, so the
+     * full set of matches is never sorted.
+     *
+     * @param query the keyword query
+     * @param limit the maximum number of items to return
+     * @return up to {@code limit} items, best match first
+     */
+    public List<LibraryItem> searchRanked(String query, int limit) {
+        List<LibraryItem> results = new ArrayList<>();
+        int itemCount = lengths.size();
+        if (limit <= 0 || itemCount == 0) {
+            return results;
+        }
+        double averageLength = Math.max(1.0, (double) totalLength.get() / itemCount);
+
+        Map<LibraryItem, Double> scores = new HashMap<>();
+        for (String token : new LinkedHashSet<>(tokenize(query))) {
+            Map<LibraryItem, Float> items = postings.get(token);
+            if (items == null) {
+                continue;
+            }
+            int frequency = items.size();
+            double idf = Math.log(1 + (itemCount - frequency + 0.5) / (frequency + 0.5));
+            for (Map.Entry<LibraryItem, Float> posting : items.entrySet()) {
+                Integer length = lengths.get(posting.getKey());
+                double norm = K1 * (1 - B + B * (length == null ? averageLength : length) / averageLength);
+                double tf = posting.getValue();
+                scores.merge(posting.getKey(), idf * tf * (K1 + 1) / (tf + norm), Double::sum);
+            }
+        }
+
+        PriorityQueue<Map.Entry<LibraryItem, Double>> best =
+                new PriorityQueue<>(Math.min(limit, Math.max(1, scores.size())), TokenIndex::compareScores);
+        for (Map.Entry<LibraryItem, Double> entry : scores.entrySet()) {
+            if (best.size() < limit) {
+                best.add(entry);
+            } else if (compareScores(entry, best.peek()) > 0) {
+                best.poll();
+                best.add(entry);
+            }
+        }
+        while (!best.isEmpty()) {
+            results.add(best.poll().getKey());
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * Orders scored items from worst to best, breaking ties by call number
+     * so that rankings are stable.
+     */
+    private static int compareScores(Map.Entry<LibraryItem, Double> a, Map.Entry<LibraryItem, Double> b) {
+        int byScore = Double.compare(a.getValue(), b.getValue());
+        if (byScore != 0) {
+            return byScore;
+        }
+        return b.getKey().getCallNumber().compareTo(a.getKey().getCallNumber());
+    }
+
+    /**
+     * Gets the items whose searchable text contains the given token.
+     *
+     * @param token a normalized (lowercase) token
+     * @return an unmodifiable view of the posting list, possibly empty
+     */
+    public Set<LibraryItem> getPostings(String token) {
+        Map<LibraryItem, Float> items = postings.get(token);
+        return items == null ? Collections.emptySet() : Collections.unmodifiableSet(items.keySet());
+    }
+}
@@ -0,0 +1,145 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trigram index over the searchable text of library items.
+ * Every three-character window of an item's searchable text is mapped to the
+ * items containing it. A substring query of length three or more can only
+ * match items that contain all of the query's trigrams, so intersecting those
+ * posting lists narrows the candidates before the final {@code contains}
+ * check. This keeps mid-word queries such as partial ISBNs ("0262") or
+ * call-number fragments ("76.9") fast without scanning the inventory.
+ * Like {@link TokenIndex}, the index is safe to update and query concurrently.
+ *
+ * @author Orchlon Chinbat
+ */
+public class TrigramIndex {
+    /** Shortest query the index can answer; shorter queries need a scan. */
+    public static final int GRAM_LENGTH = 3;
+
+    private final Map<String, Set<LibraryItem>> postings;
+
+    /**
+     * Constructs an empty trigram index.
+     */
+    public TrigramIndex() {
+        this.postings = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Collects the distinct trigrams of a piece of text.
+     *
+     * @param text lowercase text
+     * @return the set of trigrams, empty if the text is shorter than three characters
+     */
+    private static Set<String> trigrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    /**
+     * Adds an item's searchable text to the index.
+     *
+     * @param item the item to index
+     */
+    public void add(LibraryItem item) {
+        for (String gram : trigrams(item.getSearchableText())) {
+            postings.compute(gram, (g, items) -> {
+                if (items == null) {
+                    items = ConcurrentHashMap.newKeySet();
+                }
+                items.add(item);
+                return items;
+            });
+        }
+    }
+
+    /**
+     * Adds a batch of items. Their trigrams are grouped first, so each
+     * posting list is looked up and grown once per batch rather than once
+     * per item.
+     *
+     * @param items the items to index
+     */
+    public void addAll(Collection<? extends LibraryItem> items) {
+        Map<String, List<LibraryItem>> grouped = new HashMap<>();
+        for (LibraryItem item : items) {
+            for (String gram : trigrams(item.getSearchableText())) {
+                grouped.computeIfAbsent(gram, g -> new ArrayList<>()).add(item);
+            }
+        }
+        grouped.forEach((gram, batch) -> postings.compute(gram, (g, posted) -> {
+            if (posted == null) {
+                posted = ConcurrentHashMap.newKeySet(batch.size());
+            }
+            posted.addAll(batch);
+            return posted;
+        }));
+    }
+
+    /**
+     * Removes an item from every posting list it appears in.
+     *
+     * @param item the item to remove
+     */
+    public void remove(LibraryItem item) {
+        for (String gram : trigrams(item.getSearchableText())) {
+            postings.computeIfPresent(gram, (g, items) -> {
+                items.remove(item);
+                return items.isEmpty() ? null : items;
+            });
+        }
+    }
+
+    /**
+     * Checks whether a query is long enough to be answered by the index.
+     *
+     * @param query the lowercase query
+     * @return true if the query has at least one trigram
+     */
+    public boolean canAnswer(String query) {
+        return query.length() >= GRAM_LENGTH;
+    }
+
+    /**
+     * Finds the items whose searchable text contains the query as a substring.
+     * Candidates come from the intersection of the query's trigram posting
+     * lists, smallest first, and are then verified with {@code contains}
+     * since sharing every trigram does not guarantee a contiguous match.
+     *
+     * @param query the lowercase query, at least three characters long
+     * @return the matching items
+     */
+    public List<LibraryItem> search(String query) {
+        List<LibraryItem> results = new ArrayList<>();
+        List<Set<LibraryItem>> lists = new ArrayList<>();
+        for (String gram : trigrams(query)) {
+            Set<LibraryItem> items = postings.get(gram);
+            if (items == null) {
+                return results;
+            }
+            lists.add(items);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        for (LibraryItem item : lists.get(0)) {
+            boolean candidate = true;
+            for (int i = 1; i < lists.size() && candidate; i++) {
+                candidate = lists.get(i).contains(item);
+            }
+            if (candidate && item.getSearchableText().contains(query)) {
+                results.add(item);
+            }
+        }
+        return results;
+    }
+}
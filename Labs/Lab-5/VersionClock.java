@@ -0,0 +1,101 @@
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Commit clock behind {@link LibraryView} snapshots.
+ * Every change that a view can observe (an item joining or leaving the
+ * inventory, a checkout, a check-in, a patron registering) takes the next
+ * version from this clock once it is in place. A view pins the latest
+ * version when it opens and sees exactly the changes stamped up to it.
+ *
+ * <p>A change is made visible first and stamped second, with its version
+ * marked {@link #PENDING} in between; readers that meet a pending change
+ * wait for its stamp. That way a change stamped with a version no later
+ * than a view's is always in place before the view can look for it.
+ *
+ * <p>The clock is shared by every library in the process, so the
+ * versions of different libraries, such as the shards of a
+ * {@link ShardedLibrarySystem}, are comparable.
+ *
+ * @author Orchlon Chinbat
+ */
+final class VersionClock {
+    /** The version of a change that is in place but not stamped yet. */
+    static final long PENDING = -1;
+    /** The version of something that has not happened, such as a removal. */
+    static final long NEVER = Long.MAX_VALUE;
+
+    private static final AtomicLong LATEST = new AtomicLong();
+    private static final TreeMap<Long, Integer> PINS = new TreeMap<>();
+    private static volatile long oldestPinned = NEVER;
+
+    private VersionClock() {
+    }
+
+    /**
+     * Stamps a change that has just been put in place.
+     *
+     * @return the change's version
+     */
+    static long tick() {
+        return LATEST.incrementAndGet();
+    }
+
+    /**
+     * Pins the latest version, keeping the states a new view may need
+     * from being trimmed. The view must read its own version with
+     * {@link #latest()} after pinning: a writer that trims without seeing
+     * this pin ticked before that read, so the view's version covers the
+     * writer's change and never needs the state it trimmed.
+     *
+     * @return the pinned version, to pass to {@link #unpin(long)}
+     */
+    static long pin() {
+        synchronized (PINS) {
+            long version = LATEST.get();
+            PINS.merge(version, 1, Integer::sum);
+            oldestPinned = PINS.firstKey();
+            return version;
+        }
+    }
+
+    /**
+     * Gets the version of the latest stamped change.
+     *
+     * @return the latest version
+     */
+    static long latest() {
+        return LATEST.get();
+    }
+
+    /**
+     * Releases a version pinned by a view that has closed.
+     *
+     * @param version the version returned by {@link #pin()}
+     */
+    static void unpin(long version) {
+        synchronized (PINS) {
+            PINS.computeIfPresent(version, (pinned, count) -> count == 1 ? null : count - 1);
+            oldestPinned = PINS.isEmpty() ? NEVER : PINS.firstKey();
+        }
+    }
+
+    /**
+     * Gets the oldest version any open view can ask for. States replaced
+     * at or before it are no longer needed by anyone.
+     *
+     * @return the oldest pinned version, or {@link #NEVER} if no view is open
+     */
+    static long oldestPinned() {
+        return oldestPinned;
+    }
+
+    /**
+     * Waits while a change is being stamped. Stamping follows its change
+     * immediately, so the wait is only ever a few instructions long unless
+     * the writer is descheduled.
+     */
+    static void awaitStamp() {
+        Thread.yield();
+    }
+}